@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.cache;
+
+/**
+ * Point in time statistics of a {@link JoinCache}
+ */
+public final class CacheStats
+{
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long size;
+    private final long usedBytes;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, long size, long usedBytes)
+    {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.usedBytes = usedBytes;
+    }
+
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * entries removed because of the size bound or ttl
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * -1 if unknown
+     */
+    public long getUsedBytes()
+    {
+        return usedBytes;
+    }
+
+    public double getHitRate()
+    {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CacheStats{hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", hitRate=" + String.format("%.4f", getHitRate()) +
+                ", evictionCount=" + evictionCount +
+                ", size=" + size +
+                ", usedBytes=" + usedBytes + "}";
+    }
+}
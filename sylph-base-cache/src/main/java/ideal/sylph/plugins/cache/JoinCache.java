@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.cache;
+
+import java.io.Closeable;
+
+/**
+ * Lookup cache of a batch table join.
+ * The key is the values of the join on fields, the value is the matched rows of the batch table.
+ * Implementations are thread safe.
+ */
+public interface JoinCache
+        extends Closeable
+{
+    /**
+     * @return the cached rows, an empty array is a cached miss, null if the key is not cached
+     */
+    Object[][] getIfPresent(Object[] key);
+
+    /**
+     * @param rows empty rows cache a miss, implementations may give misses a shorter ttl
+     */
+    void put(Object[] key, Object[][] rows);
+
+    void invalidateAll();
+
+    CacheStats stats();
+
+    @Override
+    void close();
+}
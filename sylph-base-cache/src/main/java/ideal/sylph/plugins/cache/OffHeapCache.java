@@ -0,0 +1,660 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.cache;
+
+import java.io.Closeable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A byte[] key/value LRU cache stored outside the java heap.
+ * <p>
+ * The cache is split into segments guarded by their own lock. A segment allocates its memory as
+ * {@link ByteBuffer#allocateDirect(int) direct} slabs of 16KB to 1MB, and carves each slab into chunks of one size class,
+ * like memcached. An entry is one chunk holding a fixed header, the key and the value, larger entries are not cached.
+ * The segment keeps an open hash table of entry handles ({@code long[]}, the only per entry heap cost)
+ * and an LRU list per size class linked through the headers. When a segment has no free chunk of the needed size class
+ * and no room for another slab, it evicts the least recently used entry of that size class. If the size class has
+ * no entry, or its least recently used entry is much younger than the one of another size class, all entries of the
+ * slab holding that older entry are evicted instead and the slab moves to the size class, so that the memory follows
+ * the workload like the age balancing of memcached.
+ * Expired entries are dropped when they are read, or evicted like any other entry.
+ */
+public class OffHeapCache
+        implements Closeable
+{
+    private static final int MAX_SLAB_SIZE = 1 << 20;
+    private static final int MIN_SLAB_SIZE = 16 << 10;
+    private static final int MIN_SLABS = 16;    // per segment, so that the size classes can share a small segment
+
+    // entry header layout
+    private static final int NEXT = 0;          // long, next entry of the hash bucket, or next free chunk of the slab
+    private static final int LRU_PREV = 8;      // long
+    private static final int LRU_NEXT = 16;     // long
+    private static final int EXPIRE_AT = 24;    // long, millis
+    private static final int HASH = 32;         // int
+    private static final int KEY_LENGTH = 36;   // int
+    private static final int VALUE_LENGTH = 40; // int
+    private static final int ACCESS_TIME = 44;  // int, seconds since the cache was created
+    private static final int HEADER_SIZE = 48;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final long defaultTtlMillis;
+    private final long createTime = System.currentTimeMillis();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param capacityBytes max direct memory of all slabs
+     * @param ttlMillis default time to live after write, {@code <= 0} never expire
+     * @param concurrencyLevel number of segments, rounded up to a power of two
+     */
+    public OffHeapCache(long capacityBytes, long ttlMillis, int concurrencyLevel)
+    {
+        if (capacityBytes <= 0) {
+            throw new IllegalArgumentException("capacityBytes must > 0, but is " + capacityBytes);
+        }
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(concurrencyLevel, 1 << 16)) * 2 - 1);
+        long segmentCapacity = Math.max(8, capacityBytes / segmentCount);
+        int slabSize = (int) Math.min(segmentCapacity, Math.min(MAX_SLAB_SIZE, Math.max(MIN_SLAB_SIZE, segmentCapacity / MIN_SLABS))) & ~7;
+        int[] chunkSizes = chunkSizes(slabSize);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment((int) Math.max(1, segmentCapacity / slabSize), slabSize, chunkSizes);
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.defaultTtlMillis = ttlMillis;
+    }
+
+    /**
+     * size classes growing by 1.25, aligned to 8 bytes, the last one is the whole slab
+     */
+    private static int[] chunkSizes(int slabSize)
+    {
+        int[] sizes = new int[64];
+        int count = 0;
+        int size = (HEADER_SIZE + 8) & ~7;
+        while (size < slabSize) {
+            sizes[count++] = size;
+            size = Math.max(size + 8, (size + (size >> 2) + 7) & ~7);
+        }
+        sizes[count++] = slabSize;
+        return Arrays.copyOf(sizes, count);
+    }
+
+    public byte[] get(byte[] key)
+    {
+        int hash = hash(key);
+        byte[] value = segmentFor(hash).get(key, hash, System.currentTimeMillis());
+        if (value == null) {
+            missCount.increment();
+        }
+        else {
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    public void put(byte[] key, byte[] value)
+    {
+        put(key, value, defaultTtlMillis);
+    }
+
+    /**
+     * @param ttlMillis time to live of this entry, {@code <= 0} never expire
+     */
+    public void put(byte[] key, byte[] value, long ttlMillis)
+    {
+        int hash = hash(key);
+        long now = System.currentTimeMillis();
+        segmentFor(hash).put(key, hash, value, ttlMillis > 0 ? now + ttlMillis : Long.MAX_VALUE, now);
+    }
+
+    public void remove(byte[] key)
+    {
+        int hash = hash(key);
+        segmentFor(hash).remove(key, hash);
+    }
+
+    public void invalidateAll()
+    {
+        for (Segment segment : segments) {
+            segment.clear(false);
+        }
+    }
+
+    public long size()
+    {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count();
+        }
+        return size;
+    }
+
+    /**
+     * bytes of the chunks holding entries
+     */
+    public long usedBytes()
+    {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.usedBytes();
+        }
+        return used;
+    }
+
+    public CacheStats stats()
+    {
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), size(), usedBytes());
+    }
+
+    /**
+     * drop all slabs, their direct memory is released when the buffers are collected.
+     * the cache can not be used after close
+     */
+    @Override
+    public void close()
+    {
+        for (Segment segment : segments) {
+            segment.clear(true);
+        }
+    }
+
+    private Segment segmentFor(int hash)
+    {
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private static int hash(byte[] key)
+    {
+        int h = Arrays.hashCode(key) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * An entry handle is {@code (slab index + 1) << 32 | offset in the slab}, 0 is null.
+     * All slab state lives in primitive arrays indexed by the slab index
+     */
+    private final class Segment
+    {
+        private final int slabSize;
+        private final int[] chunkSizes;
+        private final ByteBuffer[] slabs;
+        private final int[] slabClass;      // size class of the slab, -1 is empty
+        private final int[] slabBump;       // offset of the first never used chunk
+        private final long[] slabFreeHead;  // freed chunks of the slab, linked through NEXT
+        private final int[] slabInUse;
+        private final int[] slabPrev;       // partial slabs of a size class, or the empty slabs
+        private final int[] slabNext;
+        private final boolean[] slabPartial;
+        private final int[] partialHead;    // slabs with a free chunk, per size class
+        private final int[] classSlabs;     // number of slabs, per size class
+        private final long[] lruHead;       // most recently used entry, per size class
+        private final long[] lruTail;
+        private int emptyHead = -1;
+        private int slabCount;
+
+        private long[] table = new long[16];
+        private int count;
+        private long used;
+        private boolean closed;
+
+        private Segment(int maxSlabs, int slabSize, int[] chunkSizes)
+        {
+            this.slabSize = slabSize;
+            this.chunkSizes = chunkSizes;
+            this.slabs = new ByteBuffer[maxSlabs];
+            this.slabClass = new int[maxSlabs];
+            this.slabBump = new int[maxSlabs];
+            this.slabFreeHead = new long[maxSlabs];
+            this.slabInUse = new int[maxSlabs];
+            this.slabPrev = new int[maxSlabs];
+            this.slabNext = new int[maxSlabs];
+            this.slabPartial = new boolean[maxSlabs];
+            this.partialHead = new int[chunkSizes.length];
+            Arrays.fill(partialHead, -1);
+            this.classSlabs = new int[chunkSizes.length];
+            this.lruHead = new long[chunkSizes.length];
+            this.lruTail = new long[chunkSizes.length];
+        }
+
+        private synchronized int count()
+        {
+            return count;
+        }
+
+        private synchronized long usedBytes()
+        {
+            return used;
+        }
+
+        private synchronized byte[] get(byte[] key, int hash, long now)
+        {
+            if (closed) {
+                return null;
+            }
+            long handle = find(key, hash);
+            if (handle == 0) {
+                return null;
+            }
+            if (getLong(handle, EXPIRE_AT) <= now) {
+                removeEntry(handle);
+                evictionCount.increment();
+                return null;
+            }
+            moveToHead(handle, now);
+            byte[] value = new byte[getInt(handle, VALUE_LENGTH)];
+            ByteBuffer slab = slab(handle);
+            ((Buffer) slab).position(offset(handle) + HEADER_SIZE + key.length);
+            slab.get(value);
+            return value;
+        }
+
+        private synchronized void put(byte[] key, int hash, byte[] value, long expireAt, long now)
+        {
+            if (closed) {
+                return;
+            }
+            long old = find(key, hash);
+            if (old != 0) {
+                removeEntry(old);
+            }
+            int size = HEADER_SIZE + key.length + value.length;
+            if (key.length + value.length > slabSize - HEADER_SIZE) {
+                return;  // too large to cache, the stale value is dropped
+            }
+            int sizeClass = sizeClass(size);
+            long handle = allocate(sizeClass, now);
+            if (handle == 0) {
+                return;
+            }
+            putLong(handle, EXPIRE_AT, expireAt);
+            putInt(handle, HASH, hash);
+            putInt(handle, KEY_LENGTH, key.length);
+            putInt(handle, VALUE_LENGTH, value.length);
+            ByteBuffer slab = slab(handle);
+            ((Buffer) slab).position(offset(handle) + HEADER_SIZE);
+            slab.put(key);
+            slab.put(value);
+
+            int bucket = hash & (table.length - 1);
+            putLong(handle, NEXT, table[bucket]);
+            table[bucket] = handle;
+            linkHead(handle, now);
+            count++;
+            used += chunkSizes[sizeClass];
+            if (count > table.length - (table.length >>> 2)) {
+                resize();
+            }
+        }
+
+        private synchronized void remove(byte[] key, int hash)
+        {
+            if (closed) {
+                return;
+            }
+            long handle = find(key, hash);
+            if (handle != 0) {
+                removeEntry(handle);
+            }
+        }
+
+        private synchronized void clear(boolean close)
+        {
+            // the slabs are kept for reuse, unless the cache is closed
+            for (int slab = 0; slab < slabCount; slab++) {
+                slabClass[slab] = -1;
+                slabPartial[slab] = false;
+                slabNext[slab] = slab + 1 < slabCount ? slab + 1 : -1;
+                slabPrev[slab] = slab - 1;
+            }
+            emptyHead = slabCount > 0 ? 0 : -1;
+            Arrays.fill(partialHead, -1);
+            Arrays.fill(classSlabs, 0);
+            Arrays.fill(lruHead, 0);
+            Arrays.fill(lruTail, 0);
+            if (close) {
+                Arrays.fill(slabs, null);
+                slabCount = 0;
+                emptyHead = -1;
+            }
+            Arrays.fill(table, 0);
+            count = 0;
+            used = 0;
+            closed = closed || close;
+        }
+
+        private long find(byte[] key, int hash)
+        {
+            long handle = table[hash & (table.length - 1)];
+            while (handle != 0) {
+                if (getInt(handle, HASH) == hash && keyEquals(handle, key)) {
+                    return handle;
+                }
+                handle = getLong(handle, NEXT);
+            }
+            return 0;
+        }
+
+        private boolean keyEquals(long handle, byte[] key)
+        {
+            if (getInt(handle, KEY_LENGTH) != key.length) {
+                return false;
+            }
+            ByteBuffer slab = slab(handle);
+            int keyOffset = offset(handle) + HEADER_SIZE;
+            for (int i = 0; i < key.length; i++) {
+                if (slab.get(keyOffset + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void removeEntry(long handle)
+        {
+            // unlink from the hash bucket
+            int bucket = getInt(handle, HASH) & (table.length - 1);
+            long next = getLong(handle, NEXT);
+            if (table[bucket] == handle) {
+                table[bucket] = next;
+            }
+            else {
+                long prev = table[bucket];
+                while (getLong(prev, NEXT) != handle) {
+                    prev = getLong(prev, NEXT);
+                }
+                putLong(prev, NEXT, next);
+            }
+            unlink(handle);
+            count--;
+            used -= chunkSizes[slabClass[slabIndex(handle)]];
+            freeChunk(handle);
+        }
+
+        //---- slab allocator, a slab holds chunks of one size class ----
+
+        private int sizeClass(int size)
+        {
+            int index = Arrays.binarySearch(chunkSizes, size);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        /**
+         * @return a free chunk of the size class, evicting lru entries when the segment is full
+         */
+        private long allocate(int sizeClass, long now)
+        {
+            while (true) {
+                int slab = partialHead[sizeClass];
+                if (slab >= 0) {
+                    return takeChunk(slab, sizeClass);
+                }
+                if (emptyHead >= 0) {
+                    slab = emptyHead;
+                    removeSlab(slab);
+                    assignSlab(slab, sizeClass);
+                }
+                else if (slabCount < slabs.length) {
+                    slab = slabCount++;
+                    slabs[slab] = ByteBuffer.allocateDirect(slabSize).order(ByteOrder.nativeOrder());
+                    assignSlab(slab, sizeClass);
+                }
+                else if (count > 0) {
+                    evictFor(sizeClass, now);
+                }
+                else {
+                    return 0;
+                }
+            }
+        }
+
+        private void assignSlab(int slab, int sizeClass)
+        {
+            slabClass[slab] = sizeClass;
+            classSlabs[sizeClass]++;
+            slabBump[slab] = 0;
+            slabFreeHead[slab] = 0;
+            slabInUse[slab] = 0;
+            pushSlab(slab, sizeClass);
+        }
+
+        private long takeChunk(int slab, int sizeClass)
+        {
+            int chunkSize = chunkSizes[sizeClass];
+            long handle = slabFreeHead[slab];
+            if (handle != 0) {
+                slabFreeHead[slab] = getLong(handle, NEXT);
+            }
+            else {
+                handle = handle(slab, slabBump[slab]);
+                slabBump[slab] += chunkSize;
+            }
+            slabInUse[slab]++;
+            if (slabFreeHead[slab] == 0 && slabBump[slab] + chunkSize > slabSize) {
+                removeSlab(slab);  // full
+            }
+            return handle;
+        }
+
+        private void freeChunk(long handle)
+        {
+            int slab = slabIndex(handle);
+            putLong(handle, NEXT, slabFreeHead[slab]);
+            slabFreeHead[slab] = handle;
+            putInt(handle, KEY_LENGTH, -1);
+            slabInUse[slab]--;
+            if (slabInUse[slab] == 0) {
+                // the whole slab is free, any size class can take it
+                if (slabPartial[slab]) {
+                    removeSlab(slab);
+                }
+                classSlabs[slabClass[slab]]--;
+                slabClass[slab] = -1;
+                pushSlab(slab, -1);
+            }
+            else if (!slabPartial[slab]) {
+                pushSlab(slab, slabClass[slab]);
+            }
+        }
+
+        /**
+         * evict the lru entry of the size class, or all entries of a slab of the size class with the oldest lru entry.
+         * a size class evicts its own entries while its lru entry is at least half as old as the oldest one,
+         * within the same second only once it has as many slabs
+         */
+        private void evictFor(int sizeClass, long now)
+        {
+            int oldest = -1;
+            for (int i = 0; i < chunkSizes.length; i++) {
+                if (lruTail[i] != 0 && (oldest < 0 || getInt(lruTail[i], ACCESS_TIME) < getInt(lruTail[oldest], ACCESS_TIME)
+                        || getInt(lruTail[i], ACCESS_TIME) == getInt(lruTail[oldest], ACCESS_TIME) && classSlabs[i] > classSlabs[oldest])) {
+                    oldest = i;
+                }
+            }
+            int time = accessTime(now);
+            long age = lruTail[sizeClass] == 0 ? -1 : time - getInt(lruTail[sizeClass], ACCESS_TIME);
+            long oldestAge = time - getInt(lruTail[oldest], ACCESS_TIME);
+            if (age * 2 >= oldestAge && (age < oldestAge || classSlabs[sizeClass] >= classSlabs[oldest])) {
+                removeEntry(lruTail[sizeClass]);
+                evictionCount.increment();
+                return;
+            }
+            int slab = slabIndex(lruTail[oldest]);
+            int chunkSize = chunkSizes[oldest];
+            int end = slabBump[slab];
+            for (int offset = 0; offset < end; offset += chunkSize) {
+                long chunk = handle(slab, offset);
+                if (getInt(chunk, KEY_LENGTH) >= 0) {  // freed chunks have no key
+                    removeEntry(chunk);
+                    evictionCount.increment();
+                }
+            }
+        }
+
+        /**
+         * @param sizeClass -1 is the list of empty slabs
+         */
+        private void pushSlab(int slab, int sizeClass)
+        {
+            int head = sizeClass < 0 ? emptyHead : partialHead[sizeClass];
+            slabPrev[slab] = -1;
+            slabNext[slab] = head;
+            if (head >= 0) {
+                slabPrev[head] = slab;
+            }
+            if (sizeClass < 0) {
+                emptyHead = slab;
+            }
+            else {
+                partialHead[sizeClass] = slab;
+                slabPartial[slab] = true;
+            }
+        }
+
+        private void removeSlab(int slab)
+        {
+            int prev = slabPrev[slab];
+            int next = slabNext[slab];
+            if (prev >= 0) {
+                slabNext[prev] = next;
+            }
+            else if (slabClass[slab] < 0) {
+                emptyHead = next;
+            }
+            else {
+                partialHead[slabClass[slab]] = next;
+            }
+            if (next >= 0) {
+                slabPrev[next] = prev;
+            }
+            slabPartial[slab] = false;
+        }
+
+        //---- lru list and hash table ----
+
+        private int accessTime(long now)
+        {
+            return (int) ((now - createTime) / 1000);
+        }
+
+        private void linkHead(long handle, long now)
+        {
+            int sizeClass = slabClass[slabIndex(handle)];
+            putInt(handle, ACCESS_TIME, accessTime(now));
+            putLong(handle, LRU_PREV, 0);
+            putLong(handle, LRU_NEXT, lruHead[sizeClass]);
+            if (lruHead[sizeClass] != 0) {
+                putLong(lruHead[sizeClass], LRU_PREV, handle);
+            }
+            lruHead[sizeClass] = handle;
+            if (lruTail[sizeClass] == 0) {
+                lruTail[sizeClass] = handle;
+            }
+        }
+
+        private void unlink(long handle)
+        {
+            int sizeClass = slabClass[slabIndex(handle)];
+            long prev = getLong(handle, LRU_PREV);
+            long next = getLong(handle, LRU_NEXT);
+            if (prev == 0) {
+                lruHead[sizeClass] = next;
+            }
+            else {
+                putLong(prev, LRU_NEXT, next);
+            }
+            if (next == 0) {
+                lruTail[sizeClass] = prev;
+            }
+            else {
+                putLong(next, LRU_PREV, prev);
+            }
+        }
+
+        private void moveToHead(long handle, long now)
+        {
+            unlink(handle);
+            linkHead(handle, now);
+        }
+
+        private void resize()
+        {
+            long[] newTable = new long[table.length * 2];
+            int mask = newTable.length - 1;
+            for (long head : table) {
+                long handle = head;
+                while (handle != 0) {
+                    long next = getLong(handle, NEXT);
+                    int bucket = getInt(handle, HASH) & mask;
+                    putLong(handle, NEXT, newTable[bucket]);
+                    newTable[bucket] = handle;
+                    handle = next;
+                }
+            }
+            this.table = newTable;
+        }
+
+        //---- entry handles ----
+
+        private long handle(int slab, int offset)
+        {
+            return ((long) (slab + 1) << 32) | offset;
+        }
+
+        private int slabIndex(long handle)
+        {
+            return (int) (handle >>> 32) - 1;
+        }
+
+        private int offset(long handle)
+        {
+            return (int) handle;
+        }
+
+        private ByteBuffer slab(long handle)
+        {
+            return slabs[slabIndex(handle)];
+        }
+
+        private long getLong(long handle, int field)
+        {
+            return slab(handle).getLong(offset(handle) + field);
+        }
+
+        private void putLong(long handle, int field, long value)
+        {
+            slab(handle).putLong(offset(handle) + field, value);
+        }
+
+        private int getInt(long handle, int field)
+        {
+            return slab(handle).getInt(offset(handle) + field);
+        }
+
+        private void putInt(long handle, int field, int value)
+        {
+            slab(handle).putInt(offset(handle) + field, value);
+        }
+    }
+}
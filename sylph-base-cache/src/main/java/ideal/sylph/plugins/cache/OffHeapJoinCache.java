@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.cache;
+
+/**
+ * {@link JoinCache} on {@link OffHeapCache}, keys and rows are stored in binary form by {@link RowCodec}
+ */
+public class OffHeapJoinCache
+        implements JoinCache
+{
+    private final OffHeapCache cache;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    /**
+     * @param capacityBytes max native memory
+     * @param ttlMillis time to live after write, {@code <= 0} is not cached, the same as the heap cache
+     * @param negativeTtlMillis time to live of a cached miss (empty rows), {@code <= 0} misses are not cached
+     */
+    public OffHeapJoinCache(long capacityBytes, long ttlMillis, long negativeTtlMillis)
+    {
+        this.cache = new OffHeapCache(capacityBytes, ttlMillis, Runtime.getRuntime().availableProcessors() * 2);
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    @Override
+    public Object[][] getIfPresent(Object[] key)
+    {
+        byte[] value = cache.get(RowCodec.encodeKey(key));
+        return value == null ? null : RowCodec.decodeRows(value);
+    }
+
+    @Override
+    public void put(Object[] key, Object[][] rows)
+    {
+        long ttl = rows.length == 0 ? negativeTtlMillis : ttlMillis;
+        byte[] binaryKey = RowCodec.encodeKey(key);
+        if (ttl <= 0) {
+            // not cached, an older value of the key must not outlive it
+            cache.remove(binaryKey);
+            return;
+        }
+        cache.put(binaryKey, RowCodec.encodeRows(rows), ttl);
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        return cache.stats();
+    }
+
+    @Override
+    public void close()
+    {
+        cache.close();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class OffHeapCacheTest
+{
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void putGetOverwrite()
+    {
+        try (OffHeapCache cache = new OffHeapCache(1 << 20, 0, 4)) {
+            Assert.assertNull(cache.get(bytes("k1")));
+            cache.put(bytes("k1"), bytes("v1"));
+            cache.put(bytes("key_longer_than_8_bytes"), bytes("v2"));
+            Assert.assertArrayEquals(bytes("v1"), cache.get(bytes("k1")));
+            Assert.assertArrayEquals(bytes("v2"), cache.get(bytes("key_longer_than_8_bytes")));
+
+            cache.put(bytes("k1"), bytes("new value"));
+            Assert.assertArrayEquals(bytes("new value"), cache.get(bytes("k1")));
+            Assert.assertEquals(2, cache.size());
+
+            cache.remove(bytes("k1"));
+            Assert.assertNull(cache.get(bytes("k1")));
+            Assert.assertEquals(1, cache.size());
+
+            CacheStats stats = cache.stats();
+            Assert.assertEquals(3, stats.getHitCount());
+            Assert.assertEquals(2, stats.getMissCount());
+        }
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedWhenFull()
+    {
+        // one segment, room for 3 entries of 48 + 2 + 2 bytes in 56 byte chunks
+        try (OffHeapCache cache = new OffHeapCache(3 * 56, 0, 1)) {
+            cache.put(bytes("k1"), bytes("v1"));
+            cache.put(bytes("k2"), bytes("v2"));
+            cache.put(bytes("k3"), bytes("v3"));
+            Assert.assertNotNull(cache.get(bytes("k1")));  // k2 is the lru now
+
+            cache.put(bytes("k4"), bytes("v4"));
+            Assert.assertNull(cache.get(bytes("k2")));
+            Assert.assertNotNull(cache.get(bytes("k1")));
+            Assert.assertNotNull(cache.get(bytes("k3")));
+            Assert.assertNotNull(cache.get(bytes("k4")));
+            Assert.assertEquals(1, cache.stats().getEvictionCount());
+            Assert.assertEquals(3 * 56, cache.usedBytes());
+        }
+    }
+
+    @Test
+    public void slabsMoveToTheSizeClassInUse()
+    {
+        // one segment of 16 slabs, all taken by small entries first
+        try (OffHeapCache cache = new OffHeapCache(16 * 16 << 10, 0, 1)) {
+            for (int i = 0; i < 10_000; i++) {
+                cache.put(bytes("k" + i), bytes("v" + i));
+            }
+            byte[] large = new byte[1000];
+            for (int i = 0; i < 50; i++) {
+                cache.put(bytes("large" + i), large);
+            }
+            for (int i = 0; i < 50; i++) {
+                Assert.assertNotNull(cache.get(bytes("large" + i)));
+            }
+            Assert.assertTrue(cache.size() > 1000);  // the small entries keep the other slabs
+        }
+    }
+
+    @Test
+    public void expireAfterTtl()
+            throws InterruptedException
+    {
+        try (OffHeapCache cache = new OffHeapCache(1 << 20, 0, 1)) {
+            cache.put(bytes("k1"), bytes("v1"), 1);
+            cache.put(bytes("k2"), bytes("v2"));
+            Thread.sleep(10);
+            Assert.assertNull(cache.get(bytes("k1")));
+            Assert.assertNotNull(cache.get(bytes("k2")));
+            Assert.assertEquals(1, cache.size());
+        }
+    }
+
+    @Test
+    public void manyKeysResizeTable()
+    {
+        try (OffHeapCache cache = new OffHeapCache(64 << 20, 0, 8)) {
+            for (int i = 0; i < 10_000; i++) {
+                cache.put(bytes("key" + i), bytes("value" + i));
+            }
+            for (int i = 0; i < 10_000; i++) {
+                Assert.assertArrayEquals(bytes("value" + i), cache.get(bytes("key" + i)));
+            }
+            cache.invalidateAll();
+            Assert.assertEquals(0, cache.size());
+            Assert.assertEquals(0, cache.usedBytes());
+        }
+    }
+
+    @Test
+    public void joinCacheZeroTtlIsNotCached()
+    {
+        // 0 means not cached, the same as expireAfterWrite(0) of the heap cache
+        try (OffHeapJoinCache cache = new OffHeapJoinCache(1 << 20, 60_000, 0)) {
+            Object[] key = new Object[] {"k1"};
+            cache.put(key, new Object[][] {new Object[] {"k1", 1}});
+            Assert.assertEquals(1, cache.getIfPresent(key).length);
+            cache.put(key, new Object[0][]);
+            Assert.assertNull(cache.getIfPresent(key));
+        }
+        try (OffHeapJoinCache cache = new OffHeapJoinCache(1 << 20, 0, 60_000)) {
+            Object[] key = new Object[] {"k1"};
+            cache.put(key, new Object[][] {new Object[] {"k1", 1}});
+            Assert.assertNull(cache.getIfPresent(key));
+            cache.put(key, new Object[0][]);
+            Assert.assertEquals(0, cache.getIfPresent(key).length);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+public class RowCodecTest
+{
+    @Test
+    public void rowsRoundTrip()
+    {
+        Timestamp timestamp = new Timestamp(1546300800123L);
+        timestamp.setNanos(123456789);
+        Object[][] rows = new Object[][] {
+                {"sylph", 1, 2L, 3.5D, null, true, new BigDecimal("-12.345"), timestamp},
+                {"中文", Integer.MIN_VALUE, Long.MAX_VALUE, Double.NaN, null, false, BigDecimal.ZERO, null}};
+
+        Object[][] decoded = RowCodec.decodeRows(RowCodec.encodeRows(rows));
+        Assert.assertEquals(2, decoded.length);
+        Assert.assertArrayEquals(rows[0], decoded[0]);
+        Assert.assertArrayEquals(rows[1], decoded[1]);
+
+        Assert.assertEquals(0, RowCodec.decodeRows(RowCodec.encodeRows(new Object[0][])).length);
+    }
+
+    @Test
+    public void keyEncodingIsTyped()
+    {
+        Assert.assertArrayEquals(RowCodec.encodeKey(new Object[] {"1", 2L}), RowCodec.encodeKey(new Object[] {"1", 2L}));
+        Assert.assertFalse(Arrays.equals(RowCodec.encodeKey(new Object[] {"1"}), RowCodec.encodeKey(new Object[] {1})));
+    }
+}
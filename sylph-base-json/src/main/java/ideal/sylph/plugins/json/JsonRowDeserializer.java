@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import ideal.sylph.etl.Schema;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Streaming json decoder compiled once from the table schema, shared by the flink and spark kafka sources.
+ * <p>
+ * A message is read token by token with jackson {@link JsonParser}: top level fields are matched to their
+ * column by a precomputed index and converted by the column type, unknown fields are skipped without
+ * being parsed into objects, no intermediate {@code Map} is built.
+ * The columns {@code _topic, _key, _message, _partition, _offset} are filled from the kafka record.
+ * <p>
+ * {@code list<T>} columns are decoded to java arrays, primitive arrays for numeric and boolean elements
+ * (the same as the flink {@code PRIMITIVE_ARRAY} type), {@code map<string, T>} columns to {@link HashMap}.
+ */
+public class JsonRowDeserializer
+        implements Serializable
+{
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String[] names;
+    private final FieldReader[] readers;
+    private final Map<String, Integer> fieldIndex = new HashMap<>();
+    private final int topicIndex;
+    private final int keyIndex;
+    private final int messageIndex;
+    private final int partitionIndex;
+    private final int offsetIndex;
+
+    public JsonRowDeserializer(Schema schema)
+    {
+        requireNonNull(schema, "schema is null");
+        this.names = schema.getFieldNames().toArray(new String[0]);
+        this.readers = schema.getFieldTypes().stream().map(FieldReader::compile).toArray(FieldReader[]::new);
+        for (int i = 0; i < names.length; i++) {
+            fieldIndex.put(names[i], i);
+        }
+        this.topicIndex = metaIndex("_topic");
+        this.keyIndex = metaIndex("_key");
+        this.messageIndex = metaIndex("_message");
+        this.partitionIndex = metaIndex("_partition");
+        this.offsetIndex = metaIndex("_offset");
+    }
+
+    /**
+     * meta columns are never read from the json message
+     */
+    private int metaIndex(String name)
+    {
+        Integer index = fieldIndex.remove(name);
+        return index == null ? -1 : index;
+    }
+
+    public String[] getFieldNames()
+    {
+        return names;
+    }
+
+    /**
+     * @return field values in the schema order, null for missing fields
+     */
+    public Object[] deserialize(byte[] messageKey, byte[] message, String topic, int partition, long offset)
+            throws IOException
+    {
+        Object[] values = new Object[names.length];
+        deserialize(messageKey, message, topic, partition, offset, (index, value) -> values[index] = value);
+        return values;
+    }
+
+    /**
+     * decodes the message straight into the caller's row, e.g. {@code flinkRow::setField},
+     * fields missing from the message are not written
+     */
+    public void deserialize(byte[] messageKey, byte[] message, String topic, int partition, long offset, FieldWriter target)
+            throws IOException
+    {
+        try (JsonParser parser = JSON_FACTORY.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("json message must be an object, but is " + parser.getCurrentToken());
+            }
+            String name;
+            while ((name = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                Integer index = fieldIndex.get(name);
+                if (index == null) {
+                    parser.skipChildren();
+                    continue;
+                }
+                try {
+                    target.setField(index, readers[index].read(parser, token));
+                }
+                catch (IOException | IllegalArgumentException e) {
+                    throw new IOException("decode json field " + name + " failed", e);
+                }
+            }
+        }
+
+        if (topicIndex >= 0) {
+            target.setField(topicIndex, topic);
+        }
+        if (keyIndex >= 0) {
+            target.setField(keyIndex, messageKey == null ? null : new String(messageKey, UTF_8));
+        }
+        if (messageIndex >= 0) {
+            target.setField(messageIndex, new String(message, UTF_8));
+        }
+        if (partitionIndex >= 0) {
+            target.setField(partitionIndex, partition);
+        }
+        if (offsetIndex >= 0) {
+            target.setField(offsetIndex, offset);
+        }
+    }
+
+    /**
+     * the row a message is decoded into, index is the column index of the schema
+     */
+    @FunctionalInterface
+    public interface FieldWriter
+    {
+        void setField(int index, Object value);
+    }
+
+    private enum Kind
+    {
+        STRING, INT, LONG, BOOLEAN, DOUBLE, FLOAT, BYTE, TIMESTAMP, DATE, BINARY, MAP, LIST, OBJECT
+    }
+
+    /**
+     * decoder of one column type, compiled from the java type of the schema
+     */
+    private static final class FieldReader
+            implements Serializable
+    {
+        private final Kind kind;
+        private final FieldReader element;  // list element or map value
+        private final Class<?> arrayClass;  // the java type this reader produces inside an array
+
+        private FieldReader(Kind kind, FieldReader element, Class<?> arrayClass)
+        {
+            this.kind = kind;
+            this.element = element;
+            this.arrayClass = arrayClass;
+        }
+
+        private static FieldReader compile(Type type)
+        {
+            if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == Map.class) {
+                FieldReader value = compile(((ParameterizedType) type).getActualTypeArguments()[1]);
+                return new FieldReader(Kind.MAP, value, Map.class);
+            }
+            if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == List.class) {
+                FieldReader element = compile(((ParameterizedType) type).getActualTypeArguments()[0]);
+                return new FieldReader(Kind.LIST, element, Array.newInstance(element.arrayClass, 0).getClass());
+            }
+            if (type == String.class) {
+                return new FieldReader(Kind.STRING, null, String.class);
+            }
+            else if (type == int.class || type == Integer.class) {
+                return new FieldReader(Kind.INT, null, int.class);
+            }
+            else if (type == long.class || type == Long.class) {
+                return new FieldReader(Kind.LONG, null, long.class);
+            }
+            else if (type == boolean.class || type == Boolean.class) {
+                return new FieldReader(Kind.BOOLEAN, null, boolean.class);
+            }
+            else if (type == double.class || type == Double.class) {
+                return new FieldReader(Kind.DOUBLE, null, double.class);
+            }
+            else if (type == float.class || type == Float.class) {
+                return new FieldReader(Kind.FLOAT, null, float.class);
+            }
+            else if (type == byte.class || type == Byte.class) {
+                return new FieldReader(Kind.BYTE, null, byte.class);
+            }
+            else if (type == Timestamp.class) {
+                return new FieldReader(Kind.TIMESTAMP, null, Timestamp.class);
+            }
+            else if (type == Date.class) {
+                return new FieldReader(Kind.DATE, null, Date.class);
+            }
+            else if (type == byte[].class) {
+                return new FieldReader(Kind.BINARY, null, byte[].class);
+            }
+            else {
+                return new FieldReader(Kind.OBJECT, null, Object.class);
+            }
+        }
+
+        /**
+         * @param token the current token of the parser, the first token of the value
+         */
+        private Object read(JsonParser parser, JsonToken token)
+                throws IOException
+        {
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            switch (kind) {
+                case STRING:
+                    return token.isScalarValue() ? parser.getText() : copyToString(parser);
+                case INT:
+                    return token == JsonToken.VALUE_STRING ? Integer.parseInt(parser.getText().trim()) : parser.getIntValue();
+                case LONG:
+                    return token == JsonToken.VALUE_STRING ? Long.parseLong(parser.getText().trim()) : parser.getLongValue();
+                case BOOLEAN:
+                    if (token == JsonToken.VALUE_STRING) {
+                        return Boolean.parseBoolean(parser.getText().trim());
+                    }
+                    return token.isNumeric() ? parser.getIntValue() != 0 : parser.getBooleanValue();
+                case DOUBLE:
+                    return token == JsonToken.VALUE_STRING ? Double.parseDouble(parser.getText().trim()) : parser.getDoubleValue();
+                case FLOAT:
+                    return token == JsonToken.VALUE_STRING ? Float.parseFloat(parser.getText().trim()) : parser.getFloatValue();
+                case BYTE:
+                    return token == JsonToken.VALUE_STRING ? Byte.parseByte(parser.getText().trim()) : (byte) parser.getIntValue();
+                case TIMESTAMP:
+                    // epoch millis or `yyyy-mm-dd hh:mm:ss[.f...]`
+                    return token.isNumeric() ? new Timestamp(parser.getLongValue()) : Timestamp.valueOf(parser.getText().trim());
+                case DATE:
+                    return token.isNumeric() ? new Date(parser.getLongValue()) : Date.valueOf(parser.getText().trim());
+                case BINARY:
+                    // base64 string
+                    return parser.getBinaryValue();
+                case MAP:
+                    return readMap(parser, token);
+                case LIST:
+                    return readArray(parser, token);
+                default:
+                    return readAny(parser, token);
+            }
+        }
+
+        private Map<String, Object> readMap(JsonParser parser, JsonToken token)
+                throws IOException
+        {
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("expected an object, but is " + token);
+            }
+            Map<String, Object> map = new HashMap<>();
+            String key;
+            while ((key = parser.nextFieldName()) != null) {
+                map.put(key, element.read(parser, parser.nextToken()));
+            }
+            return map;
+        }
+
+        private Object readArray(JsonParser parser, JsonToken token)
+                throws IOException
+        {
+            if (token != JsonToken.START_ARRAY) {
+                throw new IOException("expected an array, but is " + token);
+            }
+            List<Object> list = new ArrayList<>();
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                list.add(element.read(parser, token));
+            }
+            Object array = Array.newInstance(element.arrayClass, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Object value = list.get(i);
+                if (value != null) {
+                    // null elements of primitive arrays stay 0
+                    Array.set(array, i, value);
+                }
+            }
+            return array;
+        }
+
+        /**
+         * natural java value of an `object` column: String, Number, Boolean, Map or List
+         */
+        private static Object readAny(JsonParser parser, JsonToken token)
+                throws IOException
+        {
+            switch (token) {
+                case START_OBJECT:
+                    Map<String, Object> map = new HashMap<>();
+                    String key;
+                    while ((key = parser.nextFieldName()) != null) {
+                        map.put(key, readAny(parser, parser.nextToken()));
+                    }
+                    return map;
+                case START_ARRAY:
+                    List<Object> list = new ArrayList<>();
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        list.add(readAny(parser, token));
+                    }
+                    return list;
+                case VALUE_STRING:
+                    return parser.getText();
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    return parser.getNumberValue();
+                case VALUE_TRUE:
+                    return true;
+                case VALUE_FALSE:
+                    return false;
+                case VALUE_EMBEDDED_OBJECT:
+                    return parser.getEmbeddedObject();
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * a json object or array in a string column is kept as json text
+         */
+        private static String copyToString(JsonParser parser)
+                throws IOException
+        {
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+                generator.copyCurrentStructure(parser);
+            }
+            return writer.toString();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import ideal.sylph.etl.Row;
+import ideal.sylph.etl.Schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Row to utf-8 json bytes, compiled once from the sink schema.
+ * <p>
+ * Field names are pre-encoded and typed columns are written without a type lookup, the generator
+ * and its output buffer are reused, so a record costs one byte array. Null fields are omitted.
+ * timestamp and date columns are written as {@code toString()}, which {@link JsonRowDeserializer} reads back.
+ * Instances are not thread safe.
+ */
+public class JsonRowSerializer
+        implements Serializable
+{
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private enum Kind
+    {
+        STRING, LONG, INT, DOUBLE, BOOLEAN, OTHER
+    }
+
+    private final String[] names;
+    private final Kind[] kinds;
+
+    private transient SerializedString[] serializedNames;
+    private transient ByteArrayOutputStream buffer;
+    private transient JsonGenerator generator;
+
+    public JsonRowSerializer(Schema schema)
+    {
+        requireNonNull(schema, "schema is null");
+        List<String> fieldNames = schema.getFieldNames();
+        List<Type> types = schema.getFieldTypes();
+        this.names = fieldNames.toArray(new String[0]);
+        this.kinds = new Kind[names.length];
+        for (int i = 0; i < names.length; i++) {
+            kinds[i] = kindOf(types.get(i));
+        }
+    }
+
+    private static Kind kindOf(Type type)
+    {
+        if (type == String.class) {
+            return Kind.STRING;
+        }
+        else if (type == long.class || type == Long.class) {
+            return Kind.LONG;
+        }
+        else if (type == int.class || type == Integer.class) {
+            return Kind.INT;
+        }
+        else if (type == double.class || type == Double.class) {
+            return Kind.DOUBLE;
+        }
+        else if (type == boolean.class || type == Boolean.class) {
+            return Kind.BOOLEAN;
+        }
+        return Kind.OTHER;
+    }
+
+    public byte[] serialize(Row row)
+            throws IOException
+    {
+        if (generator == null) {
+            this.serializedNames = new SerializedString[names.length];
+            for (int i = 0; i < names.length; i++) {
+                serializedNames[i] = new SerializedString(names[i]);
+            }
+            this.buffer = new ByteArrayOutputStream(256);
+            this.generator = JSON_FACTORY.createGenerator(buffer);
+            generator.setRootValueSeparator(null);
+        }
+
+        generator.writeStartObject();
+        for (int i = 0; i < names.length; i++) {
+            if (row.isNullAt(i)) {
+                continue;
+            }
+            generator.writeFieldName(serializedNames[i]);
+            switch (kinds[i]) {
+                case STRING:
+                    generator.writeString(row.<Object>getAs(i).toString());
+                    break;
+                case LONG:
+                    generator.writeNumber(row.getLong(i));
+                    break;
+                case INT:
+                    generator.writeNumber(row.getInt(i));
+                    break;
+                case DOUBLE:
+                    generator.writeNumber(row.getDouble(i));
+                    break;
+                case BOOLEAN:
+                    generator.writeBoolean(row.getBoolean(i));
+                    break;
+                default:
+                    writeValue(generator, row.getAs(i));
+            }
+        }
+        generator.writeEndObject();
+        generator.flush();
+
+        byte[] bytes = buffer.toByteArray();
+        buffer.reset();
+        return bytes;
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value)
+            throws IOException
+    {
+        if (value == null) {
+            generator.writeNull();
+        }
+        else if (value instanceof String) {
+            generator.writeString((String) value);
+        }
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        }
+        else if (value instanceof Double || value instanceof Float) {
+            generator.writeNumber(((Number) value).doubleValue());
+        }
+        else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        }
+        else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof byte[]) {
+            generator.writeBinary((byte[]) value);
+        }
+        else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        }
+        else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(generator, element);
+            }
+            generator.writeEndArray();
+        }
+        else if (value.getClass().isArray()) {
+            generator.writeStartArray();
+            for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                writeValue(generator, Array.get(value, i));
+            }
+            generator.writeEndArray();
+        }
+        else {
+            // java.sql.Timestamp and java.sql.Date are written by toString()
+            generator.writeString(value.toString());
+        }
+    }
+}
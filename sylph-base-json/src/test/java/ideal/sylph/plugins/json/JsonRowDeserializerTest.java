@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.json;
+
+import ideal.sylph.etl.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class JsonRowDeserializerTest
+{
+    private static List<Long> longList;
+    private static List<String> stringList;
+    private static Map<String, String> stringMap;
+
+    private static JsonRowDeserializer create()
+            throws Exception
+    {
+        Schema schema = Schema.newBuilder()
+                .add("_topic", String.class)
+                .add("user_id", String.class)
+                .add("ip", String.class)
+                .add("event_time", long.class)
+                .add("score", double.class)
+                .add("ids", JsonRowDeserializerTest.class.getDeclaredField("longList").getGenericType())
+                .add("tags", JsonRowDeserializerTest.class.getDeclaredField("stringList").getGenericType())
+                .add("props", JsonRowDeserializerTest.class.getDeclaredField("stringMap").getGenericType())
+                .add("ts", Timestamp.class)
+                .add("_offset", long.class)
+                .build();
+        return new JsonRowDeserializer(schema);
+    }
+
+    @Test
+    public void deserialize()
+            throws Exception
+    {
+        String json = "{\"unknown\":{\"a\":[1,{\"b\":2}]},\"user_id\":\"uid_1\",\"event_time\":1554000000000,\"score\":1," +
+                "\"ids\":[1,2,3],\"tags\":[\"a\",null],\"props\":{\"k\":1,\"o\":{\"x\":true}},\"ts\":0,\"_topic\":\"json\"}";
+        Object[] values = create().deserialize(null, json.getBytes(UTF_8), "topic1", 0, 10L);
+
+        Assert.assertEquals("topic1", values[0]);
+        Assert.assertEquals("uid_1", values[1]);
+        Assert.assertNull(values[2]);
+        Assert.assertEquals(1554000000000L, values[3]);
+        Assert.assertEquals(1.0D, values[4]);
+        Assert.assertArrayEquals(new long[] {1, 2, 3}, (long[]) values[5]);
+        Assert.assertArrayEquals(new String[] {"a", null}, (String[]) values[6]);
+        Map<?, ?> props = (Map<?, ?>) values[7];
+        Assert.assertEquals("1", props.get("k"));
+        Assert.assertEquals("{\"x\":true}", props.get("o"));
+        Assert.assertEquals(new Timestamp(0), values[8]);
+        Assert.assertEquals(10L, values[9]);
+    }
+
+    @Test
+    public void deserializeIntoTarget()
+            throws Exception
+    {
+        Object[] row = new Object[10];
+        create().deserialize(null, "{\"user_id\":\"uid_1\",\"score\":2.5}".getBytes(UTF_8), "topic1", 0, 10L, (index, value) -> row[index] = value);
+
+        Assert.assertArrayEquals(new Object[] {"topic1", "uid_1", null, null, 2.5D, null, null, null, null, 10L}, row);
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongTypeFails()
+            throws Exception
+    {
+        create().deserialize(null, "{\"event_time\":\"abc\"}".getBytes(UTF_8), "topic1", 0, 0L);
+    }
+
+    @Test(expected = IOException.class)
+    public void notObjectFails()
+            throws Exception
+    {
+        create().deserialize(null, "[1]".getBytes(UTF_8), "topic1", 0, 0L);
+    }
+}
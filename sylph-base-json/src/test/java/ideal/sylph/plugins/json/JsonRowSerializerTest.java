@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.json;
+
+import ideal.sylph.etl.Row;
+import ideal.sylph.etl.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class JsonRowSerializerTest
+{
+    @Test
+    public void serialize()
+            throws Exception
+    {
+        Schema schema = Schema.newBuilder()
+                .add("user_id", String.class)
+                .add("event_time", long.class)
+                .add("score", double.class)
+                .add("ip", String.class)
+                .add("props", Object.class)
+                .add("ts", Timestamp.class)
+                .build();
+        JsonRowSerializer serializer = new JsonRowSerializer(schema);
+        Row row = Row.of(new Object[] {"uid_\"1", 1554000000000L, 1.5D, null, Collections.singletonMap("ids", Arrays.asList(1, 2)), new Timestamp(0)});
+
+        String expected = "{\"user_id\":\"uid_\\\"1\",\"event_time\":1554000000000,\"score\":1.5,\"props\":{\"ids\":[1,2]},\"ts\":\"" + new Timestamp(0) + "\"}";
+        Assert.assertEquals(expected, new String(serializer.serialize(row), UTF_8));
+        // the generator is reused, no separator between records
+        Assert.assertEquals(expected, new String(serializer.serialize(row), UTF_8));
+
+        Object[] values = new JsonRowDeserializer(schema).deserialize(null, serializer.serialize(row), "topic", 0, 0);
+        Assert.assertEquals("uid_\"1", values[0]);
+        Assert.assertEquals(new Timestamp(0), values[5]);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import ideal.sylph.etl.Schema;
+import org.apache.avro.LogicalType;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.flink.types.Row;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.flink.shaded.guava18.com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * avro binary value, {@code value_type = avro}.
+ * The decoder reads the writer schema fields in order with {@link BinaryDecoder} and sets every field
+ * into the row column of the same name, no GenericRecord is built. Fields without a column are skipped.
+ * nested records and maps are decoded to {@code Map<String, Object>}, arrays to lists or the array type of the column
+ */
+public class AvroSchema
+        extends RegistryRowSchema<AvroSchema.RecordDecoder>
+{
+    private final String localSchema;
+
+    private transient BinaryDecoder decoderReuse;
+
+    public AvroSchema(Schema schema, String localSchema, SchemaRegistry registry)
+    {
+        this(schema, false, localSchema, registry);
+    }
+
+    /**
+     * @param rawBinary keep the {@code _key} and {@code _message} columns as byte[]
+     * @param localSchema avro schema json, may be null when a registry is given
+     * @param registry null means every message is written by the local schema
+     */
+    public AvroSchema(Schema schema, boolean rawBinary, String localSchema, SchemaRegistry registry)
+    {
+        super(schema, rawBinary, registry);
+        checkArgument(localSchema != null || registry != null, "avro value needs value_schema or value_schema.registry.url");
+        this.localSchema = localSchema;
+    }
+
+    @Override
+    protected RecordDecoder compileLocal()
+    {
+        return compile(localSchema);
+    }
+
+    @Override
+    protected RecordDecoder compile(String schema)
+    {
+        org.apache.avro.Schema writerSchema = new org.apache.avro.Schema.Parser().parse(requireNonNull(schema, "schema is null"));
+        checkArgument(writerSchema.getType() == org.apache.avro.Schema.Type.RECORD, "avro value schema must be a record, but is " + writerSchema.getType());
+        List<org.apache.avro.Schema.Field> fields = writerSchema.getFields();
+        ValueReader[] readers = new ValueReader[fields.size()];
+        int[] columns = new int[fields.size()];
+        for (int i = 0; i < readers.length; i++) {
+            org.apache.avro.Schema.Field field = fields.get(i);
+            columns[i] = columnIndex(field.name());
+            readers[i] = columns[i] >= 0 ? compileReader(field.schema()) : compileSkipper(field.schema());
+        }
+        return new RecordDecoder(readers, columns);
+    }
+
+    @Override
+    protected void decode(RecordDecoder decoder, byte[] message, int offset, int length, Row row)
+            throws IOException
+    {
+        this.decoderReuse = DecoderFactory.get().binaryDecoder(message, offset, length, decoderReuse);
+        ValueReader[] readers = decoder.readers;
+        int[] columns = decoder.columns;
+        for (int i = 0; i < readers.length; i++) {
+            Object value = readers[i].read(decoderReuse);
+            if (columns[i] >= 0) {
+                row.setField(columns[i], toColumnValue(columns[i], value));
+            }
+        }
+    }
+
+    /**
+     * the compiled fields of one writer schema
+     */
+    static final class RecordDecoder
+    {
+        private final ValueReader[] readers;
+        private final int[] columns;  // writer field -> row position, -1 skip
+
+        private RecordDecoder(ValueReader[] readers, int[] columns)
+        {
+            this.readers = readers;
+            this.columns = columns;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueReader
+    {
+        Object read(Decoder in)
+                throws IOException;
+    }
+
+    /**
+     * skip strings and bytes of unused fields without copying them
+     */
+    private static ValueReader compileSkipper(org.apache.avro.Schema schema)
+    {
+        switch (schema.getType()) {
+            case STRING:
+                return in -> {
+                    in.skipString();
+                    return null;
+                };
+            case BYTES:
+                return in -> {
+                    in.skipBytes();
+                    return null;
+                };
+            case FIXED:
+                int size = schema.getFixedSize();
+                return in -> {
+                    in.skipFixed(size);
+                    return null;
+                };
+            default:
+                return compileReader(schema);
+        }
+    }
+
+    private static ValueReader compileReader(org.apache.avro.Schema schema)
+    {
+        LogicalType logicalType = schema.getLogicalType();
+        String logicalName = logicalType == null ? "" : logicalType.getName();
+        switch (schema.getType()) {
+            case NULL:
+                return in -> {
+                    in.readNull();
+                    return null;
+                };
+            case BOOLEAN:
+                return Decoder::readBoolean;
+            case INT:
+                if ("date".equals(logicalName)) {
+                    return in -> Date.valueOf(LocalDate.ofEpochDay(in.readInt()));
+                }
+                return Decoder::readInt;
+            case LONG:
+                if ("timestamp-millis".equals(logicalName)) {
+                    return in -> new Timestamp(in.readLong());
+                }
+                return Decoder::readLong;
+            case FLOAT:
+                return Decoder::readFloat;
+            case DOUBLE:
+                return Decoder::readDouble;
+            case STRING:
+                return Decoder::readString;
+            case BYTES:
+                return in -> {
+                    ByteBuffer buffer = in.readBytes(null);
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    return bytes;
+                };
+            case FIXED:
+                int size = schema.getFixedSize();
+                return in -> {
+                    byte[] bytes = new byte[size];
+                    in.readFixed(bytes);
+                    return bytes;
+                };
+            case ENUM:
+                List<String> symbols = schema.getEnumSymbols();
+                return in -> symbols.get(in.readEnum());
+            case UNION:
+                ValueReader[] branches = schema.getTypes().stream().map(AvroSchema::compileReader).toArray(ValueReader[]::new);
+                return in -> branches[in.readIndex()].read(in);
+            case ARRAY:
+                ValueReader element = compileReader(schema.getElementType());
+                return in -> {
+                    List<Object> list = new ArrayList<>();
+                    for (long n = in.readArrayStart(); n != 0; n = in.arrayNext()) {
+                        for (long i = 0; i < n; i++) {
+                            list.add(element.read(in));
+                        }
+                    }
+                    return list;
+                };
+            case MAP:
+                ValueReader value = compileReader(schema.getValueType());
+                return in -> {
+                    Map<String, Object> map = new HashMap<>();
+                    for (long n = in.readMapStart(); n != 0; n = in.mapNext()) {
+                        for (long i = 0; i < n; i++) {
+                            String key = in.readString();
+                            map.put(key, value.read(in));
+                        }
+                    }
+                    return map;
+                };
+            case RECORD:
+                List<org.apache.avro.Schema.Field> fields = schema.getFields();
+                String[] names = fields.stream().map(org.apache.avro.Schema.Field::name).toArray(String[]::new);
+                ValueReader[] readers = fields.stream().map(field -> compileReader(field.schema())).toArray(ValueReader[]::new);
+                return in -> {
+                    Map<String, Object> record = new HashMap<>();
+                    for (int i = 0; i < readers.length; i++) {
+                        record.put(names[i], readers[i].read(in));
+                    }
+                    return record;
+                };
+            default:
+                throw new IllegalArgumentException("not support avro type " + schema.getType());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import ideal.sylph.etl.Schema;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.typeutils.RowTypeInfo;
+import org.apache.flink.shaded.guava18.com.google.common.collect.BiMap;
+import org.apache.flink.shaded.guava18.com.google.common.collect.ImmutableBiMap;
+import org.apache.flink.streaming.util.serialization.KeyedDeserializationSchema;
+import org.apache.flink.types.Row;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ideal.sylph.runner.flink.actuator.StreamSqlUtil.schemaToRowTypeInfo;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.flink.shaded.guava18.com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Base of the binary value formats (avro, protobuf).
+ * Messages are decoded straight into the row positions of the table schema by a decoder compiled from the writer schema,
+ * here every message is decoded by the local schema, {@link RegistryRowSchema} reads the writer schemas from a registry.
+ * The columns {@code _topic, _key, _message, _partition, _offset} are filled from the kafka record.
+ * {@code raw.binary = true} keeps {@code _key} and {@code _message} as {@code byte[]} (sql type binary),
+ * otherwise {@code _key} is a utf-8 string and {@code _message} can not be declared, the value is not text.
+ */
+public abstract class BinaryRowSchema<D>
+        implements KeyedDeserializationSchema<Row>
+{
+    private static final BiMap<Class<?>, Class<?>> PRIMITIVE_TO_BOXED = ImmutableBiMap.<Class<?>, Class<?>>builder()
+            .put(int.class, Integer.class)
+            .put(long.class, Long.class)
+            .put(boolean.class, Boolean.class)
+            .put(double.class, Double.class)
+            .put(float.class, Float.class)
+            .put(byte.class, Byte.class)
+            .build();
+
+    private final RowTypeInfo rowTypeInfo;
+    private final Class<?>[] columnTypes;
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final int topicIndex;
+    private final int keyIndex;
+    private final int messageIndex;
+    private final int partitionIndex;
+    private final int offsetIndex;
+    private final boolean rawBinary;
+
+    private transient D localDecoder;
+
+    protected BinaryRowSchema(Schema schema, boolean rawBinary)
+    {
+        this.rowTypeInfo = schemaToRowTypeInfo(schema);
+        this.columnTypes = schema.getFieldTypes().stream().map(BinaryRowSchema::toColumnClass).toArray(Class<?>[]::new);
+        List<String> names = schema.getFieldNames();
+        for (int i = 0; i < names.size(); i++) {
+            columnIndex.put(names.get(i), i);
+        }
+        this.topicIndex = metaIndex("_topic");
+        this.keyIndex = metaIndex("_key");
+        this.messageIndex = metaIndex("_message");
+        this.partitionIndex = metaIndex("_partition");
+        this.offsetIndex = metaIndex("_offset");
+        this.rawBinary = rawBinary;
+
+        Class<?> rawType = rawBinary ? byte[].class : String.class;
+        checkArgument(keyIndex < 0 || columnTypes[keyIndex] == rawType,
+                "_key must be %s with raw.binary = %s", rawBinary ? "binary" : "varchar", rawBinary);
+        checkArgument(messageIndex < 0 || rawBinary,
+                "the binary value is not a utf-8 string, declare _message as binary with raw.binary = true");
+        checkArgument(messageIndex < 0 || columnTypes[messageIndex] == byte[].class, "_message must be binary with raw.binary = true");
+    }
+
+    private int metaIndex(String name)
+    {
+        Integer index = columnIndex.remove(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the row position of a writer schema field, -1 if the table has no such column
+     */
+    protected final int columnIndex(String fieldName)
+    {
+        return columnIndex.getOrDefault(fieldName, -1);
+    }
+
+    /**
+     * converts a decoded value to the java type of the column
+     */
+    protected final Object toColumnValue(int column, Object value)
+    {
+        return convert(value, columnTypes[column]);
+    }
+
+    /**
+     * compile the decoder of the local schema
+     */
+    protected abstract D compileLocal()
+            throws IOException;
+
+    protected abstract void decode(D decoder, byte[] message, int offset, int length, Row row)
+            throws IOException;
+
+    /**
+     * decode the kafka value into the row by the local schema
+     */
+    protected void decodeValue(byte[] message, String topic, int partition, long offset, Row row)
+            throws IOException
+    {
+        if (localDecoder == null) {
+            localDecoder = compileLocal();
+        }
+        decode(localDecoder, message, 0, message.length, row);
+    }
+
+    @Override
+    public Row deserialize(byte[] messageKey, byte[] message, String topic, int partition, long offset)
+            throws IOException
+    {
+        Row row = new Row(rowTypeInfo.getArity());
+        decodeValue(message, topic, partition, offset, row);
+
+        if (topicIndex >= 0) {
+            row.setField(topicIndex, topic);
+        }
+        if (keyIndex >= 0) {
+            row.setField(keyIndex, rawBinary || messageKey == null ? messageKey : new String(messageKey, UTF_8));
+        }
+        if (messageIndex >= 0) {
+            row.setField(messageIndex, message);
+        }
+        if (partitionIndex >= 0) {
+            row.setField(partitionIndex, partition);
+        }
+        if (offsetIndex >= 0) {
+            row.setField(offsetIndex, offset);
+        }
+        return row;
+    }
+
+    @Override
+    public boolean isEndOfStream(Row nextElement)
+    {
+        return false;
+    }
+
+    @Override
+    public TypeInformation<Row> getProducedType()
+    {
+        return rowTypeInfo;
+    }
+
+    /**
+     * java class of a column, list columns are arrays the same as the flink array type info
+     */
+    private static Class<?> toColumnClass(Type type)
+    {
+        if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == Map.class) {
+            return Map.class;
+        }
+        if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == List.class) {
+            Class<?> element = toColumnClass(((ParameterizedType) type).getActualTypeArguments()[0]);
+            return Array.newInstance(PRIMITIVE_TO_BOXED.inverse().getOrDefault(element, element), 0).getClass();
+        }
+        if (type instanceof Class) {
+            return PRIMITIVE_TO_BOXED.getOrDefault(type, (Class<?>) type);
+        }
+        return Object.class;
+    }
+
+    static Object convert(Object value, Class<?> target)
+    {
+        if (value == null || target == Object.class || target.isInstance(value)) {
+            return value;
+        }
+        if (target == String.class) {
+            return value.toString();
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (target == Long.class) {
+                return number.longValue();
+            }
+            else if (target == Integer.class) {
+                return number.intValue();
+            }
+            else if (target == Double.class) {
+                return number.doubleValue();
+            }
+            else if (target == Float.class) {
+                return number.floatValue();
+            }
+            else if (target == Byte.class) {
+                return number.byteValue();
+            }
+            else if (target == Timestamp.class) {
+                return new Timestamp(number.longValue());
+            }
+            else if (target == Date.class) {
+                return new Date(number.longValue());
+            }
+        }
+        if (value instanceof java.util.Date && target == Long.class) {
+            return ((java.util.Date) value).getTime();
+        }
+        if (value instanceof ByteBuffer && target == byte[].class) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        if (value instanceof List && target.isArray()) {
+            List<?> list = (List<?>) value;
+            Class<?> component = target.getComponentType();
+            Class<?> boxed = PRIMITIVE_TO_BOXED.getOrDefault(component, component);
+            Object array = Array.newInstance(component, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Object element = convert(list.get(i), boxed);
+                if (element != null) {
+                    // null elements of primitive arrays stay 0
+                    Array.set(array, i, element);
+                }
+            }
+            return array;
+        }
+        return value;
+    }
+}
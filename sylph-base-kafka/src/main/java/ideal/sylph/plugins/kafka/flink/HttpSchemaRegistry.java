@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * confluent schema registry rest api, {@code GET /schemas/ids/{id}}
+ */
+public class HttpSchemaRegistry
+        implements SchemaRegistry
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int TIMEOUT_MS = 10_000;
+
+    private final String url;
+
+    public HttpSchemaRegistry(String url)
+    {
+        requireNonNull(url, "url is null");
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    @Override
+    public String getSchema(int schemaId)
+            throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + "/schemas/ids/" + schemaId).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setRequestProperty("Accept", "application/vnd.schemaregistry.v1+json, application/json");
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("get schema " + schemaId + " from " + url + " failed, http code " + connection.getResponseCode());
+            }
+            try (InputStream inputStream = connection.getInputStream()) {
+                JsonNode schema = MAPPER.readTree(inputStream).get("schema");
+                if (schema == null) {
+                    throw new IOException("schema registry " + url + " response of id " + schemaId + " has no schema");
+                }
+                return schema.asText();
+            }
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return url;
+    }
+}
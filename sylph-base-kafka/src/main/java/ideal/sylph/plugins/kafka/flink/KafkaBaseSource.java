@@ -15,8 +15,10 @@
  */
 package ideal.sylph.plugins.kafka.flink;
 
+import ideal.sylph.etl.Schema;
 import ideal.sylph.etl.SourceContext;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeinfo.PrimitiveArrayTypeInfo;
 import org.apache.flink.api.common.typeinfo.Types;
 import org.apache.flink.api.java.typeutils.RowTypeInfo;
 import org.apache.flink.api.java.typeutils.TypeExtractor;
@@ -26,13 +28,18 @@ import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumerBase;
 import org.apache.flink.streaming.util.serialization.KeyedDeserializationSchema;
 import org.apache.flink.types.Row;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
+import static org.apache.flink.shaded.guava18.com.google.common.base.Preconditions.checkArgument;
 
 public abstract class KafkaBaseSource
 {
@@ -67,8 +74,7 @@ public abstract class KafkaBaseSource
         properties.put("group.id", groupId); //注意不同的流 group.id必须要不同 否则会出现offect commit提交失败的错误
         properties.put("auto.offset.reset", offsetMode); //latest   earliest
 
-        KeyedDeserializationSchema<Row> deserializationSchema = "json".equals(config.getValueType()) ?
-                new JsonSchema(context.getSchema()) : new RowDeserializer();
+        KeyedDeserializationSchema<Row> deserializationSchema = createValueSchema(config, context);
 
         List<String> topicSets = Arrays.asList(topics.split(","));
         //org.apache.flink.streaming.api.checkpoint.CheckpointedFunction
@@ -76,9 +82,87 @@ public abstract class KafkaBaseSource
         return execEnv.addSource(base);
     }
 
+    private static KeyedDeserializationSchema<Row> createValueSchema(KafkaSourceConfig config, SourceContext context)
+    {
+        String valueType = config.getValueType() == null ? "" : config.getValueType().trim().toLowerCase();
+        switch (valueType) {
+            case "json":
+                return new JsonSchema(context.getSchema());
+            case "avro":
+                byte[] avroSchema = config.getValueSchema() == null ? null : readSchemaFile(config.getValueSchema());
+                return new AvroSchema(context.getSchema(), config.isRawBinary(), avroSchema == null ? null : new String(avroSchema, UTF_8), createRegistry(config));
+            case "protobuf":
+                checkArgument(config.getValueSchema() != null, "protobuf value needs the descriptor set file value_schema");
+                checkArgument(config.getRegistryUrl() == null, "protobuf value not support value_schema.registry.url");
+                return new ProtobufSchema(context.getSchema(), config.isRawBinary(), readSchemaFile(config.getValueSchema()), config.getValueSchemaMessage());
+            default:
+                return new RowDeserializer(config.isRawBinary(), tableSchemaOrNull(context));
+        }
+    }
+
+    /**
+     * etl pipelines bind a SourceContext without a table schema, its getSchema() throws
+     */
+    private static Schema tableSchemaOrNull(SourceContext context)
+    {
+        try {
+            return context.getSchema();
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * the schema file is read on the client, the tasks only get its content
+     */
+    private static byte[] readSchemaFile(String path)
+    {
+        try {
+            return Files.readAllBytes(Paths.get(path));
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("read value_schema file " + path + " failed", e);
+        }
+    }
+
+    private static SchemaRegistry createRegistry(KafkaSourceConfig config)
+    {
+        String url = config.getRegistryUrl();
+        if (config.getRegistryClass() == null) {
+            return url == null ? null : new HttpSchemaRegistry(url);
+        }
+        try {
+            return Class.forName(config.getRegistryClass()).asSubclass(SchemaRegistry.class)
+                    .getConstructor(String.class)
+                    .newInstance(url);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("create schema registry " + config.getRegistryClass() + " failed", e);
+        }
+    }
+
+    /**
+     * the raw columns {@code _topic, _key, _message, _partition, _offset}.
+     * {@code raw.binary = true} keeps {@code _key} and {@code _message} as {@code byte[]} (sql type binary),
+     * otherwise they are decoded as utf-8 strings, and only when the table declares the column
+     */
     private static class RowDeserializer
             implements KeyedDeserializationSchema<Row>
     {
+        private final boolean rawBinary;
+        private final boolean readKey;
+        private final boolean readMessage;
+
+        private RowDeserializer(boolean rawBinary, Schema schema)
+        {
+            this.rawBinary = rawBinary;
+            // etl pipelines have no table schema, they read every column
+            List<String> columns = schema == null ? Collections.emptyList() : schema.getFieldNames();
+            this.readKey = columns.isEmpty() || columns.contains("_key");
+            this.readMessage = columns.isEmpty() || columns.contains("_message");
+        }
+
         @Override
         public boolean isEndOfStream(Row nextElement)
         {
@@ -90,20 +174,29 @@ public abstract class KafkaBaseSource
         {
             return Row.of(
                     topic, //topic
-                    messageKey == null ? null : new String(messageKey, UTF_8), //key
-                    new String(message, UTF_8), //message
+                    readKey ? decode(messageKey) : null, //key
+                    readMessage ? decode(message) : null, //message
                     partition,
                     offset
             );
         }
 
+        private Object decode(byte[] bytes)
+        {
+            if (rawBinary || bytes == null) {
+                return bytes;
+            }
+            return new String(bytes, UTF_8);
+        }
+
         @Override
         public TypeInformation<Row> getProducedType()
         {
+            TypeInformation<?> valueType = rawBinary ? PrimitiveArrayTypeInfo.BYTE_PRIMITIVE_ARRAY_TYPE_INFO : TypeExtractor.createTypeInfo(String.class);
             TypeInformation<?>[] types = new TypeInformation<?>[] {
                     TypeExtractor.createTypeInfo(String.class),
-                    TypeExtractor.createTypeInfo(String.class), //createTypeInformation[String]
-                    TypeExtractor.createTypeInfo(String.class),
+                    valueType, //key
+                    valueType, //message
                     Types.INT,
                     Types.LONG
             };
@@ -45,9 +45,29 @@ public class KafkaSourceConfig
     private String zookeeper = null;   //"localhost:2181"
 
     @Name("value_type")
-    @Description("this is kafka String value Type, use json")
+    @Description("this is kafka value type, json, avro or protobuf. default the raw _topic,_key,_message,_partition,_offset columns")
     private String valueType;
 
+    @Name("raw.binary")
+    @Description("this is whether _key and _message are byte[] (sql type binary) instead of utf-8 strings")
+    private boolean rawBinary = false;
+
+    @Name("value_schema")
+    @Description("this is the local schema file of the value, avro: .avsc schema, protobuf: descriptor set of protoc --include_imports --descriptor_set_out")
+    private String valueSchema = null;
+
+    @Name("value_schema.message")
+    @Description("this is the full protobuf message name in value_schema, default the first message of the last file")
+    private String valueSchemaMessage = null;
+
+    @Name("value_schema.registry.url")
+    @Description("this is the confluent schema registry url of avro values, messages must be in the registry wire format")
+    private String registryUrl = null;
+
+    @Name("value_schema.registry.class")
+    @Description("this is a custom SchemaRegistry class with a public (String url) constructor")
+    private String registryClass = null;
+
     public String getTopics()
     {
         return topics;
@@ -78,5 +98,30 @@ public class KafkaSourceConfig
         return valueType;
     }
 
+    public boolean isRawBinary()
+    {
+        return rawBinary;
+    }
+
+    public String getValueSchema()
+    {
+        return valueSchema;
+    }
+
+    public String getValueSchemaMessage()
+    {
+        return valueSchemaMessage;
+    }
+
+    public String getRegistryUrl()
+    {
+        return registryUrl;
+    }
+
+    public String getRegistryClass()
+    {
+        return registryClass;
+    }
+
     private KafkaSourceConfig() {}
 }
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.WireFormat;
+import ideal.sylph.etl.Schema;
+import org.apache.flink.types.Row;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * protobuf binary value, {@code value_type = protobuf}.
+ * The message type is read from a local descriptor set ({@code protoc --include_imports --descriptor_set_out}),
+ * {@code value_schema.message} is the full message name, default the first message of the last file.
+ * <p>
+ * The decoder reads the wire format with {@link CodedInputStream} and sets every field into the row column of
+ * the same name, no message object is built. Fields without a column are skipped. Missing proto3 scalar fields
+ * get their default value, except the members of a oneof, which are null unless they are the one set. Nested messages and map fields are decoded to {@code Map}, repeated fields to the
+ * array type of the column.
+ */
+public class ProtobufSchema
+        extends BinaryRowSchema<ProtobufSchema.MessageDecoder>
+{
+    private final byte[] descriptorSet;
+    private final String messageName;
+
+    public ProtobufSchema(Schema schema, byte[] descriptorSet, String messageName)
+    {
+        this(schema, false, descriptorSet, messageName);
+    }
+
+    /**
+     * @param rawBinary keep the {@code _key} and {@code _message} columns as byte[]
+     */
+    public ProtobufSchema(Schema schema, boolean rawBinary, byte[] descriptorSet, String messageName)
+    {
+        super(schema, rawBinary);
+        this.descriptorSet = requireNonNull(descriptorSet, "descriptorSet is null");
+        this.messageName = messageName;
+    }
+
+    @Override
+    protected MessageDecoder compileLocal()
+            throws IOException
+    {
+        return new MessageDecoder(findMessage(FileDescriptorSet.parseFrom(descriptorSet), messageName), field -> columnIndex(field.getName()));
+    }
+
+    @Override
+    protected void decode(MessageDecoder decoder, byte[] message, int offset, int length, Row row)
+            throws IOException
+    {
+        Object[] values = new Object[row.getArity()];
+        decoder.decode(CodedInputStream.newInstance(message, offset, length), values);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                row.setField(i, toColumnValue(i, values[i]));
+            }
+        }
+    }
+
+    static Descriptor findMessage(FileDescriptorSet descriptorSet, String messageName)
+            throws IOException
+    {
+        Map<String, FileDescriptorProto> protos = new HashMap<>();
+        for (FileDescriptorProto proto : descriptorSet.getFileList()) {
+            protos.put(proto.getName(), proto);
+        }
+        Map<String, FileDescriptor> files = new HashMap<>();
+        Descriptor first = null;
+        for (FileDescriptorProto proto : descriptorSet.getFileList()) {
+            FileDescriptor file = buildFile(proto.getName(), protos, files);
+            if (!file.getMessageTypes().isEmpty()) {
+                first = file.getMessageTypes().get(0);
+            }
+            if (messageName != null) {
+                for (Descriptor descriptor : file.getMessageTypes()) {
+                    Descriptor found = findNested(descriptor, messageName);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+            }
+        }
+        if (messageName != null || first == null) {
+            throw new IOException("not found protobuf message " + messageName + " in the descriptor set");
+        }
+        return first;
+    }
+
+    private static Descriptor findNested(Descriptor descriptor, String fullName)
+    {
+        if (descriptor.getFullName().equals(fullName)) {
+            return descriptor;
+        }
+        for (Descriptor nested : descriptor.getNestedTypes()) {
+            Descriptor found = findNested(nested, fullName);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static FileDescriptor buildFile(String name, Map<String, FileDescriptorProto> protos, Map<String, FileDescriptor> files)
+            throws IOException
+    {
+        FileDescriptor file = files.get(name);
+        if (file != null) {
+            return file;
+        }
+        FileDescriptorProto proto = protos.get(name);
+        if (proto == null) {
+            throw new IOException("descriptor set has no " + name + ", generate it with protoc --include_imports");
+        }
+        FileDescriptor[] dependencies = new FileDescriptor[proto.getDependencyCount()];
+        for (int i = 0; i < dependencies.length; i++) {
+            dependencies[i] = buildFile(proto.getDependency(i), protos, files);
+        }
+        try {
+            file = FileDescriptor.buildFrom(proto, dependencies);
+        }
+        catch (Descriptors.DescriptorValidationException e) {
+            throw new IOException("invalid protobuf descriptor " + name, e);
+        }
+        files.put(name, file);
+        return file;
+    }
+
+    /**
+     * the compiled fields of one message type, indexed by field number
+     */
+    static final class MessageDecoder
+    {
+        private final Map<Integer, FieldSlot> slots = new HashMap<>();
+        private final FieldSlot[] smallSlots;  // field numbers < 128, the common case, without boxing
+        private final List<FieldSlot> defaults = new ArrayList<>();
+        private final String[] names;
+
+        /**
+         * @param indexOf the output position of a field, -1 skips the field
+         */
+        private MessageDecoder(Descriptor descriptor, ToIntFunction<FieldDescriptor> indexOf)
+        {
+            this.smallSlots = new FieldSlot[128];
+            this.names = new String[descriptor.getFields().size()];
+            for (FieldDescriptor field : descriptor.getFields()) {
+                int index = indexOf.applyAsInt(field);
+                if (index < 0 || field.getType() == FieldDescriptor.Type.GROUP) {
+                    continue;
+                }
+                FieldSlot slot = new FieldSlot(field, index);
+                if (field.getNumber() < smallSlots.length) {
+                    smallSlots[field.getNumber()] = slot;
+                }
+                else {
+                    slots.put(field.getNumber(), slot);
+                }
+                if (slot.defaultValue != null) {
+                    defaults.add(slot);
+                }
+                if (index < names.length) {
+                    names[index] = field.getName();
+                }
+            }
+        }
+
+        private static MessageDecoder nested(Descriptor descriptor)
+        {
+            return new MessageDecoder(descriptor, FieldDescriptor::getIndex);
+        }
+
+        /**
+         * decode until the end of the stream or the current limit
+         */
+        private void decode(CodedInputStream in, Object[] values)
+                throws IOException
+        {
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                int number = WireFormat.getTagFieldNumber(tag);
+                FieldSlot slot = number < smallSlots.length ? smallSlots[number] : slots.get(number);
+                if (slot == null) {
+                    in.skipField(tag);
+                    continue;
+                }
+                if (slot.map) {
+                    @SuppressWarnings("unchecked")
+                    Map<Object, Object> map = (Map<Object, Object>) values[slot.index];
+                    if (map == null) {
+                        map = new HashMap<>();
+                        values[slot.index] = map;
+                    }
+                    Object[] entry = slot.readMessage(in);
+                    map.put(entry[0], entry[1]);
+                }
+                else if (slot.repeated) {
+                    @SuppressWarnings("unchecked")
+                    List<Object> list = (List<Object>) values[slot.index];
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        values[slot.index] = list;
+                    }
+                    if (slot.packable && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                        int limit = in.pushLimit(in.readRawVarint32());
+                        while (in.getBytesUntilLimit() > 0) {
+                            list.add(slot.read(in));
+                        }
+                        in.popLimit(limit);
+                    }
+                    else {
+                        list.add(slot.read(in));
+                    }
+                }
+                else {
+                    values[slot.index] = slot.read(in);
+                }
+            }
+            for (FieldSlot slot : defaults) {
+                if (values[slot.index] == null) {
+                    values[slot.index] = slot.defaultValue;
+                }
+            }
+        }
+    }
+
+    private static final class FieldSlot
+    {
+        private final FieldDescriptor field;
+        private final int index;
+        private final boolean repeated;
+        private final boolean packable;
+        private final boolean map;
+        private final Object defaultValue;  // proto3 scalars are not written when they are the default
+        private MessageDecoder message;
+
+        private FieldSlot(FieldDescriptor field, int index)
+        {
+            this.field = field;
+            this.index = index;
+            this.repeated = field.isRepeated();
+            this.packable = field.isPackable();
+            this.map = field.isMapField();
+            boolean proto3 = field.getFile().getSyntax() == FileDescriptor.Syntax.PROTO3;
+            // an unset oneof member is absent, not the default, that is how the reader tells which member is set
+            if (proto3 && !repeated && field.getJavaType() != FieldDescriptor.JavaType.MESSAGE && field.getContainingOneof() == null) {
+                Object value = field.getDefaultValue();
+                if (value instanceof EnumValueDescriptor) {
+                    value = ((EnumValueDescriptor) value).getName();
+                }
+                else if (value instanceof ByteString) {
+                    value = ((ByteString) value).toByteArray();
+                }
+                this.defaultValue = value;
+            }
+            else {
+                this.defaultValue = null;
+            }
+        }
+
+        private Object read(CodedInputStream in)
+                throws IOException
+        {
+            switch (field.getType()) {
+                case DOUBLE:
+                    return in.readDouble();
+                case FLOAT:
+                    return in.readFloat();
+                case INT64:
+                    return in.readInt64();
+                case UINT64:
+                    return in.readUInt64();
+                case INT32:
+                    return in.readInt32();
+                case FIXED64:
+                    return in.readFixed64();
+                case FIXED32:
+                    return in.readFixed32();
+                case BOOL:
+                    return in.readBool();
+                case STRING:
+                    return in.readString();
+                case BYTES:
+                    return in.readByteArray();
+                case UINT32:
+                    return in.readUInt32();
+                case ENUM:
+                    int number = in.readEnum();
+                    EnumValueDescriptor value = field.getEnumType().findValueByNumber(number);
+                    return value == null ? String.valueOf(number) : value.getName();
+                case SFIXED32:
+                    return in.readSFixed32();
+                case SFIXED64:
+                    return in.readSFixed64();
+                case SINT32:
+                    return in.readSInt32();
+                case SINT64:
+                    return in.readSInt64();
+                case MESSAGE:
+                    Object[] values = readMessage(in);
+                    Map<String, Object> record = new HashMap<>();
+                    for (int i = 0; i < values.length; i++) {
+                        if (values[i] != null) {
+                            record.put(message.names[i], values[i]);
+                        }
+                    }
+                    return record;
+                default:
+                    throw new IOException("not support protobuf type " + field.getType());
+            }
+        }
+
+        private Object[] readMessage(CodedInputStream in)
+                throws IOException
+        {
+            if (message == null) {
+                message = MessageDecoder.nested(field.getMessageType());
+            }
+            Object[] values = new Object[message.names.length];
+            int limit = in.pushLimit(in.readRawVarint32());
+            message.decode(in, values);
+            in.popLimit(limit);
+            return values;
+        }
+    }
+}
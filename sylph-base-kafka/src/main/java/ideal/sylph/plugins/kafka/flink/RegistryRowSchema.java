@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import ideal.sylph.etl.Schema;
+import org.apache.flink.types.Row;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary value formats whose writer schemas may come from a {@link SchemaRegistry} (avro).
+ * With a registry messages are in the confluent wire format, one decoder is compiled per schema id and cached.
+ * Without a registry every message is decoded by the local schema.
+ */
+public abstract class RegistryRowSchema<D>
+        extends BinaryRowSchema<D>
+{
+    private static final byte MAGIC_BYTE = 0;
+    private static final int HEADER_SIZE = 5;
+
+    private final SchemaRegistry registry;
+
+    private transient Map<Integer, D> decoders;
+
+    /**
+     * @param registry null means every message is written by the local schema
+     */
+    protected RegistryRowSchema(Schema schema, boolean rawBinary, SchemaRegistry registry)
+    {
+        super(schema, rawBinary);
+        this.registry = registry;
+    }
+
+    /**
+     * compile the decoder of a schema from the registry
+     */
+    protected abstract D compile(String schema)
+            throws IOException;
+
+    @Override
+    protected void decodeValue(byte[] message, String topic, int partition, long offset, Row row)
+            throws IOException
+    {
+        if (registry == null) {
+            super.decodeValue(message, topic, partition, offset, row);
+            return;
+        }
+        if (message.length < HEADER_SIZE || message[0] != MAGIC_BYTE) {
+            throw new IOException("unknown magic byte, the message of " + topic + "-" + partition + " offset " + offset + " is not in the schema registry format");
+        }
+        int schemaId = ((message[1] & 0xff) << 24) | ((message[2] & 0xff) << 16) | ((message[3] & 0xff) << 8) | (message[4] & 0xff);
+        if (decoders == null) {
+            decoders = new HashMap<>();
+        }
+        D decoder = decoders.get(schemaId);
+        if (decoder == null) {
+            decoder = compile(registry.getSchema(schemaId));
+            decoders.put(schemaId, decoder);
+        }
+        decode(decoder, message, HEADER_SIZE, message.length - HEADER_SIZE, row);
+    }
+}
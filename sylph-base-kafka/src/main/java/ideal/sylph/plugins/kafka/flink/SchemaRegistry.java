@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Resolves the writer schema of a message by the schema id of the confluent wire format,
+ * {@code magic byte 0 + 4 bytes big endian schema id + payload}.
+ * <p>
+ * {@code value_schema.registry.class} can replace the default {@link HttpSchemaRegistry},
+ * the class needs a public constructor with the registry url.
+ */
+public interface SchemaRegistry
+        extends Serializable
+{
+    /**
+     * called once per schema id and task, the decoder compiled from the schema is cached
+     */
+    String getSchema(int schemaId)
+            throws IOException;
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import ideal.sylph.etl.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.flink.types.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AvroSchemaTest
+{
+    private static final String SCHEMA_V1 = "{\"type\":\"record\",\"name\":\"event\",\"fields\":[" +
+            "{\"name\":\"user_id\",\"type\":\"string\"},{\"name\":\"unused\",\"type\":\"string\"},{\"name\":\"event_time\",\"type\":\"int\"}]}";
+    private static final String SCHEMA_V2 = "{\"type\":\"record\",\"name\":\"event\",\"fields\":[" +
+            "{\"name\":\"event_time\",\"type\":\"long\"},{\"name\":\"user_id\",\"type\":[\"null\",\"string\"]}," +
+            "{\"name\":\"ids\",\"type\":{\"type\":\"array\",\"items\":\"long\"}}]}";
+
+    private static List<Long> longList;
+
+    /**
+     * in memory registry, counts the schema lookups
+     */
+    private static class StubRegistry
+            implements SchemaRegistry
+    {
+        private final Map<Integer, String> schemas = new HashMap<>();
+        private int lookups;
+
+        @Override
+        public String getSchema(int schemaId)
+                throws IOException
+        {
+            lookups++;
+            String schema = schemas.get(schemaId);
+            if (schema == null) {
+                throw new IOException("not found schema " + schemaId);
+            }
+            return schema;
+        }
+    }
+
+    private static Schema tableSchema()
+            throws NoSuchFieldException
+    {
+        return Schema.newBuilder()
+                .add("_topic", String.class)
+                .add("user_id", String.class)
+                .add("event_time", long.class)
+                .add("ids", AvroSchemaTest.class.getDeclaredField("longList").getGenericType())
+                .build();
+    }
+
+    private static byte[] encode(int schemaId, String schema, Map<String, Object> fields)
+            throws IOException
+    {
+        org.apache.avro.Schema avroSchema = new org.apache.avro.Schema.Parser().parse(schema);
+        GenericRecord record = new GenericData.Record(avroSchema);
+        fields.forEach(record::put);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (schemaId >= 0) {
+            outputStream.write(new byte[] {0, (byte) (schemaId >>> 24), (byte) (schemaId >>> 16), (byte) (schemaId >>> 8), (byte) schemaId});
+        }
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
+        new GenericDatumWriter<GenericRecord>(avroSchema).write(record, encoder);
+        encoder.flush();
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void decodeWithLocalSchema()
+            throws Exception
+    {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("user_id", "uid_1");
+        fields.put("unused", "abc");
+        fields.put("event_time", 100);
+        AvroSchema avroSchema = new AvroSchema(tableSchema(), SCHEMA_V1, null);
+
+        Row row = avroSchema.deserialize(null, encode(-1, SCHEMA_V1, fields), "topic1", 0, 0);
+        Assert.assertEquals("topic1", row.getField(0));
+        Assert.assertEquals("uid_1", row.getField(1));
+        Assert.assertEquals(100L, row.getField(2));
+        Assert.assertNull(row.getField(3));
+    }
+
+    @Test
+    public void decodeWithRegistryCachesDecoderPerSchemaId()
+            throws Exception
+    {
+        StubRegistry registry = new StubRegistry();
+        registry.schemas.put(1, SCHEMA_V1);
+        registry.schemas.put(2, SCHEMA_V2);
+        AvroSchema avroSchema = new AvroSchema(tableSchema(), null, registry);
+
+        Map<String, Object> v1 = new HashMap<>();
+        v1.put("user_id", "uid_1");
+        v1.put("unused", "abc");
+        v1.put("event_time", 100);
+        Map<String, Object> v2 = new HashMap<>();
+        v2.put("user_id", "uid_2");
+        v2.put("event_time", 200L);
+        v2.put("ids", Arrays.asList(1L, 2L));
+
+        for (int i = 0; i < 3; i++) {
+            Row row1 = avroSchema.deserialize(null, encode(1, SCHEMA_V1, v1), "topic1", 0, i);
+            Assert.assertEquals("uid_1", row1.getField(1));
+            Row row2 = avroSchema.deserialize(null, encode(2, SCHEMA_V2, v2), "topic1", 0, i);
+            Assert.assertEquals("uid_2", row2.getField(1));
+            Assert.assertEquals(200L, row2.getField(2));
+            Assert.assertArrayEquals(new long[] {1L, 2L}, (long[]) row2.getField(3));
+        }
+        Assert.assertEquals(2, registry.lookups);
+    }
+
+    @Test
+    public void rawBinaryKeepsKeyAndMessageBytes()
+            throws Exception
+    {
+        Schema schema = Schema.newBuilder()
+                .add("_key", byte[].class)
+                .add("_message", byte[].class)
+                .add("user_id", String.class)
+                .build();
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("user_id", "uid_1");
+        fields.put("unused", "abc");
+        fields.put("event_time", 100);
+        byte[] message = encode(-1, SCHEMA_V1, fields);
+        byte[] key = new byte[] {1, 2};
+
+        Row row = new AvroSchema(schema, true, SCHEMA_V1, null).deserialize(key, message, "topic1", 0, 0);
+        Assert.assertArrayEquals(key, (byte[]) row.getField(0));
+        Assert.assertArrayEquals(message, (byte[]) row.getField(1));
+        Assert.assertEquals("uid_1", row.getField(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messageColumnNeedsRawBinary()
+            throws Exception
+    {
+        Schema schema = Schema.newBuilder()
+                .add("_message", String.class)
+                .add("user_id", String.class)
+                .build();
+        new AvroSchema(schema, SCHEMA_V1, null);
+    }
+
+    @Test(expected = IOException.class)
+    public void registryNeedsMagicByte()
+            throws Exception
+    {
+        StubRegistry registry = new StubRegistry();
+        registry.schemas.put(1, SCHEMA_V1);
+        new AvroSchema(tableSchema(), null, registry).deserialize(null, new byte[] {1, 0, 0, 0, 1}, "topic1", 0, 0);
+    }
+}
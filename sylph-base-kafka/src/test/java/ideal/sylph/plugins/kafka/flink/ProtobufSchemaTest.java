@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldOptions;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.DescriptorProtos.MessageOptions;
+import com.google.protobuf.DescriptorProtos.OneofDescriptorProto;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.DynamicMessage;
+import ideal.sylph.etl.Schema;
+import org.apache.flink.types.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type.TYPE_INT32;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type.TYPE_INT64;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE;
+import static com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING;
+
+public class ProtobufSchemaTest
+{
+    private static List<Long> longList;
+
+    /**
+     * the descriptor set protoc writes for:
+     * <pre>
+     * syntax = "proto3";
+     * package test;
+     * message Inner { string name = 1; int32 level = 2; }
+     * message Event {
+     *   string user_id = 1;
+     *   repeated int64 ids = 2 [packed = true];
+     *   map&lt;string, int32&gt; counts = 3;
+     *   Inner inner = 4;
+     *   oneof contact { string email = 5; int64 phone = 6; }
+     *   int32 score = 7;
+     * }
+     * </pre>
+     */
+    private static FileDescriptorSet descriptorSet()
+    {
+        DescriptorProto inner = DescriptorProto.newBuilder().setName("Inner")
+                .addField(field("name", 1, TYPE_STRING, LABEL_OPTIONAL))
+                .addField(field("level", 2, TYPE_INT32, LABEL_OPTIONAL))
+                .build();
+        DescriptorProto countsEntry = DescriptorProto.newBuilder().setName("CountsEntry")
+                .addField(field("key", 1, TYPE_STRING, LABEL_OPTIONAL))
+                .addField(field("value", 2, TYPE_INT32, LABEL_OPTIONAL))
+                .setOptions(MessageOptions.newBuilder().setMapEntry(true))
+                .build();
+        DescriptorProto event = DescriptorProto.newBuilder().setName("Event")
+                .addNestedType(countsEntry)
+                .addField(field("user_id", 1, TYPE_STRING, LABEL_OPTIONAL))
+                .addField(field("ids", 2, TYPE_INT64, LABEL_REPEATED).setOptions(FieldOptions.newBuilder().setPacked(true)))
+                .addField(field("counts", 3, TYPE_MESSAGE, LABEL_REPEATED).setTypeName(".test.Event.CountsEntry"))
+                .addField(field("inner", 4, TYPE_MESSAGE, LABEL_OPTIONAL).setTypeName(".test.Inner"))
+                .addField(field("email", 5, TYPE_STRING, LABEL_OPTIONAL).setOneofIndex(0))
+                .addField(field("phone", 6, TYPE_INT64, LABEL_OPTIONAL).setOneofIndex(0))
+                .addField(field("score", 7, TYPE_INT32, LABEL_OPTIONAL))
+                .addOneofDecl(OneofDescriptorProto.newBuilder().setName("contact"))
+                .build();
+        FileDescriptorProto file = FileDescriptorProto.newBuilder().setName("event.proto").setPackage("test").setSyntax("proto3")
+                .addMessageType(inner)
+                .addMessageType(event)
+                .build();
+        return FileDescriptorSet.newBuilder().addFile(file).build();
+    }
+
+    private static FieldDescriptorProto.Builder field(String name, int number, FieldDescriptorProto.Type type, FieldDescriptorProto.Label label)
+    {
+        return FieldDescriptorProto.newBuilder().setName(name).setJsonName(name).setNumber(number).setType(type).setLabel(label);
+    }
+
+    private static Schema tableSchema()
+            throws NoSuchFieldException
+    {
+        return Schema.newBuilder()
+                .add("_topic", String.class)
+                .add("user_id", String.class)
+                .add("ids", ProtobufSchemaTest.class.getDeclaredField("longList").getGenericType())
+                .add("counts", Map.class)
+                .add("inner", Map.class)
+                .add("email", String.class)
+                .add("phone", long.class)
+                .add("score", int.class)
+                .build();
+    }
+
+    @Test
+    public void decodePackedRepeatedMapNestedAndOneof()
+            throws Exception
+    {
+        Descriptor event = ProtobufSchema.findMessage(descriptorSet(), "test.Event");
+        Descriptor countsEntry = event.findFieldByName("counts").getMessageType();
+        Descriptor inner = event.findFieldByName("inner").getMessageType();
+        byte[] message = DynamicMessage.newBuilder(event)
+                .setField(event.findFieldByName("user_id"), "uid_1")
+                .addRepeatedField(event.findFieldByName("ids"), 1L)
+                .addRepeatedField(event.findFieldByName("ids"), 2L)
+                .addRepeatedField(event.findFieldByName("counts"), DynamicMessage.newBuilder(countsEntry)
+                        .setField(countsEntry.findFieldByName("key"), "a")
+                        .setField(countsEntry.findFieldByName("value"), 1)
+                        .build())
+                .setField(event.findFieldByName("inner"), DynamicMessage.newBuilder(inner)
+                        .setField(inner.findFieldByName("name"), "n1")
+                        .build())
+                .setField(event.findFieldByName("email"), "a@b.c")
+                .build()
+                .toByteArray();
+
+        ProtobufSchema protobufSchema = new ProtobufSchema(tableSchema(), descriptorSet().toByteArray(), "test.Event");
+        Row row = protobufSchema.deserialize(null, message, "topic1", 0, 0);
+        Assert.assertEquals("topic1", row.getField(0));
+        Assert.assertEquals("uid_1", row.getField(1));
+        Assert.assertArrayEquals(new long[] {1L, 2L}, (long[]) row.getField(2));
+        Assert.assertEquals(Collections.singletonMap("a", 1), row.getField(3));
+
+        Map<String, Object> expectedInner = new HashMap<>();
+        expectedInner.put("name", "n1");
+        expectedInner.put("level", 0);  // proto3 default of the nested message
+        Assert.assertEquals(expectedInner, row.getField(4));
+
+        Assert.assertEquals("a@b.c", row.getField(5));
+        Assert.assertNull(row.getField(6));  // the other oneof member is not set, not 0
+        Assert.assertEquals(0, row.getField(7));  // proto3 default
+    }
+
+    @Test
+    public void unsetOneofMembersAreNull()
+            throws Exception
+    {
+        Descriptor event = ProtobufSchema.findMessage(descriptorSet(), "test.Event");
+        ProtobufSchema protobufSchema = new ProtobufSchema(tableSchema(), descriptorSet().toByteArray(), "test.Event");
+
+        byte[] phone = DynamicMessage.newBuilder(event).setField(event.findFieldByName("phone"), 0L).build().toByteArray();
+        Row row = protobufSchema.deserialize(null, phone, "topic1", 0, 0);
+        Assert.assertNull(row.getField(5));
+        Assert.assertEquals(0L, row.getField(6));  // a set oneof member is written even when it is the default
+
+        Row empty = protobufSchema.deserialize(null, new byte[0], "topic1", 0, 1);
+        Assert.assertEquals("", empty.getField(1));
+        Assert.assertNull(empty.getField(2));
+        Assert.assertNull(empty.getField(5));
+        Assert.assertNull(empty.getField(6));
+    }
+}
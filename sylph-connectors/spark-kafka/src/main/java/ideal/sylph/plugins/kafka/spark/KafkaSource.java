@@ -106,6 +106,7 @@ public class KafkaSource
         }
         else {
             StructType structType = schemaToSparkType(context.getSchema());
+            boolean rawBinary = config.isRawBinary();
             return inputStream
                     .map(record -> {
                         String[] names = structType.names();
@@ -116,20 +117,23 @@ public class KafkaSource
                                     values[i] = record.topic();
                                     continue;
                                 case "_message":
-                                    values[i] = new String(record.value(), UTF_8);
+                                    values[i] = rawBinary ? record.value() : new String(record.value(), UTF_8);
                                     continue;
                                 case "_key":
-                                    values[i] = new String(record.key(), UTF_8);
+                                    values[i] = rawBinary || record.key() == null ? record.key() : new String(record.key(), UTF_8);
                                     continue;
                                 case "_partition":
                                     values[i] = record.partition();
                                     continue;
                                 case "_offset":
                                     values[i] = record.offset();
+                                    continue;
                                 case "_timestamp":
                                     values[i] = record.timestamp();
+                                    continue;
                                 case "_timestampType":
                                     values[i] = record.timestampType().id;
+                                    continue;
                                 default:
                                     values[i] = null;
                             }
@@ -44,6 +44,10 @@ public class KafkaSourceConfig
     @Description("this is kafka String value Type, use json")
     private String valueType;
 
+    @Name("raw.binary")
+    @Description("this is whether _key and _message are byte[] (sql type binary) instead of utf-8 strings")
+    private boolean rawBinary = false;
+
     public String getTopics()
     {
         return topics;
@@ -69,5 +73,10 @@ public class KafkaSourceConfig
         return valueType;
     }
 
+    public boolean isRawBinary()
+    {
+        return rawBinary;
+    }
+
     private KafkaSourceConfig() {}
 }
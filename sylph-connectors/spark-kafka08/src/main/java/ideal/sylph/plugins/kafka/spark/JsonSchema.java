@@ -15,13 +15,10 @@
  */
 package ideal.sylph.plugins.kafka.spark;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import ideal.sylph.etl.Schema;
+import ideal.sylph.plugins.json.JsonRowDeserializer;
 import org.apache.spark.sql.Row;
 import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema;
-import org.apache.spark.sql.types.ArrayType;
-import org.apache.spark.sql.types.DataType;
-import org.apache.spark.sql.types.DataTypes;
 import org.apache.spark.sql.types.MapType;
 import org.apache.spark.sql.types.StructType;
 
@@ -30,71 +27,39 @@ import java.io.Serializable;
 import java.util.Map;
 
 import static ideal.sylph.runner.spark.SQLHepler.schemaToSparkType;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * json message to spark row, see {@link JsonRowDeserializer}
+ */
 public class JsonSchema
         implements Serializable
 {
-    private static final ObjectMapper MAPPER = new ObjectMapper();
     private final StructType rowTypeInfo;
+    private final JsonRowDeserializer deserializer;
+    private final boolean[] mapFields;
 
     public JsonSchema(Schema schema)
     {
         this.rowTypeInfo = schemaToSparkType(schema);
+        this.deserializer = new JsonRowDeserializer(schema);
+        this.mapFields = new boolean[rowTypeInfo.size()];
+        for (int i = 0; i < mapFields.length; i++) {
+            mapFields[i] = rowTypeInfo.apply(i).dataType() instanceof MapType;
+        }
     }
 
     public Row deserialize(byte[] messageKey, byte[] message, String topic, int partition, long offset)
             throws IOException
     {
-        @SuppressWarnings("unchecked")
-        Map<String, Object> map = MAPPER.readValue(message, Map.class);
-        String[] names = rowTypeInfo.names();
-        Object[] values = new Object[names.length];
-        for (int i = 0; i < names.length; i++) {
-            String key = names[i];
-            switch (key) {
-                case "_topic":
-                    values[i] = topic;
-                    continue;
-                case "_message":
-                    values[i] = new String(message, UTF_8);
-                    continue;
-                case "_key":
-                    values[i] = new String(messageKey, UTF_8);
-                    continue;
-                case "_partition":
-                    values[i] = partition;
-                    continue;
-                case "_offset":
-                    values[i] = offset;
-                    continue;
-            }
-
-            Object value = map.get(key);
-            if (value == null) {
-                continue;
-            }
-            DataType type = rowTypeInfo.apply(i).dataType();
-
-            if (type instanceof MapType && ((MapType) type).valueType() == DataTypes.StringType) {
+        Object[] values = deserializer.deserialize(messageKey, message, topic, partition, offset);
+        for (int i = 0; i < values.length; i++) {
+            if (mapFields[i] && values[i] != null) {
                 scala.collection.mutable.Map convertValue = new scala.collection.mutable.HashMap(); //必须是scala的map
-                for (Map.Entry entry : ((Map<?, ?>) value).entrySet()) {
-                    convertValue.put(entry.getKey(), entry.getValue() == null ? null : entry.getValue().toString());
+                for (Map.Entry entry : ((Map<?, ?>) values[i]).entrySet()) {
+                    convertValue.put(entry.getKey(), entry.getValue());
                 }
                 values[i] = convertValue;
             }
-            else if (value instanceof ArrayType) {
-                //Class<?> aClass = type.getTypeClass();
-                //values[i] = MAPPER.convertValue(value, aClass);
-                //todo: Spark List to Array
-                values[i] = value;
-            }
-            else if (type == DataTypes.LongType) {
-                values[i] = ((Number) value).longValue();
-            }
-            else {
-                values[i] = value;
-            }
         }
         return new GenericRowWithSchema(values, rowTypeInfo);
     }
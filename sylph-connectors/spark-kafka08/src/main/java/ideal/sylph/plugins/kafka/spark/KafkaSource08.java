@@ -120,6 +120,7 @@ public class KafkaSource08
         }
         else {
             StructType structType = schemaToSparkType(context.getSchema());
+            boolean rawBinary = config.isRawBinary();
             return dStream
                     .map(record -> {
                         String[] names = structType.names();
@@ -130,16 +131,17 @@ public class KafkaSource08
                                     values[i] = record.topic();
                                     continue;
                                 case "_message":
-                                    values[i] = new String(record.value(), UTF_8);
+                                    values[i] = rawBinary ? record.value() : new String(record.value(), UTF_8);
                                     continue;
                                 case "_key":
-                                    values[i] = new String(record.key(), UTF_8);
+                                    values[i] = rawBinary || record.key() == null ? record.key() : new String(record.key(), UTF_8);
                                     continue;
                                 case "_partition":
                                     values[i] = record.partition();
                                     continue;
                                 case "_offset":
                                     values[i] = record.offset();
+                                    continue;
                                 default:
                                     values[i] = null;
                             }
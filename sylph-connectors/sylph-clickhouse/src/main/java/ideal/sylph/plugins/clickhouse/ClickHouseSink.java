@@ -30,8 +30,6 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
-import java.util.Map;
 
 import static org.apache.flink.calcite.shaded.com.google.common.base.Preconditions.checkState;
 
@@ -49,7 +47,7 @@ public class ClickHouseSink
     private transient Connection connection;
     private transient PreparedStatement statement;
     private int num = 0;
-    private final Map<String, String> nametypes;
+    private final String[] fieldTypes;
 
     public ClickHouseSink(SinkContext context, ClickHouseSinkConfig clickHouseSinkConfig)
     {
@@ -57,11 +55,8 @@ public class ClickHouseSink
         checkState(config.getQuery() != null, "insert into query not setting");
         this.prepareStatementQuery = config.getQuery().replaceAll("\\$\\{.*?}", "?");
         schema = context.getSchema();
-        Map<String, String> nt = new HashMap<String, String>();
-        for (int i = 0; i < schema.getFieldNames().size(); i++) {
-            nt.put(schema.getFieldNames().get(i), schema.getFieldTypes().get(i).toString().split(" ")[1]);
-        }
-        this.nametypes = nt;
+        // resolved once, process() reads the row by field index
+        this.fieldTypes = schema.getFieldTypes().stream().map(type -> type.toString().split(" ")[1]).toArray(String[]::new);
     }
 
     @Override
@@ -69,22 +64,22 @@ public class ClickHouseSink
     {
         int ith = 1;
         try {
-            for (String fieldName : schema.getFieldNames()) {
+            for (int i = 0; i < fieldTypes.length; i++) {
                 //Byte  Double  String  Date  Long  .....
-                if (nametypes.get(fieldName).equals("java.sql.Date")) {
-                    statement.setDate(ith, java.sql.Date.valueOf(row.getAs(fieldName).toString()));
+                if (fieldTypes[i].equals("java.sql.Date")) {
+                    statement.setDate(ith, java.sql.Date.valueOf(row.getAs(i).toString()));
                 }
-                else if ((nametypes.get(fieldName).equals("java.lang.Long"))) {
-                    statement.setLong(ith, row.getAs(fieldName));
+                else if ((fieldTypes[i].equals("java.lang.Long"))) {
+                    statement.setLong(ith, row.getLong(i));
                 }
-                else if ((nametypes.get(fieldName).equals("java.lang.Double"))) {
-                    statement.setDouble(ith, row.getAs(fieldName));
+                else if ((fieldTypes[i].equals("java.lang.Double"))) {
+                    statement.setDouble(ith, row.getDouble(i));
                 }
-                else if ((nametypes.get(fieldName).equals("java.lang.Integer"))) {
-                    statement.setByte(ith, Byte.valueOf(row.getAs(fieldName)));
+                else if ((fieldTypes[i].equals("java.lang.Integer"))) {
+                    statement.setInt(ith, row.getInt(i));
                 }
                 else {
-                    statement.setString(ith, row.getAs(fieldName));
+                    statement.setString(ith, row.getAs(i));
                 }
                 ith += 1;
             }
@@ -33,6 +33,7 @@ import org.elasticsearch.transport.client.PreBuiltTransportClient;
 
 import java.net.InetAddress;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -70,8 +71,9 @@ public class Elasticsearch6Sink
     public void process(Row value)
     {
         Map<String, Object> map = new HashMap<>();
-        for (String fieldName : schema.getFieldNames()) {
-            map.put(fieldName, value.getAs(fieldName));
+        List<String> fieldNames = schema.getFieldNames();
+        for (int i = 0; i < fieldNames.size(); i++) {
+            map.put(fieldNames.get(i), value.getAs(i));
         }
         if (config.update) {  //is update
             Object id = value.getAs(idIndex);
@@ -22,15 +22,21 @@ import ideal.sylph.etl.PluginConfig;
 import ideal.sylph.etl.Row;
 import ideal.sylph.etl.Schema;
 import ideal.sylph.etl.SinkContext;
-import ideal.sylph.etl.api.RealTimeSink;
+import ideal.sylph.etl.api.RealTimeTwoPhaseCommitSink;
 import ideal.sylph.plugins.hdfs.factory.HDFSFactorys;
 import ideal.sylph.plugins.hdfs.parquet.HDFSFactory;
 import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -38,7 +44,7 @@ import static com.google.common.base.Preconditions.checkState;
 @Description("this is hdfs RealTimeSink")
 @Version("1.0.0")
 public class HdfsSink
-        implements RealTimeSink
+        implements RealTimeTwoPhaseCommitSink
 {
     private static final Logger logger = LoggerFactory.getLogger(HdfsSink.class);
     private final HdfsSinkConfig config;
@@ -65,17 +71,35 @@ public class HdfsSink
 
         checkState("text".equals(config.format.toLowerCase()) || "parquet".equals(config.format.toLowerCase()),
                 "Hdfs sink format only supports text and parquet");
+        checkState("rolling".equals(config.commitMode.toLowerCase()) || "checkpoint".equals(config.commitMode.toLowerCase()),
+                "Hdfs sink commit.mode only supports rolling and checkpoint");
+        config.getParquetCompression(); //check codec name
+        if ("parquet".equals(config.format.toLowerCase())) {
+            // a writer buffers a whole row group before flushing it, a smaller budget would close every file before its first row group
+            long laneBudget = config.getWriterMemoryBytes() / config.getParquetWriterThreads();
+            checkState(laneBudget >= config.getParquetBlockSize(), "hdfs.writer.memory.mb / parquet.writer.threads must >= parquet.block.size, but the budget of a write thread is "
+                    + (laneBudget >> 20) + "MB and parquet.block.size is " + config.parquetBlockSize + "MB");
+        }
+        for (String column : config.getParquetDictionaryDisabledColumns()) {
+            checkState(schema.getFieldNames().contains(column), "parquet.dictionary.disabled.columns " + column + " does not exist,but only " + schema.getFieldNames());
+        }
+        for (String column : config.getParquetBloomFilterColumns()) {
+            checkState(schema.getFieldNames().contains(column), "parquet.bloom.filter.columns " + column + " does not exist,but only " + schema.getFieldNames());
+        }
     }
 
     @Override
     public void process(Row value)
     {
         try {
-            long eventTime = value.getAs(eventTimeIndex);
+            long eventTime = value.getLong(eventTimeIndex);
             hdfsFactory.writeLine(eventTime, value);
         }
         catch (ClassCastException e) {
             logger.error("eventTimeField {}, index [{}], but value is {}", config.eventTimeName, eventTimeIndex, value.getAs(eventTimeIndex));
+            if (config.isCommitOnCheckpoint()) {
+                throw e;
+            }
             try {
                 TimeUnit.MILLISECONDS.sleep(1);
             }
@@ -84,10 +108,29 @@ public class HdfsSink
             }
         }
         catch (IOException e) {
+            if (config.isCommitOnCheckpoint()) {
+                //丢行的文件不能被checkpoint发布, 让任务失败后从checkpoint重放
+                throw new UncheckedIOException(e);
+            }
+            // 只丢这一行, parquet写线程退出时抛出IllegalStateException, 任务失败
             logger.error("", e);
         }
     }
 
+    @Override
+    public List<String> preCommit(long checkpointId)
+            throws IOException
+    {
+        return hdfsFactory.preCommit();
+    }
+
+    @Override
+    public void commit(List<String> files)
+            throws IOException
+    {
+        hdfsFactory.commit(files);
+    }
+
     @Override
     public boolean open(long partitionId, long version)
             throws Exception
@@ -156,6 +199,50 @@ public class HdfsSink
         @Description("default:30 Minute")
         private long maxCloseMinute = 30;
 
+        @Name("parquet.writer.threads")
+        @Description("parquet write threads of each sink subtask, the time partitions are sharded across them, each partition is one file written by one thread. default:0, min(4, cpu cores)")
+        private long parquetWriterThreads = 0;
+
+        @Name("hdfs.writer.memory.mb")
+        @Description("memory budget of the open file writers of each sink subtask, the oldest writers are flushed(text) or closed(parquet) when it is exceeded, parquet splits it across its write threads and each share must hold a parquet.block.size row group. default:512MB")
+        private long writerMemoryMb = 512L;
+
+        @Name("parquet.compression")
+        @Description("parquet compression codec: uncompressed, snappy, gzip, zstd, lz4. default:snappy")
+        private String parquetCompression = "snappy";
+
+        @Name("parquet.block.size")
+        @Description("parquet row group size. default:128MB")
+        private long parquetBlockSize = 128L;
+
+        @Name("parquet.page.size")
+        @Description("parquet page size. default:1024KB")
+        private long parquetPageSize = 1024L;
+
+        @Name("parquet.dictionary.page.size")
+        @Description("parquet dictionary page size, a column falls back to plain encoding when the dictionary exceeds it. default:1024KB")
+        private long parquetDictionaryPageSize = 1024L;
+
+        @Name("parquet.enable.dictionary")
+        @Description("parquet dictionary encoding for all columns. default:true")
+        private boolean parquetDictionary = true;
+
+        @Name("parquet.dictionary.disabled.columns")
+        @Description("columns without dictionary encoding, e.g. uuid,request_id")
+        private String parquetDictionaryDisabledColumns;
+
+        @Name("parquet.bloom.filter.columns")
+        @Description("columns with a bloom filter in each row group, e.g. user_id,device_id")
+        private String parquetBloomFilterColumns;
+
+        @Name("parquet.bloom.filter.ndv")
+        @Description("expected distinct values of a bloom filter column in a row group, sizes the filter. default:0, parquet default size")
+        private long parquetBloomFilterNdv = 0;
+
+        @Name("commit.mode")
+        @Description("rolling: a file is published(renamed) when it is closed, checkpoint: files are rolled on each flink checkpoint and published when the checkpoint completes, exactly once. default:rolling")
+        private String commitMode = "rolling";
+
         public long getBatchBufferSize()
         {
             return this.batchBufferSize;
@@ -185,5 +272,73 @@ public class HdfsSink
         {
             return maxCloseMinute;
         }
+
+        public int getParquetWriterThreads()
+        {
+            return parquetWriterThreads > 0 ? (int) parquetWriterThreads : Math.min(4, Runtime.getRuntime().availableProcessors());
+        }
+
+        public long getWriterMemoryBytes()
+        {
+            return writerMemoryMb * 1024L * 1024L;
+        }
+
+        public CompressionCodecName getParquetCompression()
+        {
+            try {
+                return CompressionCodecName.valueOf(parquetCompression.toUpperCase());
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("parquet.compression " + parquetCompression + " not support, only " + Arrays.toString(CompressionCodecName.values()));
+            }
+        }
+
+        public int getParquetBlockSize()
+        {
+            return (int) (parquetBlockSize * 1024 * 1024);
+        }
+
+        public int getParquetPageSize()
+        {
+            return (int) (parquetPageSize * 1024);
+        }
+
+        public int getParquetDictionaryPageSize()
+        {
+            return (int) (parquetDictionaryPageSize * 1024);
+        }
+
+        public boolean isParquetDictionary()
+        {
+            return parquetDictionary;
+        }
+
+        public List<String> getParquetDictionaryDisabledColumns()
+        {
+            return splitColumns(parquetDictionaryDisabledColumns);
+        }
+
+        public List<String> getParquetBloomFilterColumns()
+        {
+            return splitColumns(parquetBloomFilterColumns);
+        }
+
+        public long getParquetBloomFilterNdv()
+        {
+            return parquetBloomFilterNdv;
+        }
+
+        public boolean isCommitOnCheckpoint()
+        {
+            return "checkpoint".equals(commitMode.toLowerCase());
+        }
+
+        private static List<String> splitColumns(String columns)
+        {
+            if (columns == null || columns.trim().isEmpty()) {
+                return Collections.emptyList();
+            }
+            return Arrays.stream(columns.split(",")).map(String::trim).filter(x -> !x.isEmpty()).collect(Collectors.toList());
+        }
     }
 }
@@ -120,7 +120,7 @@ public class HDFSFactorys
 
             String schemaString = buildSchema(schema.getFields());
             MessageType type = MessageTypeParser.parseMessageType(schemaString);
-            return new ParquetFactory(sinkConfig.getWriteDir(), tableName, parquetVersion, type);
+            return new ParquetFactory(tableName, parquetVersion, type, sinkConfig);
         }
     }
 
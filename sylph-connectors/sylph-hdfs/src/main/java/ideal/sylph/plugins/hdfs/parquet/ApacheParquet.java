@@ -16,74 +16,74 @@
 package ideal.sylph.plugins.hdfs.parquet;
 
 import ideal.sylph.etl.Row;
+import ideal.sylph.plugins.hdfs.HdfsSink;
+import ideal.sylph.plugins.hdfs.utils.CommonUtil;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.parquet.column.ColumnDescriptor;
 import org.apache.parquet.column.ParquetProperties;
 import org.apache.parquet.column.ParquetProperties.WriterVersion;
-import org.apache.parquet.example.data.Group;
-import org.apache.parquet.example.data.simple.SimpleGroup;
-import org.apache.parquet.example.data.simple.SimpleGroupFactory;
 import org.apache.parquet.hadoop.ParquetWriter;
-import org.apache.parquet.hadoop.example.ExampleParquetWriter;
-import org.apache.parquet.hadoop.example.GroupWriteSupport;
-import org.apache.parquet.hadoop.metadata.CompressionCodecName;
-import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
 import org.apache.parquet.schema.MessageType;
-import org.apache.parquet.schema.MessageTypeParser;
-import org.apache.parquet.schema.OriginalType;
 import org.apache.parquet.schema.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
-import static org.apache.parquet.hadoop.ParquetWriter.DEFAULT_BLOCK_SIZE;
-import static org.apache.parquet.hadoop.ParquetWriter.DEFAULT_IS_DICTIONARY_ENABLED;
+import static java.util.Objects.requireNonNull;
 import static org.apache.parquet.hadoop.ParquetWriter.DEFAULT_IS_VALIDATING_ENABLED;
-import static org.apache.parquet.hadoop.ParquetWriter.DEFAULT_PAGE_SIZE;
 
 public class ApacheParquet
         implements FileWriter
 {
     private static final Logger logger = LoggerFactory.getLogger(ApacheParquet.class);
 
-    private final ParquetWriter<Group> writer;
-    private final SimpleGroupFactory groupFactory;
+    private final ParquetWriter<Row> writer;
     private final MessageType schema;
     private final String outputPath;
+    private final boolean failOnWriteError;
+    private final PositionTrackingOutputFile outputFile;
 
     private long createTime = System.currentTimeMillis();
     private long lastTime = createTime;
 
-    private ApacheParquet(String outputPath, MessageType schema, WriterVersion writerVersion)
+    private ApacheParquet(String outputPath, MessageType schema, WriterVersion writerVersion, HdfsSink.HdfsSinkConfig config)
             throws IOException
     {
         this.schema = schema;
         this.outputPath = outputPath;
-
-        Configuration configuration = new Configuration();
-        GroupWriteSupport.setSchema(schema, configuration);
-
-        this.writer = ExampleParquetWriter.builder(new Path(outputPath))
-                .withType(schema)
-                .withConf(configuration)
-                .withPageSize(DEFAULT_PAGE_SIZE)
-                .withDictionaryPageSize(DEFAULT_PAGE_SIZE)
-                .withDictionaryEncoding(DEFAULT_IS_DICTIONARY_ENABLED)
+        this.failOnWriteError = config.isCommitOnCheckpoint();
+
+        Configuration hadoopConf = new Configuration();
+        this.outputFile = new PositionTrackingOutputFile(HadoopOutputFile.fromPath(new Path(outputPath), hadoopConf));
+        ParquetWriter.Builder<Row, ?> builder = RowWriteSupport.builder(outputFile, schema)
+                .withConf(hadoopConf)
+                .withPageSize(config.getParquetPageSize())
+                .withDictionaryPageSize(config.getParquetDictionaryPageSize())
+                .withDictionaryEncoding(config.isParquetDictionary())
                 .withValidation(DEFAULT_IS_VALIDATING_ENABLED)
                 .withWriterVersion(writerVersion)
-                .withRowGroupSize(DEFAULT_BLOCK_SIZE) // set Parquet file block size and page size values
-                .withCompressionCodec(CompressionCodecName.UNCOMPRESSED) //压缩类型
-                .build();
-
-        this.groupFactory = new SimpleGroupFactory(this.schema);
+                .withRowGroupSize(config.getParquetBlockSize()) // set Parquet file block size and page size values
+                .withCompressionCodec(config.getParquetCompression()); //压缩类型
+        for (String column : config.getParquetDictionaryDisabledColumns()) {
+            builder.withDictionaryEncoding(column, false);
+        }
+        for (String column : config.getParquetBloomFilterColumns()) {
+            builder.withBloomFilterEnabled(column, true);
+            if (config.getParquetBloomFilterNdv() > 0) {
+                builder.withBloomFilterNDV(column, config.getParquetBloomFilterNdv());
+            }
+        }
+        this.writer = builder.build();
     }
 
     /**
@@ -111,7 +111,15 @@ public class ApacheParquet
     }
 
     /**
-     * 获取parquet流的大小
+     * 最后一次写入的时间
+     */
+    public long getLastWriteTime()
+    {
+        return lastTime;
+    }
+
+    /**
+     * 获取parquet流的大小, 包括已经刷出的row group
      */
     @Override
     public long getDataSize()
@@ -119,89 +127,50 @@ public class ApacheParquet
         return writer.getDataSize();
     }
 
+    /**
+     * 内存中还没有刷出的字节数, 即当前row group的大小.
+     * getDataSize() = 上一个row group结束的位置 + 当前row group, 这里减去文件流已经写到的位置
+     */
+    public long getBufferedSize()
+    {
+        return Math.max(0, writer.getDataSize() - outputFile.getPos());
+    }
+
     @Override
     public void writeLine(Collection<Object> evalRow)
     {
-        Group group = groupFactory.newGroup();
-
-        List<ColumnDescriptor> columns = schema.getColumns();
-        int i = 0;
-        for (Object value : evalRow) {
-            addValueToGroup(columns.get(i).getType().javaType, group, i, value);
-            i++;
-        }
-
-        try {
-            writeGroup(group);
-        }
-        catch (IOException e) {
-            logger.error("", e);
-        }
+        writeLine(Row.of(evalRow.toArray()));
     }
 
+    /**
+     * commit.mode=checkpoint时写入失败直接抛出, 丢行的文件不能被checkpoint发布
+     */
     @Override
     public void writeLine(Row row)
     {
-        Group group = groupFactory.newGroup();
-        List<ColumnDescriptor> columns = schema.getColumns();
-        for (int i = 0; i < row.size(); i++) {
-            Object value = row.getAs(i);
-            addValueToGroup(columns.get(i).getType().javaType, group, i++, value);
-        }
+        lastTime = System.currentTimeMillis();
         try {
-            writeGroup(group);
+            writer.write(row);
         }
         catch (IOException e) {
+            if (failOnWriteError) {
+                throw new UncheckedIOException("write parquet file " + outputPath + " failed", e);
+            }
             logger.error("", e);
         }
     }
 
-    private Queue<String> errField = new ConcurrentLinkedQueue<>(); //每个文件的字段错误 只打印一次
-
     @Override
     public void writeLine(Map<String, Object> evalRow)
     {
         //--创建一个 不区分key大小写的map
         Map obj = new org.apache.commons.collections.map.CaseInsensitiveMap(evalRow);
-        Group group = groupFactory.newGroup();
-        int i = 0;
-
-        for (Type field : schema.getFields()) {
-            OriginalType o = field.getOriginalType();
-            Class<?> javaType = (o != null && o.name().equals("MAP")) ? Map.class :
-                    field.asPrimitiveType().getPrimitiveTypeName().javaType;
-
-            Object value = obj.get(field.getName());
-            try {
-                addValueToGroup(javaType, group, i++, value);
-            }
-            catch (Exception e) {
-                if (!errField.contains(field.getName())) {
-                    errField.offer(field.getName());
-                    logger.warn("错误字段:{}:{} 原因:{} file={}", field.getName(), value, e.getMessage(),
-                            outputPath);
-                }
-            }
+        List<Type> fields = schema.getFields();
+        Object[] values = new Object[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = obj.get(fields.get(i).getName());
         }
-        try {
-            writeGroup(group);
-        }
-        catch (Exception e) {
-            logger.warn("错误行:{} err:", evalRow, e);
-        }
-    }
-
-    /**
-     * 写入 一条数据
-     */
-    private void writeGroup(Group group)
-            throws IOException
-    {
-        if (group == null) {
-            return;
-        }
-        lastTime = System.currentTimeMillis();
-        writer.write(group);
+        writeLine(Row.of(values));
     }
 
     /**
@@ -212,11 +181,10 @@ public class ApacheParquet
             throws IOException
     {
         try {
-            writer.close();
+            finish();
             //1,修改文件名称
             FileSystem hdfs = FileSystem.get(java.net.URI.create(outputPath), new Configuration());
-            hdfs.rename(new Path(outputPath),
-                    new Path(outputPath.replace("_tmp_", "file_") + ".parquet"));
+            hdfs.rename(new Path(outputPath), new Path(getCommitPath(outputPath)));
             //这里注意 千万不要关闭 hdfs 否则写parquet都会出错
         }
         catch (IOException e) {
@@ -226,67 +194,98 @@ public class ApacheParquet
         }
     }
 
-    /*
-     * 字段类型为map时对应的map和man entry的schema
+    /**
+     * 关闭流但不改名, commit.mode=checkpoint时由{@link #commit(String)}在checkpoint完成后发布
      */
-    private static MessageType mapTopSchema = MessageTypeParser.parseMessageType("message row {\n" +
-            "  repeated group key_value {\n" +
-            "    required binary key (UTF8);\n" +
-            "    optional binary value (UTF8);\n" +
-            "  }\n" +
-            "}\n");
-    private static MessageType kvSchema = MessageTypeParser.parseMessageType("message row {\n" +
-            "  required binary key (UTF8);\n" +
-            "  optional binary value (UTF8);\n" +
-            "}\n");
-
-    private void addValueToGroup(Class<?> dataType, Group group, int index, Object value)
+    public void finish()
+            throws IOException
     {
-        if (value == null || "".equals(value)) {
-            return;
-        }
-        if (dataType == Binary.class) {
-            group.add(index, value.toString());
-        }
-        else if (dataType == byte.class) {
-            group.add(index, Byte.valueOf(value.toString()));
-        }
-        else if (dataType == short.class) {
-            group.add(index, Short.valueOf(value.toString()));
+        writer.close();
+        logCompressionRatio();
+    }
+
+    /**
+     * 发布finish后的文件, 可重复调用
+     */
+    public static void commit(String outputPath)
+            throws IOException
+    {
+        CommonUtil.commitFile(outputPath, getCommitPath(outputPath));
+    }
+
+    private static String getCommitPath(String outputPath)
+    {
+        return outputPath.replace("_tmp_", "file_") + ".parquet";
+    }
+
+    /**
+     * 压缩比 = 未压缩的列数据大小 / 压缩后的列数据大小
+     */
+    private void logCompressionRatio()
+    {
+        long rows = 0;
+        long totalSize = 0;
+        long compressedSize = 0;
+        for (BlockMetaData block : writer.getFooter().getBlocks()) {
+            rows += block.getRowCount();
+            totalSize += block.getTotalByteSize();
+            compressedSize += block.getCompressedSize();
         }
-        else if (dataType == int.class) {
-            group.add(index, Integer.valueOf(value.toString()));
+        logger.info("close parquet file {}, rows {}, row groups {}, uncompressed {} bytes, compressed {} bytes, compression ratio {}",
+                outputPath, rows, writer.getFooter().getBlocks().size(), totalSize, compressedSize,
+                compressedSize == 0 ? "-" : String.format("%.2f", (double) totalSize / compressedSize));
+    }
+
+    /**
+     * 记住parquet创建的文件流, 用来读取已经写入文件的位置
+     */
+    private static class PositionTrackingOutputFile
+            implements OutputFile
+    {
+        private final OutputFile delegate;
+        private PositionOutputStream stream;
+
+        private PositionTrackingOutputFile(OutputFile delegate)
+        {
+            this.delegate = delegate;
         }
-        else if (dataType == long.class) {
-            group.add(index, Long.parseLong(value.toString()));
+
+        private long getPos()
+        {
+            try {
+                return stream == null ? 0 : stream.getPos();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
-        else if (dataType == double.class) {
-            group.add(index, Double.valueOf(value.toString()));
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint)
+                throws IOException
+        {
+            this.stream = delegate.create(blockSizeHint);
+            return stream;
         }
-        else if (dataType == float.class) {
-            group.add(index, Float.valueOf(value.toString()));
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint)
+                throws IOException
+        {
+            this.stream = delegate.createOrOverwrite(blockSizeHint);
+            return stream;
         }
-        else if (dataType == Map.class) {
-            int mapFieldSize = 0;
-            //List<MessageType> mapSchemaList = mapEntrySchema.get(index);
-            Group mapFieldGroup = new SimpleGroup(mapTopSchema);
-            for (Map.Entry<String, Object> mapFieldEntry : ((Map<String, Object>) value)
-                    .entrySet()) {
-                Group mapEntryKeyValueGroup = new SimpleGroup(kvSchema);
-                final String key = mapFieldEntry.getKey();
-                final Object vValue = mapFieldEntry.getValue();
-                if (vValue != null) {
-                    mapEntryKeyValueGroup.add("key", key);
-                    mapFieldSize += key.length();
-                    mapEntryKeyValueGroup.add("value", vValue.toString());
-                    mapFieldSize += vValue.toString().length();
-                    mapFieldGroup.add("key_value", mapEntryKeyValueGroup);
-                }
-            }
-            group.add(index, mapFieldGroup);
+
+        @Override
+        public boolean supportsBlockSize()
+        {
+            return delegate.supportsBlockSize();
         }
-        else {
-            group.add(index, value.toString());
+
+        @Override
+        public long defaultBlockSize()
+        {
+            return delegate.defaultBlockSize();
         }
     }
 
@@ -300,6 +299,13 @@ public class ApacheParquet
         private ParquetProperties.WriterVersion parquetVersion = ParquetProperties.WriterVersion.PARQUET_2_0;
         private String writePath;
         private MessageType schema;
+        private HdfsSink.HdfsSinkConfig config;
+
+        public Builder config(HdfsSink.HdfsSinkConfig config)
+        {
+            this.config = config;
+            return this;
+        }
 
         public Builder schema(MessageType messageType)
         {
@@ -322,7 +328,7 @@ public class ApacheParquet
         public ApacheParquet get()
                 throws IOException
         {
-            return new ApacheParquet(writePath, schema, parquetVersion);
+            return new ApacheParquet(writePath, schema, parquetVersion, requireNonNull(config, "config is null"));
         }
     }
 }
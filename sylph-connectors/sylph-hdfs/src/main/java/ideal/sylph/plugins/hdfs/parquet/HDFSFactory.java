@@ -19,6 +19,7 @@ import ideal.sylph.etl.Row;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public interface HDFSFactory
@@ -31,9 +32,26 @@ public interface HDFSFactory
     public void writeLine(long eventTime, Collection<Object> evalRow)
             throws IOException;
 
+    /**
+     * the row is only valid during this call, the engine reuses it. Implementations that write it later copy the values
+     */
     public void writeLine(long eventTime, Row row)
             throws IOException;
 
     public void close()
             throws IOException;
+
+    /**
+     * commit.mode=checkpoint时关闭所有打开的文件但不发布, rolling模式下返回空
+     *
+     * @return 上次preCommit以来写完的文件, checkpoint完成后交给{@link #commit(List)}发布
+     */
+    List<String> preCommit()
+            throws IOException;
+
+    /**
+     * 发布preCommit返回的文件, 可重复调用
+     */
+    void commit(List<String> files)
+            throws IOException;
 }
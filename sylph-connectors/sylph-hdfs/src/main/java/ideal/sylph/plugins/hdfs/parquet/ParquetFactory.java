@@ -17,55 +17,79 @@ package ideal.sylph.plugins.hdfs.parquet;
 
 import com.google.common.collect.ImmutableList;
 import ideal.sylph.etl.Row;
+import ideal.sylph.plugins.hdfs.HdfsSink;
 import ideal.sylph.plugins.hdfs.factory.HDFSFactorys;
 import ideal.sylph.plugins.hdfs.factory.TimeParser;
 import ideal.sylph.plugins.hdfs.utils.CommonUtil;
 import ideal.sylph.plugins.hdfs.utils.MemoryUtil;
+import ideal.sylph.plugins.hdfs.utils.WriterMemoryAccountant;
 import org.apache.parquet.column.ParquetProperties;
 import org.apache.parquet.schema.MessageType;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 
 /**
  * 这个是parquet的工厂
+ * <p>
+ * 时间分区按rowKey的hash分给写线程(lane), writeLine只在调用线程上为每个lane攒批,
+ * 满BATCH_ROWS行(或超过MAX_BATCH_DELAY_MS)后把整批交给这个lane.
+ * 每个lane有自己的有界队列和自己的parquet流, 每个时间分区只有一个文件, 只被一个线程写, 不需要锁.
+ * 队列满时writeLine阻塞, 形成反压.
+ * 内存: 每个lane分到hdfs.writer.memory.mb / lane个数的预算(不小于parquet.block.size), 每写完一批就按内存中还没刷出的
+ * row group大小记账(已经刷出的row group不算), 超出时在lane线程上同步关闭最久没有写入的流(相同时先关大的),
+ * 关闭期间队列积压, 反压到writeLine, 不丢数据
+ * <p>
+ * commit.mode=checkpoint时关闭的流不改名, 记为待发布; preCommit经队列让每个lane关闭所有流并交出待发布文件,
+ * 由checkpoint完成后的commit改名. 这个模式不注册shutdown hook, 没有checkpoint的文件保持_tmp_前缀
  */
 public class ParquetFactory
         implements HDFSFactory
 {
     private static final Logger logger = LoggerFactory.getLogger(ParquetFactory.class);
     private static final short TIME_Granularity = 5;
+    private static final long BUCKET_MILLIS = TIME_Granularity * 60_000L;
+    private static final int BATCH_ROWS = 1024;
+    private static final long MAX_BATCH_DELAY_MS = 1000;
+    private static final int LANE_QUEUE_BATCHES = 4;
+    private static final long CHECK_INTERVAL_MS = 5000;
+    private static final Batch CLOSE_LANE = new Batch(0);
 
-    private final BlockingQueue<Runnable> streamData = new LinkedBlockingQueue<>(1000);
-    private final BlockingQueue<Runnable> monitorEvent = new ArrayBlockingQueue<>(1000); //警报事件队列
-    private final ExecutorService executorPool = Executors.newFixedThreadPool(300); //最多300个线程
-    //---parquet流 工厂--结构:Map[key=table+day+0900,parquetWtiter]-
-    private final Map<String, ApacheParquet> parquetManager = new HashMap<>();
     private final String hostName = CommonUtil.getHostNameOrPid();
     private final String writeTableDir;
     private final String table;
     private final MessageType schema;
     private final ParquetProperties.WriterVersion parquetVersion;
+    private final HdfsSink.HdfsSinkConfig config;
+    private final boolean commitOnCheckpoint;
+    private final WriterLane[] lanes;
 
+    //---以下只在writeLine的调用线程上使用---
+    private final Batch[] pending;
+    private long currentWindow = Long.MIN_VALUE;
+    private Bucket currentBucket;
+
+    private volatile Throwable failure;
     private volatile boolean closed = false;
 
     /**
@@ -86,245 +110,470 @@ public class ParquetFactory
         boolean apply(String key, String theLastKey, FileWriter writer);
     }
 
+    /**
+     * 写线程(lane)个数见{@link HdfsSink.HdfsSinkConfig#getParquetWriterThreads()}, 每个时间分区只由一个lane写一个文件
+     */
     public ParquetFactory(
-            final String writeTableDir,
             final String table,
             ParquetProperties.WriterVersion parquetVersion,
-            MessageType schema)
+            MessageType schema,
+            HdfsSink.HdfsSinkConfig config)
     {
-        requireNonNull(writeTableDir, "writeTableDir is null");
+        this.config = requireNonNull(config, "config is null");
+        String writeTableDir = requireNonNull(config.getWriteDir(), "writeTableDir is null");
         this.writeTableDir = writeTableDir.endsWith("/") ? writeTableDir : writeTableDir + "/";
 
         this.table = requireNonNull(table, "table is null");
         this.schema = requireNonNull(schema, "schema is null");
         this.parquetVersion = requireNonNull(parquetVersion, "parquetVersion is null");
+        this.commitOnCheckpoint = config.isCommitOnCheckpoint();
+        int writerThreads = config.getParquetWriterThreads();
+        checkArgument(writerThreads > 0, "writerThreads must > 0");
+
+        this.lanes = new WriterLane[writerThreads];
+        this.pending = new Batch[writerThreads];
+        for (int i = 0; i < writerThreads; i++) {
+            lanes[i] = new WriterLane("Parquet_Factory_Writer_" + table + "_" + i, config.getWriterMemoryBytes() / writerThreads);
+            lanes[i].thread.start();
+            pending[i] = new Batch(BATCH_ROWS);
+        }
+
+        if (!commitOnCheckpoint) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    close();
+                }
+                catch (IOException e) {
+                    logger.error("addShutdownHook close parquet Writer failed", e);
+                }
+            }));
+        }
+    }
+
+    /**
+     * 时间分区, 同一个5分钟窗口内的行共用一个, 只在窗口切换时才解析时间
+     */
+    private static final class Bucket
+    {
+        private final String rowKey;
+        private final long eventTime;
+        private final int lane;
+
+        private Bucket(String rowKey, long eventTime, int lanes)
+        {
+            this.rowKey = rowKey;
+            this.eventTime = eventTime;
+            this.lane = Math.floorMod(rowKey.hashCode(), lanes);
+        }
+    }
+
+    private static final class Batch
+    {
+        private final Bucket[] buckets;
+        private final Object[] lines;
+        private final CompletableFuture<List<String>> preCommit;
+        private long firstRowTime;
+        private int size;
+
+        private Batch(int capacity)
+        {
+            this.buckets = new Bucket[capacity];
+            this.lines = new Object[capacity];
+            this.preCommit = null;
+        }
 
         /**
-         * 消费者
-         * */
-        final Callable<Void> consumer = () -> {
-            Thread.currentThread().setName("Parquet_Factory_Consumer");
+         * 让lane关闭所有流, 交出待发布的文件
+         */
+        private Batch(CompletableFuture<List<String>> preCommit)
+        {
+            this.buckets = new Bucket[0];
+            this.lines = new Object[0];
+            this.preCommit = preCommit;
+        }
+
+        private boolean add(Bucket bucket, Object line)
+        {
+            if (size == 0) {
+                firstRowTime = System.currentTimeMillis();
+            }
+            buckets[size] = bucket;
+            lines[size] = line;
+            return ++size == lines.length;
+        }
+    }
+
+    private final class WriterLane
+            implements Runnable
+    {
+        private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(LANE_QUEUE_BATCHES);
+        //---parquet流 结构:Map[key=table+day+0900,parquetWtiter] 只有本lane线程访问-
+        private final Map<String, ApacheParquet> parquetManager = new HashMap<>();
+        private final List<String> finishedFiles = new ArrayList<>();
+        private final Thread thread;
+        private final WriterMemoryAccountant<Map.Entry<String, ApacheParquet>> memoryAccountant;
+
+        private Bucket lastBucket;
+        private ApacheParquet lastWriter;
+
+        private WriterLane(String name, long memoryBudgetBytes)
+        {
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+            this.memoryAccountant = new WriterMemoryAccountant<>(
+                    memoryBudgetBytes,
+                    entry -> entry.getValue().getBufferedSize(),
+                    Comparator.<Map.Entry<String, ApacheParquet>>comparingLong(entry -> entry.getValue().getLastWriteTime())
+                            .thenComparing(Comparator.comparingLong((Map.Entry<String, ApacheParquet> entry) -> entry.getValue().getBufferedSize()).reversed()));
+        }
+
+        @Override
+        public void run()
+        {
+            long lastCheckTime = System.currentTimeMillis();
             try {
-                while (!closed) {
-                    Runnable value = streamData.poll();
-                    //事件1
-                    if (value != null) {
-                        value.run(); //put data line
+                while (true) {
+                    Batch batch = queue.poll(1, TimeUnit.SECONDS);
+                    if (batch == CLOSE_LANE) {
+                        break;
+                    }
+                    if (batch != null && batch.preCommit != null) {
+                        closeAll();
+                        batch.preCommit.complete(new ArrayList<>(finishedFiles));
+                        finishedFiles.clear();
                     }
-                    //事件2 读取指示序列
-                    Runnable event = monitorEvent.poll();
-                    if (event != null) {
-                        event.run();
+                    else if (batch != null) {
+                        write(batch);
+                        releaseMemory();
                     }
-                    //事件3
-                    if (value == null && event == null) {
-                        TimeUnit.MILLISECONDS.sleep(1);
+                    long now = System.currentTimeMillis();
+                    if (now - lastCheckTime >= CHECK_INTERVAL_MS) {
+                        lastCheckTime = now;
+                        checkflushRule(); //按照规则进行check出过期的parquet流
                     }
                 }
             }
-            catch (Exception e) {
-                logger.error("Parquet_Factory_Consumer error", e);
-                System.exit(-1);
+            catch (Throwable e) {
+                logger.error("{} error", thread.getName(), e);
+                failure = e;
             }
-            return null;
-        };
-
-        //register consumer
-        executorPool.submit(consumer);
-        //register monitor
-        executorPool.submit(monitor);
+            finally {
+                closeAll();
+            }
+        }
 
-        Runtime.getRuntime().addShutdownHook(new Thread(shutdownHook));
-    }
+        @SuppressWarnings("unchecked")
+        private void write(Batch batch)
+        {
+            for (int i = 0; i < batch.size; i++) {
+                ApacheParquet writer = getParquetWriter(batch.buckets[i]);
+                Object line = batch.lines[i];
+                if (line instanceof Row) {
+                    writer.writeLine((Row) line);
+                }
+                else if (line instanceof Map) {
+                    writer.writeLine((Map<String, Object>) line);
+                }
+                else {
+                    writer.writeLine((Collection<Object>) line);
+                }
+            }
+        }
 
-    private final Runnable shutdownHook = () -> {
-        closed = true;
-        synchronized (parquetManager) {
-            parquetManager.entrySet().stream().parallel().forEach(x -> {
-                String rowKey = x.getKey();
+        private ApacheParquet getParquetWriter(Bucket bucket)
+        {
+            if (bucket == lastBucket) {
+                return lastWriter;
+            }
+            ApacheParquet writer = parquetManager.computeIfAbsent(bucket.rowKey, key -> {
+                String parquetPath = writeTableDir + new TimeParser(bucket.eventTime).getPartitionPath();
                 try {
-                    x.getValue().close();
+                    return ApacheParquet.create()
+                            .parquetVersion(parquetVersion)
+                            .schema(schema)
+                            .config(config)
+                            .writePath(parquetPath)
+                            .get();
                 }
                 catch (IOException e) {
-                    logger.error("addShutdownHook close textFile Writer failed {}", rowKey, e);
+                    throw new RuntimeException("parquet writer create failed", e);
                 }
             });
+            this.lastBucket = bucket;
+            this.lastWriter = writer;
+            return writer;
         }
-    };
 
-    /**
-     * 新的 处理内存超载事件
-     * 按流的大小排序关一半 优先关掉数据量大的流
-     * 会阻塞消费者 形成反压
-     **/
-    public Runnable closeHalf = () ->
-    {
-        int cnt = parquetManager.size() / 3; //按创建时间排序关一半  //getCreatedTime
-        AtomicInteger i = new AtomicInteger(0);
-        parquetManager.entrySet().stream()
-                .sorted((x, y) -> (int) (x.getValue().getDataSize() - y.getValue().getDataSize()))
-                .parallel()
-                .forEach(it -> {
-                    String rowKey = it.getKey();
-                    if (i.getAndIncrement() < cnt) {
-                        parquetManager.remove(rowKey);
-                        try {
-                            it.getValue().close();
-                        }
-                        catch (IOException e) {
-                            logger.info("parquet关闭失败 path:{}", it.getValue().getWritePath(), e);
-                        }
-                    }
-                });
-    };
+        /**
+         * 把冷却时间大于5分钟的 都干掉
+         * 关闭 指定toptic的指定 时间粒度
+         **/
+        private void checkflushRule()
+        {
+            // 允许额外延迟1分钟
+            String theLastKey = HDFSFactorys.getRowKey(table, new TimeParser(new DateTime().minusMinutes(TIME_Granularity + 1)));
+
+            boolean closedAny = false;
+            for (Iterator<Map.Entry<String, ApacheParquet>> iterator = parquetManager.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<String, ApacheParquet> it = iterator.next();
+                String key = it.getKey();
+                ApacheParquet writer = it.getValue();
+                boolean expired = filterDefaultFuncs.stream().anyMatch(x -> x.apply(key, theLastKey, writer));
+                if (expired) {
+                    iterator.remove();
+                    logger.info("添加关闭流:" + writer.getWritePath());
+                    closeWriter(writer);
+                    closedAny = true;
+                }
+            }
+            if (closedAny) {
+                //打印内存情况
+                logger.info(MemoryUtil.getMemoryInfo(hostName));
+            }
+        }
+
+        /**
+         * 超出内存预算时关闭流, 直到回到预算内
+         */
+        private void releaseMemory()
+        {
+            List<Map.Entry<String, ApacheParquet>> release = memoryAccountant.selectToRelease(parquetManager.entrySet());
+            if (release.isEmpty()) {
+                return;
+            }
+            logger.info("{} parquet writers use {} bytes, over budget {} bytes, close {} writers",
+                    thread.getName(), memoryAccountant.getUsedBytes(parquetManager.entrySet()), memoryAccountant.getBudgetBytes(), release.size());
+            for (Map.Entry<String, ApacheParquet> it : release) {
+                ApacheParquet writer = it.getValue();
+                parquetManager.remove(it.getKey());
+                closeWriter(writer);
+            }
+        }
+
+        private void closeAll()
+        {
+            parquetManager.values().forEach(this::closeWriter);
+            parquetManager.clear();
+            this.lastBucket = null;
+        }
 
-    private final Callable<Void> monitor = () -> {
-        Thread.currentThread().setName("Parquet_Factory_Monitor");
-        while (!closed) {
+        private void closeWriter(ApacheParquet writer)
+        {
+            if (writer == lastWriter) {
+                this.lastBucket = null;
+                this.lastWriter = null;
+            }
             try {
-                TimeUnit.SECONDS.sleep(5);
-                checkflushRule(); //按照规则进行check出过期的parquet流
-                if (MemoryUtil.checkMemory()) {
-                    monitorEvent.put(closeHalf); //触发了 oom检测警告 ,将采用closeHalf处理
+                if (commitOnCheckpoint) {
+                    writer.finish();
+                    finishedFiles.add(writer.getWritePath());
+                }
+                else {
+                    writer.close();
                 }
             }
-            catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            catch (IOException e) {
+                logger.error("parquet关闭失败 path:{}", writer.getWritePath(), e);
+                if (commitOnCheckpoint) {
+                    failure = e; //下一次checkpoint失败, 从上一次checkpoint重放
+                }
             }
         }
-        return null;
-    };
+    }
 
     /**
-     * 把冷却时间大于5分钟的 都干掉
-     * 关闭 指定toptic的指定 时间粒度
-     **/
-    private void checkflushRule()
+     * 写线程退出后它的lane不再写入, 之后的行都会丢失, 所以任何commit.mode下都让任务失败(以前是System.exit),
+     * 抛出非IOException, HdfsSink.process在rolling模式下不会把它当作单行的错误吞掉
+     */
+    private void checkFailure()
     {
-        // 允许额外延迟1分钟
-        String theLastKey = table + HDFSFactorys.getRowKey(table, new TimeParser(new DateTime().minusMinutes(TIME_Granularity + 1)));
-
-        List<Map.Entry<String, ApacheParquet>> closeWriters = parquetManager.entrySet().stream().filter(it -> {
-            String key = it.getKey();
-            ApacheParquet writer = it.getValue();
-            return filterDefaultFuncs.stream().map(x -> x.apply(key, theLastKey, writer))
-                    .reduce((x, y) -> x || y)
-                    .orElse(false);
-        }).collect(Collectors.toList());
-
-        if (!closeWriters.isEmpty()) {
-            monitorEvent.offer(() ->
-                    closeWriters.forEach(x -> {
-                        parquetManager.remove(x.getKey());
-                        ApacheParquet writer = x.getValue();
-                        executorPool.submit(() -> {
-                            int count = ((ThreadPoolExecutor) executorPool).getActiveCount();
-                            logger.info("正在关闭流个数:" + count + " 添加关闭流:" + writer.getWritePath());
-                            try {
-                                writer.close();
-                            }
-                            catch (IOException e) {
-                                throw new RuntimeException("流关闭出错:", e);
-                            }
-                        });
-                    })
-            );
-            //打印内存情况
-            logger.info(MemoryUtil.getMemoryInfo(hostName));
+        Throwable e = failure;
+        if (e != null) {
+            throw new IllegalStateException("parquet writer thread failed, table " + table, e);
         }
     }
 
-    @Override
-    public void writeLine(long eventTime, Map<String, Object> evalRow)
+    private Bucket getBucket(long eventTime)
     {
-        try {
-            streamData.put(() -> {
-                ApacheParquet parquet = getParquetWriter(eventTime);
-                parquet.writeLine(evalRow);
-            });
+        long window = Math.floorDiv(eventTime + DateTimeZone.getDefault().getOffset(eventTime), BUCKET_MILLIS);
+        if (window != currentWindow) {
+            this.currentBucket = new Bucket(HDFSFactorys.getRowKey(table, new TimeParser(eventTime)), eventTime, lanes.length);
+            this.currentWindow = window;
         }
-        catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        return currentBucket;
+    }
+
+    private void add(long eventTime, Object line)
+            throws IOException
+    {
+        checkFailure();
+        Bucket bucket = getBucket(eventTime);
+        if (pending[bucket.lane].add(bucket, line)) {
+            handOff(bucket.lane);
+        }
+        long now = System.currentTimeMillis();
+        for (int lane = 0; lane < pending.length; lane++) {
+            if (pending[lane].size > 0 && now - pending[lane].firstRowTime >= MAX_BATCH_DELAY_MS) {
+                handOff(lane);
+            }
         }
     }
 
-    @Override
-    public void writeLine(long eventTime, Collection<Object> evalRow)
+    private void handOff(int lane)
+            throws IOException
+    {
+        if (pending[lane].size == 0) {
+            return;
+        }
+        offer(lanes[lane], pending[lane]);
+        pending[lane] = new Batch(BATCH_ROWS);
+    }
+
+    private void handOffAll()
+            throws IOException
+    {
+        for (int lane = 0; lane < pending.length; lane++) {
+            handOff(lane);
+        }
+    }
+
+    private void offer(WriterLane lane, Batch batch)
+            throws IOException
     {
         try {
-            streamData.put(() -> {
-                ApacheParquet parquet = getParquetWriter(eventTime);
-                parquet.writeLine(evalRow);
-            });
+            while (!lane.queue.offer(batch, 1, TimeUnit.SECONDS)) {
+                checkFailure();
+            }
         }
         catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing parquet", e);
         }
     }
 
+    /**
+     * 队列先进先出, lane处理preCommit时它之前交出的行都已写入
+     */
     @Override
-    public void writeLine(long eventTime, Row evalRow)
+    public List<String> preCommit()
+            throws IOException
     {
+        if (!commitOnCheckpoint) {
+            return Collections.emptyList();
+        }
+        checkFailure();
+        handOffAll();
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>(lanes.length);
+        for (WriterLane lane : lanes) {
+            Batch batch = new Batch(new CompletableFuture<>());
+            offer(lane, batch);
+            futures.add(batch.preCommit);
+        }
+        List<String> files = new ArrayList<>();
         try {
-            streamData.put(() -> {
-                ApacheParquet parquet = getParquetWriter(eventTime);
-                parquet.writeLine(evalRow);
-            });
+            for (CompletableFuture<List<String>> future : futures) {
+                while (true) {
+                    try {
+                        files.addAll(future.get(1, TimeUnit.SECONDS));
+                        break;
+                    }
+                    catch (TimeoutException e) {
+                        checkFailure();
+                    }
+                }
+            }
         }
         catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            throw new IOException("interrupted while rolling parquet files", e);
         }
+        catch (ExecutionException e) {
+            throw new IOException("rolling parquet files failed, table " + table, e.getCause());
+        }
+        checkFailure();
+        return files;
     }
 
     @Override
-    public void close()
+    public void commit(List<String> files)
+            throws IOException
     {
-        closed = true;
-        //------关闭所有的流-----
-        // 此处存在线程安全问题,可能导致程序关闭时 丢失数据
-        shutdownHook.run();
+        for (String file : files) {
+            ApacheParquet.commit(file);
+        }
     }
 
     @Override
-    public String getWriteDir()
+    public void writeLine(long eventTime, Map<String, Object> evalRow)
+            throws IOException
     {
-        return writeTableDir;
+        add(eventTime, evalRow);
+    }
+
+    @Override
+    public void writeLine(long eventTime, Collection<Object> evalRow)
+            throws IOException
+    {
+        add(eventTime, evalRow);
     }
 
     /**
-     * rowKey = table + 5minute
+     * 调用方会复用row对象, 这里拷贝一份值
      */
-    private ApacheParquet getParquetWriter(String rowKey, Supplier<ApacheParquet> builder)
+    @Override
+    public void writeLine(long eventTime, Row evalRow)
+            throws IOException
     {
-        //2,检查流是否存在 不存在就新建立一个
-        ApacheParquet writer = parquetManager.get(rowKey);
-        if (writer != null) {
-            return writer;
-        }
-        else {
-            synchronized (parquetManager) {
-                return parquetManager.computeIfAbsent(rowKey, (key) -> builder.get());
-            }
+        Object[] values = new Object[evalRow.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evalRow.getAs(i);
         }
+        add(eventTime, Row.of(values));
     }
 
-    private ApacheParquet getParquetWriter(long eventTime)
+    @Override
+    public synchronized void close()
+            throws IOException
     {
-        TimeParser timeParser = new TimeParser(eventTime);
-        String parquetPath = writeTableDir + timeParser.getPartitionPath();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        //------关闭所有的流-----
+        try {
+            handOffAll();
+        }
+        finally {
+            stopLanes();
+        }
+        checkFailure();
+    }
 
-        String rowKey = HDFSFactorys.getRowKey(table, timeParser);
-        return getParquetWriter(rowKey, () -> {
-            try {
-                return ApacheParquet.create()
-                        .parquetVersion(parquetVersion)
-                        .schema(schema)
-                        .writePath(parquetPath)
-                        .get();
+    /**
+     * 每个lane写完队列里剩下的批次后关闭自己的流
+     */
+    private void stopLanes()
+            throws IOException
+    {
+        try {
+            for (WriterLane lane : lanes) {
+                while (lane.thread.isAlive() && !lane.queue.offer(CLOSE_LANE, 1, TimeUnit.SECONDS)) {
+                    logger.info("waiting {} to close", lane.thread.getName());
+                }
             }
-            catch (IOException e) {
-                throw new RuntimeException("parquet writer create failed", e);
+            for (WriterLane lane : lanes) {
+                lane.thread.join();
             }
-        });
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while closing parquet writers", e);
+        }
+    }
+
+    @Override
+    public String getWriteDir()
+    {
+        return writeTableDir;
     }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.hdfs.parquet;
+
+import ideal.sylph.etl.Row;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * 直接把Row写入RecordConsumer, 每列的写入器在创建时按parquet schema编译好.
+ * Number/Boolean/byte[]不经过字符串转换, 只有类型不匹配时才解析toString().
+ * null和空字符串不写(即null). 无法转换的字段不写, 每个字段只打印一次日志, 不会写坏当前行
+ */
+public class RowWriteSupport
+        extends WriteSupport<Row>
+{
+    private static final Logger logger = LoggerFactory.getLogger(RowWriteSupport.class);
+
+    private final MessageType schema;
+    private final ValueWriter[] writers;
+    private final Set<String> errField = new HashSet<>(); //每个文件的字段错误 只打印一次
+    private RecordConsumer recordConsumer;
+
+    public RowWriteSupport(MessageType schema)
+    {
+        this.schema = requireNonNull(schema, "schema is null");
+        List<Type> fields = schema.getFields();
+        this.writers = new ValueWriter[fields.size()];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = createWriter(fields.get(i), i);
+        }
+    }
+
+    public static ParquetWriter.Builder<Row, ?> builder(Path path, MessageType schema)
+    {
+        return new Builder(path, schema);
+    }
+
+    public static ParquetWriter.Builder<Row, ?> builder(OutputFile file, MessageType schema)
+    {
+        return new Builder(file, schema);
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration)
+    {
+        return new WriteContext(schema, Collections.emptyMap());
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer)
+    {
+        this.recordConsumer = recordConsumer;
+    }
+
+    @Override
+    public void write(Row row)
+    {
+        recordConsumer.startMessage();
+        int size = Math.min(row.size(), writers.length);
+        for (int i = 0; i < size; i++) {
+            Object value = row.getAs(i);
+            if (value == null || "".equals(value)) {
+                continue;
+            }
+            try {
+                writers[i].write(recordConsumer, value);
+            }
+            catch (RuntimeException e) {
+                String fieldName = schema.getFieldName(i);
+                if (errField.add(fieldName)) {
+                    logger.warn("错误字段:{}:{} 原因:{}", fieldName, value, e.getMessage());
+                }
+            }
+        }
+        recordConsumer.endMessage();
+    }
+
+    /**
+     * 先转换再startField, 转换失败时当前行不受影响
+     */
+    private interface ValueWriter
+    {
+        void write(RecordConsumer consumer, Object value);
+    }
+
+    private static ValueWriter createWriter(Type field, int index)
+    {
+        final String name = field.getName();
+        if (!field.isPrimitive()) {
+            if (field.getOriginalType() == OriginalType.MAP) {
+                return createMapWriter(field.asGroupType(), index);
+            }
+            throw new UnsupportedOperationException("this type[" + field + "] have't support!");
+        }
+
+        switch (field.asPrimitiveType().getPrimitiveTypeName()) {
+            case BINARY:
+                return (consumer, value) -> {
+                    Binary binary = value instanceof byte[] ? Binary.fromReusedByteArray((byte[]) value) : Binary.fromString(value.toString());
+                    consumer.startField(name, index);
+                    consumer.addBinary(binary);
+                    consumer.endField(name, index);
+                };
+            case INT32:
+                return (consumer, value) -> {
+                    int intValue = value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+                    consumer.startField(name, index);
+                    consumer.addInteger(intValue);
+                    consumer.endField(name, index);
+                };
+            case INT64:
+                return (consumer, value) -> {
+                    long longValue;
+                    if (value instanceof Number) {
+                        longValue = ((Number) value).longValue();
+                    }
+                    else if (value instanceof java.util.Date) {
+                        longValue = ((java.util.Date) value).getTime();
+                    }
+                    else {
+                        longValue = Long.parseLong(value.toString());
+                    }
+                    consumer.startField(name, index);
+                    consumer.addLong(longValue);
+                    consumer.endField(name, index);
+                };
+            case FLOAT:
+                return (consumer, value) -> {
+                    float floatValue = value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString());
+                    consumer.startField(name, index);
+                    consumer.addFloat(floatValue);
+                    consumer.endField(name, index);
+                };
+            case DOUBLE:
+                return (consumer, value) -> {
+                    double doubleValue = value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+                    consumer.startField(name, index);
+                    consumer.addDouble(doubleValue);
+                    consumer.endField(name, index);
+                };
+            case BOOLEAN:
+                return (consumer, value) -> {
+                    boolean booleanValue = value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString());
+                    consumer.startField(name, index);
+                    consumer.addBoolean(booleanValue);
+                    consumer.endField(name, index);
+                };
+            default:
+                throw new UnsupportedOperationException("this type[" + field + "] have't support!");
+        }
+    }
+
+    /**
+     * map字段: group (MAP) { repeated group key_value { required binary key (UTF8); optional binary value (UTF8); } }
+     * value为null的entry不写
+     */
+    private static ValueWriter createMapWriter(GroupType mapType, int index)
+    {
+        final String name = mapType.getName();
+        final String keyValueName = mapType.getFieldName(0);
+        return (consumer, value) -> {
+            Map<?, ?> map = (Map<?, ?>) value;
+            consumer.startField(name, index);
+            consumer.startGroup();
+            boolean started = false;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                if (!started) {
+                    consumer.startField(keyValueName, 0);
+                    started = true;
+                }
+                consumer.startGroup();
+                consumer.startField("key", 0);
+                consumer.addBinary(Binary.fromString(String.valueOf(entry.getKey())));
+                consumer.endField("key", 0);
+                consumer.startField("value", 1);
+                consumer.addBinary(Binary.fromString(entry.getValue().toString()));
+                consumer.endField("value", 1);
+                consumer.endGroup();
+            }
+            if (started) {
+                consumer.endField(keyValueName, 0);
+            }
+            consumer.endGroup();
+            consumer.endField(name, index);
+        };
+    }
+
+    private static class Builder
+            extends ParquetWriter.Builder<Row, Builder>
+    {
+        private final MessageType schema;
+
+        private Builder(Path path, MessageType schema)
+        {
+            super(path);
+            this.schema = requireNonNull(schema, "schema is null");
+        }
+
+        private Builder(OutputFile file, MessageType schema)
+        {
+            super(file);
+            this.schema = requireNonNull(schema, "schema is null");
+        }
+
+        @Override
+        protected Builder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<Row> getWriteSupport(Configuration conf)
+        {
+            return new RowWriteSupport(schema);
+        }
+    }
+}
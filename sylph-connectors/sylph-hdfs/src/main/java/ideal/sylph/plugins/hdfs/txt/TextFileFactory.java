@@ -20,6 +20,8 @@ import ideal.sylph.etl.Row;
 import ideal.sylph.etl.Schema;
 import ideal.sylph.plugins.hdfs.HdfsSink;
 import ideal.sylph.plugins.hdfs.parquet.HDFSFactory;
+import ideal.sylph.plugins.hdfs.utils.CommonUtil;
+import ideal.sylph.plugins.hdfs.utils.WriterMemoryAccountant;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -31,11 +33,16 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import static com.github.harbby.gadtry.base.MoreObjects.checkState;
@@ -45,6 +52,11 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * write text
+ * <p>
+ * 所有打开文件未flush的字节数之和超过hdfs.writer.memory.mb时, 在写入线程上同步flush最久没有写入的文件(相同时先flush大的)
+ * <p>
+ * commit.mode=checkpoint时关闭的文件不改名, 由preCommit交出, checkpoint完成后commit改名;
+ * 每个文件名带uuid, 重放时不会追加到上次没有发布的文件, 这个模式不注册shutdown hook
  */
 public class TextFileFactory
         implements HDFSFactory
@@ -60,6 +72,10 @@ public class TextFileFactory
     private final int batchSize;
     private final long fileSplitSize;
     private final int maxCloseMinute;           //文件创建多久就关闭
+    private final boolean commitOnCheckpoint;
+    private final List<String> finishedFiles = new ArrayList<>();   //已关闭待发布的文件
+    private final WriterMemoryAccountant<FileChannel> memoryAccountant;
+    private long bufferedBytes;                 //所有文件未flush的字节数
 
     public TextFileFactory(String table, Schema schema,
             HdfsSink.HdfsSinkConfig config,
@@ -72,6 +88,12 @@ public class TextFileFactory
         this.fileSplitSize = config.getFileSplitSize() * 1024L * 1024L * 8L;
         checkState(config.getMaxCloseMinute() >= 5, "maxCloseMinute must > 5Minute");
         this.maxCloseMinute = ((int) config.getMaxCloseMinute()) * 60_000;
+        this.commitOnCheckpoint = config.isCommitOnCheckpoint();
+        this.memoryAccountant = new WriterMemoryAccountant<>(
+                config.getWriterMemoryBytes(),
+                FileChannel::getBufferSize,
+                Comparator.comparingLong(FileChannel::getLastWriteTime)
+                        .thenComparing(Comparator.comparingLong(FileChannel::getBufferSize).reversed()));
 
         //todo: Increase time-division functionality
         new Thread(() -> {
@@ -99,17 +121,19 @@ public class TextFileFactory
             }
         }).start();
 
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            writerManager.entrySet().stream().parallel().forEach(x -> {
-                String rowKey = x.getKey();
-                try {
-                    x.getValue().close();
-                }
-                catch (IOException e) {
-                    logger.error("addShutdownHook close textFile Writer failed {}", rowKey, e);
-                }
-            });
-        }));
+        if (!commitOnCheckpoint) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                writerManager.entrySet().stream().parallel().forEach(x -> {
+                    String rowKey = x.getKey();
+                    try {
+                        x.getValue().close();
+                    }
+                    catch (IOException e) {
+                        logger.error("addShutdownHook close textFile Writer failed {}", rowKey, e);
+                    }
+                });
+            }));
+        }
     }
 
     private FileChannel getTxtFileWriter(long eventTime)
@@ -159,7 +183,8 @@ public class TextFileFactory
     {
         Configuration hadoopConf = new Configuration();
         CompressionCodec codec = ReflectionUtils.newInstance(LzopCodec.class, hadoopConf);
-        String outputPath = this.writeTableDir + timeParser.getPartitionPath() + "_partition_" + this.partition + "_split" + split + codec.getDefaultExtension();
+        String outputPath = this.writeTableDir + timeParser.getPartitionPath() + "_partition_" + this.partition + "_split" + split
+                + (commitOnCheckpoint ? "_" + UUID.randomUUID() : "") + codec.getDefaultExtension();
         logger.info("create {} text file {}", rowKey, outputPath);
         try {
             FileChannel fileChannel = new FileChannel(outputPath, split, codec, hadoopConf);
@@ -217,6 +242,52 @@ public class TextFileFactory
         TextFileFactory.FileChannel writer = this.getTxtFileWriter(eventTime);
         byte[] bytes = (value + "\n").getBytes(StandardCharsets.UTF_8);
         writer.write(bytes);
+        if (bufferedBytes > memoryAccountant.getBudgetBytes()) {
+            releaseMemory();
+        }
+    }
+
+    private void releaseMemory()
+            throws IOException
+    {
+        List<FileChannel> release = memoryAccountant.selectToRelease(writerManager.values());
+        logger.info("text writers buffer {} bytes, over budget {} bytes, flush {} files", bufferedBytes, memoryAccountant.getBudgetBytes(), release.size());
+        for (FileChannel channel : release) {
+            channel.flush();
+        }
+    }
+
+    @Override
+    public List<String> preCommit()
+            throws IOException
+    {
+        if (!commitOnCheckpoint) {
+            return Collections.emptyList();
+        }
+        synchronized (needClose) {
+            for (FileChannel channel : writerManager.values()) {
+                channel.close();
+            }
+            writerManager.clear();
+            needClose.clear();
+        }
+        List<String> files = new ArrayList<>(finishedFiles);
+        finishedFiles.clear();
+        return files;
+    }
+
+    @Override
+    public void commit(List<String> files)
+            throws IOException
+    {
+        for (String file : files) {
+            CommonUtil.commitFile(file, getCommitPath(file));
+        }
+    }
+
+    private static String getCommitPath(String filePath)
+    {
+        return filePath.replace("_tmp_", "text_");
     }
 
     @Override
@@ -242,6 +313,7 @@ public class TextFileFactory
 
         private long writeSize = 0L;
         private long bufferSize;
+        private long lastWriteTime = createTime;
         private final long split;
 
         public FileChannel(String outputPath, long split, CompressionCodec codec, Configuration hadoopConf)
@@ -261,14 +333,33 @@ public class TextFileFactory
         {
             outputStream.write(bytes);
             bufferSize += bytes.length;
+            bufferedBytes += bytes.length;
             this.writeSize += bytes.length;
+            this.lastWriteTime = System.currentTimeMillis();
 
             if (bufferSize > batchSize) {
-                this.outputStream.flush();
-                this.bufferSize = 0L;
+                flush();
             }
         }
 
+        private void flush()
+                throws IOException
+        {
+            this.outputStream.flush();
+            bufferedBytes -= bufferSize;
+            this.bufferSize = 0L;
+        }
+
+        public long getBufferSize()
+        {
+            return bufferSize;
+        }
+
+        public long getLastWriteTime()
+        {
+            return lastWriteTime;
+        }
+
         public String getFilePath()
         {
             return filePath;
@@ -292,8 +383,15 @@ public class TextFileFactory
         public void close()
                 throws IOException
         {
+            bufferedBytes -= bufferSize;
+            this.bufferSize = 0L;
             outputStream.close();
-            hdfs.rename(new Path(filePath), new Path(filePath.replace("_tmp_", "text_")));
+            if (commitOnCheckpoint) {
+                finishedFiles.add(filePath);
+            }
+            else {
+                hdfs.rename(new Path(filePath), new Path(getCommitPath(filePath)));
+            }
         }
     }
 
@@ -15,6 +15,11 @@
  */
 package ideal.sylph.plugins.hdfs.utils;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.net.InetAddress;
@@ -61,4 +66,22 @@ public class CommonUtil
             return String.valueOf(getProcessID());
         }
     }
+
+    /**
+     * 改名发布文件, 可重复调用: 源文件已不存在且目标文件存在时视为已经发布过
+     */
+    public static void commitFile(String tmpPath, String targetPath)
+            throws IOException
+    {
+        Path src = new Path(tmpPath);
+        Path dst = new Path(targetPath);
+        FileSystem hdfs = src.getFileSystem(new Configuration());
+        if (hdfs.rename(src, dst)) {
+            return;
+        }
+        if (!hdfs.exists(src) && hdfs.exists(dst)) {
+            return;
+        }
+        throw new IOException("commit file " + tmpPath + " to " + targetPath + " failed");
+    }
 }
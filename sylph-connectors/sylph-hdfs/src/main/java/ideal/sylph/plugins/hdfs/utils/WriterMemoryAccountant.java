@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.hdfs.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * 打开的writer的内存记账.
+ * 所有writer缓冲的字节数之和超过预算时, 按releaseOrder选出要刷出或关闭的writer, 直到回到预算内.
+ * 调用方在写入线程上同步释放, 释放完成前不再写入, 由此形成反压而不是丢数据
+ */
+public class WriterMemoryAccountant<W>
+{
+    private final long budgetBytes;
+    private final ToLongFunction<W> bufferedBytes;
+    private final Comparator<W> releaseOrder;
+
+    /**
+     * @param bufferedBytes writer占用的内存
+     * @param releaseOrder 先释放排在前面的writer
+     */
+    public WriterMemoryAccountant(long budgetBytes, ToLongFunction<W> bufferedBytes, Comparator<W> releaseOrder)
+    {
+        checkArgument(budgetBytes > 0, "budgetBytes must > 0");
+        this.budgetBytes = budgetBytes;
+        this.bufferedBytes = requireNonNull(bufferedBytes, "bufferedBytes is null");
+        this.releaseOrder = requireNonNull(releaseOrder, "releaseOrder is null");
+    }
+
+    public long getBudgetBytes()
+    {
+        return budgetBytes;
+    }
+
+    public long getUsedBytes(Collection<W> writers)
+    {
+        long used = 0;
+        for (W writer : writers) {
+            used += bufferedBytes.applyAsLong(writer);
+        }
+        return used;
+    }
+
+    /**
+     * @return 需要释放的writer, 按释放顺序; 没有超过预算时为空
+     */
+    public List<W> selectToRelease(Collection<W> writers)
+    {
+        long used = getUsedBytes(writers);
+        if (used <= budgetBytes) {
+            return Collections.emptyList();
+        }
+        List<W> candidates = new ArrayList<>(writers);
+        candidates.sort(releaseOrder);
+        List<W> release = new ArrayList<>();
+        for (W writer : candidates) {
+            if (used <= budgetBytes) {
+                break;
+            }
+            used -= bufferedBytes.applyAsLong(writer);
+            release.add(writer);
+        }
+        return release;
+    }
+}
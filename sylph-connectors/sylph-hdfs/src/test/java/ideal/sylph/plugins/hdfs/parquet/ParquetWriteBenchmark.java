@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.hdfs.parquet;
+
+import ideal.sylph.etl.Row;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.GroupWriter;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the old SimpleGroup path (toString and parse per value) vs {@link RowWriteSupport}, on a 20 column row.
+ * Both write to a RecordConsumer that only consumes the values, so the column encoding is not measured.
+ * run main(), the gc profiler reports gc.alloc.rate.norm (bytes per record)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParquetWriteBenchmark
+{
+    private static final int GROUP_COLUMNS = 5;
+
+    private MessageType schema;
+    private Row[] records;
+    private int next;
+
+    private SimpleGroupFactory groupFactory;
+    private GroupWriter groupWriter;
+    private RowWriteSupport writeSupport;
+    private BlackholeConsumer consumer;
+
+    @Setup
+    public void setup()
+    {
+        StringBuilder schemaString = new StringBuilder("message row { ");
+        for (int i = 0; i < GROUP_COLUMNS; i++) {
+            schemaString.append("optional binary name_").append(i).append(" (UTF8); ")
+                    .append("optional INT32 int_").append(i).append("; ")
+                    .append("optional INT64 long_").append(i).append("; ")
+                    .append("optional DOUBLE double_").append(i).append("; ");
+        }
+        this.schema = MessageTypeParser.parseMessageType(schemaString.append("} ").toString());
+
+        this.records = new Row[1024];
+        for (int r = 0; r < records.length; r++) {
+            Object[] values = new Object[GROUP_COLUMNS * 4];
+            for (int i = 0; i < GROUP_COLUMNS; i++) {
+                values[i * 4] = "value_" + r + "_" + i;
+                values[i * 4 + 1] = r * i;
+                values[i * 4 + 2] = System.currentTimeMillis() + r;
+                values[i * 4 + 3] = r * 1.5D;
+            }
+            records[r] = Row.of(values);
+        }
+
+        this.consumer = new BlackholeConsumer();
+        this.groupFactory = new SimpleGroupFactory(schema);
+        this.groupWriter = new GroupWriter(consumer, schema);
+        this.writeSupport = new RowWriteSupport(schema);
+        writeSupport.prepareForWrite(consumer);
+    }
+
+    private Row nextRecord()
+    {
+        next = (next + 1) & (records.length - 1);
+        return records[next];
+    }
+
+    /**
+     * the old ApacheParquet.writeLine(Row): a SimpleGroup per row, every value through toString()
+     */
+    @Benchmark
+    public void simpleGroup(Blackhole blackhole)
+    {
+        consumer.blackhole = blackhole;
+        Row row = nextRecord();
+        Group group = groupFactory.newGroup();
+        List<ColumnDescriptor> columns = schema.getColumns();
+        for (int i = 0; i < row.size(); i++) {
+            addValueToGroup(columns.get(i).getType().javaType, group, i, row.getAs(i));
+        }
+        groupWriter.write(group);
+    }
+
+    @Benchmark
+    public void rowWriteSupport(Blackhole blackhole)
+    {
+        consumer.blackhole = blackhole;
+        writeSupport.write(nextRecord());
+    }
+
+    private static void addValueToGroup(Class<?> dataType, Group group, int index, Object value)
+    {
+        if (value == null || "".equals(value)) {
+            return;
+        }
+        if (dataType == Binary.class) {
+            group.add(index, value.toString());
+        }
+        else if (dataType == int.class) {
+            group.add(index, Integer.valueOf(value.toString()));
+        }
+        else if (dataType == long.class) {
+            group.add(index, Long.parseLong(value.toString()));
+        }
+        else if (dataType == double.class) {
+            group.add(index, Double.valueOf(value.toString()));
+        }
+        else {
+            group.add(index, value.toString());
+        }
+    }
+
+    private static class BlackholeConsumer
+            extends RecordConsumer
+    {
+        private Blackhole blackhole;
+
+        @Override
+        public void startMessage() {}
+
+        @Override
+        public void endMessage() {}
+
+        @Override
+        public void startField(String field, int index) {}
+
+        @Override
+        public void endField(String field, int index) {}
+
+        @Override
+        public void startGroup() {}
+
+        @Override
+        public void endGroup() {}
+
+        @Override
+        public void addInteger(int value)
+        {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void addLong(long value)
+        {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void addBoolean(boolean value)
+        {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void addBinary(Binary value)
+        {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void addFloat(float value)
+        {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void addDouble(double value)
+        {
+            blackhole.consume(value);
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include(ParquetWriteBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
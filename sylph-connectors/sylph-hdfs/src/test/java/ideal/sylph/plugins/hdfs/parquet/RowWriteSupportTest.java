@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.hdfs.parquet;
+
+import ideal.sylph.etl.Row;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class RowWriteSupportTest
+{
+    private final MessageType schema = MessageTypeParser.parseMessageType("message row { " +
+            "optional binary name (UTF8); " +
+            "optional INT32 age; " +
+            "optional INT64 event_time; " +
+            "optional DOUBLE score; " +
+            "optional BOOLEAN ok; " +
+            "optional group tags (MAP) { repeated group key_value { required binary key (UTF8); optional binary value (UTF8); } } " +
+            "} ");
+
+    private String write(Object... values)
+    {
+        RecordingConsumer consumer = new RecordingConsumer();
+        RowWriteSupport writeSupport = new RowWriteSupport(schema);
+        writeSupport.prepareForWrite(consumer);
+        writeSupport.write(Row.of(values));
+        return consumer.events.toString();
+    }
+
+    @Test
+    public void writeAllColumns()
+    {
+        String events = write("a", 18, 1546300800000L, 1.5D, true, Collections.singletonMap("k", "v"));
+        Assert.assertEquals("<name=a><age=18><event_time=1546300800000><score=1.5><ok=true>" +
+                "<tags={<key_value={<key=k><value=v>}>}>", events);
+    }
+
+    @Test
+    public void convertValues()
+    {
+        String events = write("a", "18", 12, 2, "true", null);
+        Assert.assertEquals("<name=a><age=18><event_time=12><score=2.0><ok=true>", events);
+    }
+
+    @Test
+    public void nullAndBadValuesAreSkipped()
+    {
+        String events = write("", "x", new java.sql.Date(1000L), null, null, null);
+        Assert.assertEquals("<event_time=1000>", events);
+    }
+
+    private static class RecordingConsumer
+            extends RecordConsumer
+    {
+        private final StringBuilder events = new StringBuilder();
+
+        @Override
+        public void startMessage() {}
+
+        @Override
+        public void endMessage() {}
+
+        @Override
+        public void startField(String field, int index)
+        {
+            events.append('<').append(field).append('=');
+        }
+
+        @Override
+        public void endField(String field, int index)
+        {
+            events.append('>');
+        }
+
+        @Override
+        public void startGroup()
+        {
+            events.append('{');
+        }
+
+        @Override
+        public void endGroup()
+        {
+            events.append('}');
+        }
+
+        @Override
+        public void addInteger(int value)
+        {
+            events.append(value);
+        }
+
+        @Override
+        public void addLong(long value)
+        {
+            events.append(value);
+        }
+
+        @Override
+        public void addBoolean(boolean value)
+        {
+            events.append(value);
+        }
+
+        @Override
+        public void addBinary(Binary value)
+        {
+            events.append(value.toStringUsingUTF8());
+        }
+
+        @Override
+        public void addFloat(float value)
+        {
+            events.append(value);
+        }
+
+        @Override
+        public void addDouble(double value)
+        {
+            events.append(value);
+        }
+    }
+}
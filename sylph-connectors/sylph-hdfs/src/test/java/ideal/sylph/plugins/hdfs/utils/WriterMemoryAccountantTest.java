@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.hdfs.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class WriterMemoryAccountantTest
+{
+    /**
+     * {name, bufferedBytes, lastWriteTime}
+     */
+    private final WriterMemoryAccountant<long[]> accountant = new WriterMemoryAccountant<>(
+            100,
+            writer -> writer[1],
+            Comparator.<long[]>comparingLong(writer -> writer[2])
+                    .thenComparing(Comparator.<long[]>comparingLong(writer -> writer[1]).reversed()));
+
+    @Test
+    public void underBudget()
+    {
+        List<long[]> writers = Arrays.asList(new long[] {1, 40, 1}, new long[] {2, 60, 2});
+        Assert.assertEquals(100, accountant.getUsedBytes(writers));
+        Assert.assertEquals(Collections.emptyList(), accountant.selectToRelease(writers));
+    }
+
+    @Test
+    public void releaseLeastRecentlyWrittenFirst()
+    {
+        long[] newest = {1, 60, 3};
+        long[] oldestSmall = {2, 10, 1};
+        long[] oldestLarge = {3, 30, 1};
+        long[] middle = {4, 40, 2};
+        List<long[]> release = accountant.selectToRelease(Arrays.asList(newest, oldestSmall, oldestLarge, middle));
+        Assert.assertEquals(Arrays.asList(oldestLarge, oldestSmall), release);
+    }
+
+    @Test
+    public void releaseUntilUnderBudget()
+    {
+        long[] large = {1, 250, 2};
+        long[] small = {2, 10, 1};
+        List<long[]> release = accountant.selectToRelease(Arrays.asList(large, small));
+        Assert.assertEquals(Arrays.asList(small, large), release);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import ideal.sylph.etl.Schema;
+import ideal.sylph.plugins.json.JsonRowSerializer;
+import ideal.sylph.runner.flink.etl.FlinkRow;
+import org.apache.flink.api.java.typeutils.RowTypeInfo;
+import org.apache.flink.streaming.util.serialization.KeyedSerializationSchema;
+import org.apache.flink.types.Row;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * json value by {@link JsonRowSerializer}, the key is the utf-8 string of the key field
+ */
+public class JsonKeyedSerializationSchema
+        implements KeyedSerializationSchema<Row>
+{
+    private static final long serialVersionUID = 1L;
+    private final JsonRowSerializer serializer;
+    private final RowTypeInfo rowTypeInfo;
+    private final int keyIndex;
+    private transient FlinkRow reuseRow;
+
+    /**
+     * @param keyIndex -1 means no key
+     */
+    public JsonKeyedSerializationSchema(Schema schema, int keyIndex)
+    {
+        this.serializer = new JsonRowSerializer(schema);
+        this.rowTypeInfo = FlinkRow.parserRowType(schema);
+        this.keyIndex = keyIndex;
+    }
+
+    @Override
+    public byte[] serializeKey(Row element)
+    {
+        if (keyIndex == -1) {
+            return null;
+        }
+        Object key = element.getField(keyIndex);
+        return key == null ? null : key.toString().getBytes(UTF_8);
+    }
+
+    @Override
+    public byte[] serializeValue(Row element)
+    {
+        if (reuseRow == null) {
+            reuseRow = new FlinkRow(rowTypeInfo);
+        }
+        try {
+            return serializer.serialize(reuseRow.reset(element));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getTargetTopic(Row element)
+    {
+        return null;
+    }
+}
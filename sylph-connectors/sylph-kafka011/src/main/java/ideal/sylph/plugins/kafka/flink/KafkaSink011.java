@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import ideal.sylph.annotation.Description;
+import ideal.sylph.annotation.Name;
+import ideal.sylph.annotation.Version;
+import ideal.sylph.etl.PluginConfig;
+import ideal.sylph.etl.Schema;
+import ideal.sylph.etl.SinkContext;
+import ideal.sylph.etl.api.Sink;
+import org.apache.flink.shaded.guava18.com.google.common.base.Strings;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaProducer011;
+import org.apache.flink.types.Row;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.flink.shaded.guava18.com.google.common.base.Preconditions.checkArgument;
+import static org.apache.flink.shaded.guava18.com.google.common.base.Preconditions.checkState;
+
+/**
+ * kafka 0.11+ sink, json records written by {@link FlinkKafkaProducer011} which takes part in flink checkpoints.
+ * <p>
+ * semantic = exactly_once: records are written in a kafka transaction which is committed when the checkpoint completes,
+ * consumers must read with {@code isolation.level = read_committed} and see the records one checkpoint later.
+ * semantic = at_least_once: pending records are flushed in snapshotState, no transaction cost.
+ * Every other config is passed to the kafka producer.
+ */
+@Name("kafka011")
+@Version("1.0.0")
+@Description("this is kafka 0.11+ exactly_once or at_least_once Sink plugin")
+public class KafkaSink011
+        implements Sink<DataStream<Row>>
+{
+    // kafka broker default transaction.max.timeout.ms, flink would use 1 hour which the broker rejects
+    private static final String DEFAULT_TRANSACTION_TIMEOUT_MS = "900000";
+
+    private final Kafka011SinkConfig config;
+    private final Schema schema;
+    private final FlinkKafkaProducer011.Semantic semantic;
+    private int keyIndex = -1;
+
+    public KafkaSink011(SinkContext context, Kafka011SinkConfig config)
+    {
+        this.config = requireNonNull(config, "config is null");
+        this.schema = context.getSchema();
+        checkArgument(!Strings.isNullOrEmpty(config.topic), "kafka_topic is not set");
+        checkArgument(!Strings.isNullOrEmpty(config.brokers), "kafka_broker is not set");
+        this.semantic = FlinkKafkaProducer011.Semantic.valueOf(config.semantic.toUpperCase());
+        if (!Strings.isNullOrEmpty(config.idField)) {
+            int fieldIndex = schema.getFieldIndex(config.idField);
+            checkState(fieldIndex != -1, config.idField + " does not exist, only " + schema.getFields());
+            this.keyIndex = fieldIndex;
+        }
+    }
+
+    @Override
+    public void run(DataStream<Row> stream)
+    {
+        Properties properties = new Properties();
+        properties.setProperty("transaction.timeout.ms", DEFAULT_TRANSACTION_TIMEOUT_MS);
+        for (Map.Entry<String, Object> entry : config.getOtherConfig().entrySet()) {
+            if (entry.getValue() != null) {
+                properties.setProperty(entry.getKey(), entry.getValue().toString());
+            }
+        }
+        properties.setProperty("bootstrap.servers", config.brokers);
+
+        FlinkKafkaProducer011<Row> producer = new FlinkKafkaProducer011<>(
+                config.topic,
+                new JsonKeyedSerializationSchema(schema, keyIndex),
+                properties,
+                Optional.empty(),  //kafka partitions by key, round robin without key
+                semantic,
+                (int) config.producersPoolSize);
+        stream.addSink(producer).name("kafka011 sink " + config.topic);
+    }
+
+    public static class Kafka011SinkConfig
+            extends PluginConfig
+    {
+        private static final long serialVersionUID = 2L;
+
+        @Name("kafka_topic")
+        @Description("this is kafka topic")
+        private String topic;
+
+        @Name("kafka_broker")
+        @Description("this is kafka broker list, e.g. broker1:9092,broker2:9092")
+        private String brokers;
+
+        @Name("id_field")
+        @Description("this is the field used as kafka record key, records with the same key go to the same partition")
+        private String idField;
+
+        @Name("semantic")
+        @Description("exactly_once, at_least_once or none")
+        private String semantic = "exactly_once";
+
+        @Name("kafka.producers.pool.size")
+        @Description("exactly_once only, transactional producers per subtask, must exceed the concurrent checkpoints")
+        private long producersPoolSize = FlinkKafkaProducer011.DEFAULT_KAFKA_PRODUCERS_POOL_SIZE;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.kafka.flink;
+
+import ideal.sylph.etl.Schema;
+import org.apache.flink.types.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class JsonKeyedSerializationSchemaTest
+{
+    private final Schema schema = Schema.newBuilder()
+            .add("user_id", String.class)
+            .add("event_time", long.class)
+            .add("score", double.class)
+            .build();
+
+    @Test
+    public void keyIsTheUtf8StringOfTheKeyField()
+    {
+        JsonKeyedSerializationSchema serializationSchema = new JsonKeyedSerializationSchema(schema, 1);
+        Assert.assertArrayEquals("1554000000000".getBytes(UTF_8), serializationSchema.serializeKey(Row.of("uid_1", 1554000000000L, 1.5D)));
+        Assert.assertNull(serializationSchema.serializeKey(Row.of("uid_1", null, 1.5D)));
+
+        JsonKeyedSerializationSchema withoutKey = new JsonKeyedSerializationSchema(schema, -1);
+        Assert.assertNull(withoutKey.serializeKey(Row.of("uid_1", 1554000000000L, 1.5D)));
+        Assert.assertNull(withoutKey.getTargetTopic(Row.of("uid_1", 1554000000000L, 1.5D)));
+    }
+
+    @Test
+    public void valueIsJsonOfEveryRow()
+    {
+        JsonKeyedSerializationSchema serializationSchema = new JsonKeyedSerializationSchema(schema, 0);
+        Assert.assertEquals("{\"user_id\":\"uid_1\",\"event_time\":1554000000000,\"score\":1.5}",
+                new String(serializationSchema.serializeValue(Row.of("uid_1", 1554000000000L, 1.5D)), UTF_8));
+        // the wrapping row is reused, the next record must not see the previous one
+        Assert.assertEquals("{\"user_id\":\"uid_\\\"2\",\"event_time\":1554000000001}",
+                new String(serializationSchema.serializeValue(Row.of("uid_\"2", 1554000000001L, null)), UTF_8));
+    }
+}
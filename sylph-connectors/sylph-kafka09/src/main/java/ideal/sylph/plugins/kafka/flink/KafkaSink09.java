@@ -15,7 +15,6 @@
  */
 package ideal.sylph.plugins.kafka.flink;
 
-import com.google.gson.Gson;
 import ideal.sylph.annotation.Description;
 import ideal.sylph.annotation.Name;
 import ideal.sylph.etl.PluginConfig;
@@ -23,16 +22,28 @@ import ideal.sylph.etl.Row;
 import ideal.sylph.etl.Schema;
 import ideal.sylph.etl.SinkContext;
 import ideal.sylph.etl.api.RealTimeSink;
+import ideal.sylph.plugins.json.JsonRowSerializer;
+import ideal.sylph.plugins.kafka.flink.utils.IProducer;
 import ideal.sylph.plugins.kafka.flink.utils.KafkaProducer;
 import org.apache.flink.shaded.guava18.com.google.common.base.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
+import java.util.Properties;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.flink.shaded.guava18.com.google.common.base.Preconditions.checkState;
 
+/**
+ * json records serialized by a {@link JsonRowSerializer} compiled from the sink schema.
+ * {@code id_field} is the record key, records with the same key go to the same partition.
+ * Every other config is passed to the kafka producer, for example {@code linger.ms} or {@code compression.type}.
+ * Sent records are flushed before a checkpoint completes, so delivery is at-least-once.
+ * All subtasks of the sink in one taskmanager share a single producer, see {@link KafkaProducer#open}
+ */
 @Name("kafka09")
 @Description("this is kafka09 Sink plugin")
 public class KafkaSink09
@@ -40,48 +51,72 @@ public class KafkaSink09
 {
     private static final Logger logger = LoggerFactory.getLogger(KafkaSink09.class);
     private final Kafka09SinkConfig config;
-    private final Schema schema;
-    private int idIndex = -1;
-    private KafkaProducer kafkaProducer;
-    private final String topic;
+    private final JsonRowSerializer serializer;
+    private int keyIndex = -1;
+    private transient IProducer kafkaProducer;
 
     public KafkaSink09(SinkContext context, Kafka09SinkConfig config)
     {
-        schema = context.getSchema();
+        Schema schema = context.getSchema();
         if (!Strings.isNullOrEmpty(config.idField)) {
             int fieldIndex = schema.getFieldIndex(config.idField);
             checkState(fieldIndex != -1, config.idField + " does not exist, only " + schema.getFields());
-            this.idIndex = fieldIndex;
+            this.keyIndex = fieldIndex;
         }
+        checkState(!Strings.isNullOrEmpty(config.brokers) || !Strings.isNullOrEmpty(config.zookeeper), "kafka_broker or zookeeper.connect must be set");
         this.config = config;
-        this.topic = config.topics;
+        this.serializer = new JsonRowSerializer(schema);
     }
 
     @Override
     public void process(Row value)
     {
-        Gson gson = new Gson();
-        Map<String, Object> map = new HashMap<>();
-        for (String fieldName : schema.getFieldNames()) {
-            map.put(fieldName, value.getAs(fieldName));
+        byte[] key = keyIndex == -1 || value.isNullAt(keyIndex) ? null : value.<Object>getAs(keyIndex).toString().getBytes(UTF_8);
+        try {
+            kafkaProducer.send(key, serializer.serialize(value));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        String message = gson.toJson(map);
-        kafkaProducer.send(message);
+    }
+
+    @Override
+    public void flush()
+    {
+        kafkaProducer.flush();
     }
 
     @Override
     public boolean open(long partitionId, long version)
             throws Exception
     {
-        //config.zookeeper,config.brokers  至少一个  暂时 zookeeper
-        this.kafkaProducer = new KafkaProducer(config.zookeeper, config.topics);
+        Properties properties = new Properties();
+        for (Map.Entry<String, Object> entry : config.getOtherConfig().entrySet()) {
+            if (entry.getValue() != null) {
+                properties.setProperty(entry.getKey(), entry.getValue().toString());
+            }
+        }
+        this.kafkaProducer = KafkaProducer.open(config.brokers, config.zookeeper, config.topics, properties);
         return true;
     }
 
     @Override
     public void close(Throwable errorOrNull)
     {
-        kafkaProducer.close();
+        if (kafkaProducer == null) {
+            return;
+        }
+        try {
+            if (errorOrNull == null) {
+                kafkaProducer.flush();
+            }
+        }
+        finally {
+            kafkaProducer.close();
+        }
+        if (errorOrNull != null) {
+            logger.error("kafka09 sink closed with error", errorOrNull);
+        }
     }
 
     public static class Kafka09SinkConfig
@@ -93,15 +128,15 @@ public class KafkaSink09
         private String topics;
 
         @Name("kafka_broker")
-        @Description("this is kafka broker list")
-        private String brokers = "localhost:6667";
+        @Description("this is kafka broker list, e.g. broker1:9092,broker2:9092")
+        private String brokers;
 
         @Name("zookeeper.connect")
-        @Description("this is kafka zk list")
+        @Description("this is kafka zk list, only used to find the brokers when kafka_broker is not set")
         private String zookeeper;
 
         @Name("id_field")
-        @Description("this is kafka id_field")
+        @Description("this is the field used as kafka record key, records with the same key go to the same partition")
         private String idField;
     }
 }
@@ -17,7 +17,17 @@ package ideal.sylph.plugins.kafka.flink.utils;
 
 public interface IProducer
 {
-    void send(String message);
+    /**
+     * asynchronous send, a failed send is thrown by a later send or {@link #flush()}
+     *
+     * @param key null means no key, the partition is chosen round robin
+     */
+    void send(byte[] key, byte[] value);
+
+    /**
+     * blocks until every sent record is acknowledged
+     */
+    void flush();
 
     void close();
 }
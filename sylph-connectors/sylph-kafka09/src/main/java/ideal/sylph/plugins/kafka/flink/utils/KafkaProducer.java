@@ -21,31 +21,86 @@ import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
+import static java.util.Objects.requireNonNull;
+
+/**
+ * One kafka producer per jvm (per job classloader) and per sink config, shared by all subtasks of the sink.
+ * {@link #open} returns the shared producer, it is closed when the last subtask calls {@link #close()}
+ */
 public class KafkaProducer
         implements IProducer
 {
     private static final Logger log = LoggerFactory.getLogger(KafkaProducer.class);
+    private static final Map<String, KafkaProducer> producers = new HashMap<>();
+
+    private final String sharedKey;
+    private final String topic;
+    private final org.apache.kafka.clients.producer.KafkaProducer<byte[], byte[]> producer;
+    private volatile Exception asyncException;
+    private final Callback callback = (metadata, exception) -> {
+        if (exception != null && asyncException == null) {
+            asyncException = exception;
+        }
+    };
+    private int refCount;  //guarded by producers
 
-    private String brokersString;
-    private String topic;
-    private String partitionKey = "";
-    private org.apache.kafka.clients.producer.KafkaProducer<String, String> producer;
-
-    public KafkaProducer(String zkConnect, String topic)
+    private KafkaProducer(String sharedKey, String topic, Properties props)
     {
+        this.sharedKey = sharedKey;
         this.topic = topic;
+        this.producer = new org.apache.kafka.clients.producer.KafkaProducer<>(props);
+    }
+
+    /**
+     * @param brokers bootstrap.servers, if null or empty the brokers are read from zookeeper
+     * @param zkConnect only used when brokers is not set
+     * @param properties producer properties, bootstrap.servers and the serializers are set here
+     */
+    public static IProducer open(String brokers, String zkConnect, String topic, Properties properties)
+    {
+        requireNonNull(topic, "topic is null");
+        String sharedKey = String.join("|", topic, String.valueOf(brokers), String.valueOf(zkConnect), new TreeMap<>(properties).toString());
+        synchronized (producers) {
+            KafkaProducer kafkaProducer = producers.get(sharedKey);
+            if (kafkaProducer == null) {
+                String bootstrapServers = brokers == null || brokers.isEmpty() ? getBrokersFromZk(requireNonNull(zkConnect, "kafka_broker or zookeeper.connect must be set")) : brokers;
+
+                Properties props = new Properties();
+                // at-least-once defaults, the sink config can override them
+                props.put(ProducerConfig.ACKS_CONFIG, "all");
+                props.put(ProducerConfig.RETRIES_CONFIG, "60");
+                props.put(ProducerConfig.RETRY_BACKOFF_MS_CONFIG, "1000");
+                props.putAll(properties);
+                props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+                props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+                props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+
+                kafkaProducer = new KafkaProducer(sharedKey, topic, props);
+                producers.put(sharedKey, kafkaProducer);
+                log.info("created kafka producer for topic {} brokers {}", topic, bootstrapServers);
+            }
+            kafkaProducer.refCount++;
+            return kafkaProducer;
+        }
+    }
 
+    private static String getBrokersFromZk(String zkConnect)
+    {
         RetryPolicy retryPolicy = new ExponentialBackoffRetry(1000, 3);
         CuratorFramework client = CuratorFrameworkFactory.newClient(zkConnect, retryPolicy);
         client.start();
@@ -89,32 +144,40 @@ public class KafkaProducer
         // Close the zookeeper connection
         client.close();
 
-        brokersString = Joiner.on(',').join(hosts);
-
-        Properties props = new Properties();
-        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokersString);
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-        props.put(ProducerConfig.ACKS_CONFIG, "1");
-        props.put(ProducerConfig.RETRIES_CONFIG, "60");
-        props.put(ProducerConfig.RETRY_BACKOFF_MS_CONFIG, "1000");
-        props.put(ProducerConfig.BATCH_SIZE_CONFIG, "10000");
-        props.put(ProducerConfig.LINGER_MS_CONFIG, "500");
-        props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, "ideal.sylph.plugins.kafka.flink.utils.SimplePartitioner");
-
-        producer = new org.apache.kafka.clients.producer.KafkaProducer<>(props);
+        return Joiner.on(',').join(hosts);
     }
 
     @Override
     public void close()
     {
+        synchronized (producers) {
+            if (--refCount > 0) {
+                return;
+            }
+            producers.remove(sharedKey);
+        }
         producer.close();
     }
 
     @Override
-    public void send(String message)
+    public void send(byte[] key, byte[] value)
     {
-        ProducerRecord<String, String> record = new ProducerRecord<>(topic, message);
-        producer.send(record);
+        checkError();
+        producer.send(new ProducerRecord<>(topic, key, value), callback);
+    }
+
+    @Override
+    public void flush()
+    {
+        producer.flush();
+        checkError();
+    }
+
+    private void checkError()
+    {
+        Exception exception = asyncException;
+        if (exception != null) {
+            throw new IllegalStateException("send record to kafka topic " + topic + " failed", exception);
+        }
     }
 }
@@ -21,21 +21,18 @@ import ideal.sylph.etl.PluginConfig;
 import ideal.sylph.etl.Row;
 import ideal.sylph.etl.SinkContext;
 import ideal.sylph.etl.api.RealTimeSink;
-import org.apache.kudu.ColumnSchema;
 import org.apache.kudu.Type;
 import org.apache.kudu.client.KuduClient;
 import org.apache.kudu.client.KuduSession;
 import org.apache.kudu.client.KuduTable;
 import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.PartialRow;
 import org.apache.kudu.client.SessionConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.sql.Date;
-import java.sql.Time;
-import java.sql.Timestamp;
 import java.util.List;
 import java.util.function.Supplier;
 
@@ -63,6 +60,8 @@ public class KuduSink
     private int rowNumCnt = 0;
 
     private Supplier<Operation> operationCreater;
+    private int[] columnIndexes;
+    private Type[] columnTypes;
 
     public KuduSink(SinkContext context, KuduSinkConfig kuduSinkConfig)
     {
@@ -105,6 +104,15 @@ public class KuduSink
         this.kuduTable = kuduClient.openTable(tableName);
         this.operationCreater = getOperationCreater(kuduSinkConfig.mode, kuduTable);
 
+        // resolve kudu columns once, process() writes by column index
+        org.apache.kudu.Schema kuduSchema = kuduTable.getSchema();
+        this.columnIndexes = new int[fieldNames.size()];
+        this.columnTypes = new Type[fieldNames.size()];
+        for (int i = 0; i < fieldNames.size(); i++) {
+            columnIndexes[i] = kuduSchema.getColumnIndex(fieldNames.get(i));
+            columnTypes[i] = kuduSchema.getColumnByIndex(columnIndexes[i]).getType();
+        }
+
         kuduSession.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH);
         //kuduSession.setFlushInterval();
         this.kuduSession.setMutationBufferSpace(this.mutationBufferSpace); //8m
@@ -117,7 +125,7 @@ public class KuduSink
         Operation operation = operationCreater.get();
         try {
             for (int i = 0; i < fieldNames.size(); i++) {
-                appendColumn(operation, fieldNames.get(i), row.getField(i));
+                appendColumn(operation.getRow(), i, row);
             }
 
             kuduSession.apply(operation);
@@ -132,61 +140,55 @@ public class KuduSink
         }
     }
 
-    private void appendColumn(Operation operation, String name, Object value)
+    private void appendColumn(PartialRow kuduRow, int field, Row row)
     {
-        ColumnSchema columnSchema = kuduTable.getSchema().getColumn(name);
-
-        if (value == null) {
-            operation.getRow().setNull(name);
+        int column = columnIndexes[field];
+        if (row.isNullAt(field)) {
+            kuduRow.setNull(column);
             return;
         }
 
-        Type kuduType = columnSchema.getType();
+        Type kuduType = columnTypes[field];
         switch (kuduType) {
             case BINARY:
-                operation.getRow().addBinary(name, (byte[]) value);
+                kuduRow.addBinary(column, row.getBytes(field));
                 break;
 
             case STRING:
-                operation.getRow().addString(name, String.valueOf(value));
+                kuduRow.addString(column, String.valueOf(row.<Object>getAs(field)));
                 break;
             case BOOL:
-                operation.getRow().addBoolean(name, (Boolean) value);
+                kuduRow.addBoolean(column, row.getBoolean(field));
                 break;
 
             case INT8:
             case INT16:
-                operation.getRow().addShort(name, (Short) value);
+                kuduRow.addShort(column, row.<Short>getAs(field));
                 break;
 
             case INT32:
-                operation.getRow().addInt(name, (Integer) value);
+                kuduRow.addInt(column, row.getInt(field));
                 break;
 
             case INT64: {
-                if (value instanceof Date) {
-                    operation.getRow().addLong(name, ((Date) value).getTime());
-                }
-                else if (value instanceof Time) {
-                    operation.getRow().addLong(name, ((Time) value).getTime());
-                }
-                else if (value instanceof Timestamp) {
-                    operation.getRow().addLong(name, ((Timestamp) value).getTime());
+                Object value = row.getAs(field);
+                if (value instanceof java.util.Date) {   // Date, Time and Timestamp
+                    kuduRow.addLong(column, ((java.util.Date) value).getTime());
                 }
                 else {
-                    operation.getRow().addLong(name, (Long) value);
+                    kuduRow.addLong(column, row.getLong(field));
                 }
                 break;
             }
             case DOUBLE:
-                operation.getRow().addDouble(name, (Double) value);
+                kuduRow.addDouble(column, row.getDouble(field));
                 break;
             case FLOAT:
-                operation.getRow().addFloat(name, (Float) value);
+                kuduRow.addFloat(column, row.<Float>getAs(field));
                 break;
 
             case DECIMAL:
-                operation.getRow().addDecimal(name, (BigDecimal) value);
+                kuduRow.addDecimal(column, row.<BigDecimal>getAs(field));
                 break;
 
             default:
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import ideal.sylph.plugins.cache.CacheStats;
+import ideal.sylph.plugins.cache.JoinCache;
+import org.apache.flink.shaded.guava18.com.google.common.cache.Cache;
+import org.apache.flink.shaded.guava18.com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * on heap guava LRU cache, {@code cache.mode = lru}.
+ * Misses are kept in a separate cache with their own ttl, so they never evict real rows
+ */
+public class HeapJoinCache
+        implements JoinCache
+{
+    private static final Object[][] EMPTY = new Object[0][];
+
+    private final Cache<String, Object[][]> cache;
+    private final Cache<String, Boolean> negativeCache;
+
+    public HeapJoinCache(long maxNumber, long expireSeconds, long negativeExpireSeconds)
+    {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxNumber)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.negativeCache = CacheBuilder.newBuilder()
+                .maximumSize(maxNumber)
+                .expireAfterWrite(negativeExpireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    private static String toStringKey(Object[] key)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Object value : key) {
+            builder.append(value).append("\u0001");
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public Object[][] getIfPresent(Object[] key)
+    {
+        String stringKey = toStringKey(key);
+        Object[][] rows = cache.getIfPresent(stringKey);
+        if (rows == null && negativeCache.getIfPresent(stringKey) != null) {
+            return EMPTY;
+        }
+        return rows;
+    }
+
+    @Override
+    public void put(Object[] key, Object[][] rows)
+    {
+        String stringKey = toStringKey(key);
+        if (rows.length == 0) {
+            negativeCache.put(stringKey, Boolean.TRUE);
+            cache.invalidate(stringKey);
+        }
+        else {
+            cache.put(stringKey, rows);
+            negativeCache.invalidate(stringKey);
+        }
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        cache.invalidateAll();
+        negativeCache.invalidateAll();
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        // a lookup reads the negative cache only after missing the row cache
+        org.apache.flink.shaded.guava18.com.google.common.cache.CacheStats stats = cache.stats();
+        org.apache.flink.shaded.guava18.com.google.common.cache.CacheStats negativeStats = negativeCache.stats();
+        return new CacheStats(stats.hitCount() + negativeStats.hitCount(), negativeStats.missCount(),
+                stats.evictionCount() + negativeStats.evictionCount(), cache.size() + negativeCache.size(), -1);
+    }
+
+    @Override
+    public void close()
+    {
+        invalidateAll();
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import ideal.sylph.annotation.Description;
+import ideal.sylph.annotation.Name;
+import ideal.sylph.etl.CheckHandler;
+import ideal.sylph.etl.Row;
+import ideal.sylph.etl.Schema;
+import ideal.sylph.etl.api.AsyncRealTimeTransForm;
+import ideal.sylph.etl.join.JoinContext;
+import ideal.sylph.etl.join.SelectField;
+import ideal.sylph.plugins.cache.JoinCache;
+import ideal.sylph.plugins.cache.OffHeapJoinCache;
+import ideal.sylph.plugins.mysql.utils.JdbcConnectionPool;
+import ideal.sylph.plugins.mysql.utils.JdbcUtils;
+import org.apache.flink.shaded.guava18.com.google.common.collect.ImmutableList;
+import org.apache.flink.shaded.guava18.com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static ideal.sylph.etl.join.JoinContext.JoinType.LEFT;
+import static org.apache.flink.shaded.guava18.com.google.common.base.Preconditions.checkState;
+
+/**
+ * Generic jdbc batch table join, the database specific sql is in {@link JdbcDialect}.
+ * lookup queries run on a fixed executor of `query.threads` per subtask,
+ * every query thread borrows its own pooled connection and cached prepared statements
+ * <p>
+ * {@code batch.max.keys > 0} enables micro batching: cache misses of many records are
+ * collected for {@code batch.window.ms} (or until max keys) and loaded by one {@code IN} query,
+ * its rows are matched back to the records by the {@link JoinKeyCodec} keys.
+ * Without micro batching every cache miss is one query, concurrent misses of the same key share it.
+ * {@code cache.mode}: lru on heap guava cache, offheap {@link OffHeapJoinCache},
+ * all loads the whole table into memory, see {@link SnapshotCache}
+ * <p>
+ * records with a null join key never match and are answered without any lookup,
+ * {@code cache.bloom.filter=true} does the same for keys the {@link KeyBloomFilter} rejects
+ */
+@Name("jdbc")
+@Description("this is `join mode` jdbc config table, support mysql, postgresql, clickhouse and h2")
+public class JdbcAsyncJoin
+        implements AsyncRealTimeTransForm, CheckHandler
+{
+    private static final Logger logger = LoggerFactory.getLogger(JdbcAsyncJoin.class);
+    private static final Object[][] EMPTY = new Object[0][];
+
+    private final List<SelectField> selectFields;
+    private final String sql;
+    private final String batchSql;  // select ... where , the dialect appends the batched key condition
+    private final JdbcDialect dialect;
+    private final JoinKeyCodec keyCodec;
+    private final String driver;
+    private final int batchMaxKeys;
+    private final List<Integer> joinOnIndexes;
+    private final List<String> joinOnFields;
+    private final List<String> resultFields;
+    private final int[] resultIndexes;  // select field -> index of resultFields, -1 is a stream table field
+    private final int[] resultKeyIndexes;  // join on field -> index of resultFields
+    private final String snapshotSql;
+    private final String bloomSql;
+    private final String bloomCountSql;
+    private final List<String> snapshotFields;
+    private final JoinContext.JoinType joinType;
+    private final int selectFieldCnt;
+    private final JdbcJoinConfig config;
+    private final Schema schema;
+
+    private transient JdbcConnectionPool pool;
+    private transient ExecutorService executor;
+    private transient MicroBatchLoader<Object[][]> batchLoader;
+    private transient SnapshotCache snapshot;
+    private transient JoinCache cache;
+    private transient KeyBloomFilter bloomFilter;
+    private transient ConcurrentMap<String, CompletableFuture<Object[][]>> inFlight;  // per key lookups, without micro batching
+
+    private final transient Callable<Void> checkHandler;
+
+    public JdbcAsyncJoin(JoinContext context, JdbcJoinConfig config)
+    {
+        this(context, config, config.getDialect());
+    }
+
+    protected JdbcAsyncJoin(JoinContext context, JdbcJoinConfig config, JdbcDialect dialect)
+    {
+        this.config = config;
+        this.dialect = dialect;
+        this.keyCodec = new JoinKeyCodec(config.isKeyCaseInsensitive(dialect));
+        this.driver = config.getDriver() == null ? dialect.getDefaultDriver() : config.getDriver();
+        this.schema = context.getSchema();
+        this.selectFields = context.getSelectFields();
+        this.selectFieldCnt = selectFields.size();
+        this.joinType = context.getJoinType();
+        Map<Integer, String> joinOnMapping = context.getJoinOnMapping();
+        this.joinOnIndexes = ImmutableList.copyOf(joinOnMapping.keySet());
+        this.joinOnFields = joinOnIndexes.stream().map(joinOnMapping::get).collect(Collectors.toList());
+
+        String where = joinOnFields.stream().map(x -> x + " = ?").collect(Collectors.joining(" and "));
+        List<String> batchFields = context.getSelectFields().stream().filter(SelectField::isBatchTableField)
+                .map(SelectField::getFieldName).collect(Collectors.toList());
+
+        String select = "select %s from %s where %s";
+
+        String jdbcTable = config.getQuery() != null && config.getQuery().trim().length() > 0
+                ? "(" + config.getQuery() + ") as " + context.getBatchTable()
+                : context.getBatchTable();
+
+        // the queries also select the join on fields, the batched lookup uses them to fan the rows back out to the keys
+        Set<String> queryFields = new LinkedHashSet<>(batchFields);
+        queryFields.addAll(joinOnFields);
+        this.resultFields = ImmutableList.copyOf(queryFields);
+        this.resultIndexes = selectFields.stream()
+                .mapToInt(field -> field.isBatchTableField() ? resultFields.indexOf(field.getFieldName()) : -1).toArray();
+        this.resultKeyIndexes = joinOnFields.stream().mapToInt(resultFields::indexOf).toArray();
+
+        this.sql = String.format(select, String.join(",", resultFields), jdbcTable, where);
+        this.batchSql = String.format(select, String.join(",", resultFields), jdbcTable, "");
+        this.batchMaxKeys = Math.min(config.getBatchMaxKeys(), dialect.getMaxParameters() / joinOnFields.size());
+
+        Set<String> snapshotQueryFields = new LinkedHashSet<>(resultFields);
+        if (config.getIncrementalField() != null) {
+            snapshotQueryFields.add(config.getIncrementalField());
+        }
+        this.snapshotFields = ImmutableList.copyOf(snapshotQueryFields);
+        this.snapshotSql = String.format("select %s from %s", String.join(",", snapshotFields), jdbcTable);
+        this.bloomSql = String.format("select distinct %s from %s", String.join(",", joinOnFields), jdbcTable);
+        this.bloomCountSql = String.format("select count(*) from %s", jdbcTable);
+
+        logger.info("batch table join query is [{}]", sql);
+        logger.info("join mapping is {}", context.getJoinOnMapping());
+
+        this.checkHandler = () -> {
+            Set<String> fieldNames = ImmutableSet.<String>builder().addAll(batchFields).addAll(context.getJoinOnMapping().values()).build();
+
+            Class.forName(driver);
+            try (Connection connection = DriverManager.getConnection(config.getJdbcUrl(), config.getUser(), config.getPassword());
+                    ResultSet resultSet = connection.getMetaData().getColumns(null, null, jdbcTable, null);
+            ) {
+                List<Map<String, Object>> tableSchema = JdbcUtils.resultToList(resultSet);
+                List<String> listNames = tableSchema.stream().map(x -> (String) x.get("COLUMN_NAME")).collect(Collectors.toList());
+
+                checkState(listNames.containsAll(fieldNames), dialect + " table `" + jdbcTable + " fields ` only " + listNames + ", but your is " + fieldNames);
+            }
+            return null;
+        };
+    }
+
+    @Override
+    public void check()
+            throws Exception
+    {
+        checkHandler.call();
+    }
+
+    @Override
+    public CompletionStage<Collection<Row>> processAsync(Row input)
+    {
+        checkState(executor != null, " executor is null, the transform not open");
+        Object[] keyValues = keyValues(input);
+        if (keyValues == null) {
+            // sql `=` never matches null
+            return CompletableFuture.completedFuture(toRows(input, EMPTY));
+        }
+        if (snapshot != null) {
+            // in memory lookup, never blocks
+            return CompletableFuture.completedFuture(toRows(input, snapshot.get(keyValues)));
+        }
+        if (bloomFilter != null && !bloomFilter.mightContain(keyValues)) {
+            return CompletableFuture.completedFuture(toRows(input, EMPTY));
+        }
+
+        Object[][] cacheData = cache.getIfPresent(keyValues);
+        if (cacheData != null) {
+            return CompletableFuture.completedFuture(toRows(input, cacheData));
+        }
+        String key = keyCodec.encode(keyValues);
+        CompletableFuture<Object[][]> load = batchLoader != null ? batchLoader.load(key, keyValues) : lookup(key, keyValues);
+        return load.thenApply(data -> toRows(input, data));
+    }
+
+    /**
+     * @return the join key values, null if any of them is null
+     */
+    private Object[] keyValues(Row input)
+    {
+        Object[] keyValues = new Object[joinOnIndexes.size()];
+        for (int i = 0; i < keyValues.length; i++) {
+            Object value = input.getField(joinOnIndexes.get(i));
+            if (value == null) {
+                return null;
+            }
+            keyValues[i] = value;
+        }
+        return keyValues;
+    }
+
+    /**
+     * load all keys of a micro batch with one query and fill the cache for every key
+     */
+    private Map<String, Object[][]> batchLookup(Map<String, Object[]> keys)
+            throws SQLException
+    {
+        checkState(pool != null, " connection pool is null");
+        int keySize = joinOnFields.size();
+        // pad the in list to a power of two by repeating the last key, so the statement cache only holds a few shapes
+        int inSize = Math.min(Integer.highestOneBit(keys.size() - 1) << 1, batchMaxKeys);
+        inSize = Math.max(inSize, keys.size());
+        String query = batchSql + dialect.batchLookupCondition(joinOnFields, inSize);
+
+        Object[] parameters = new Object[inSize * keySize];
+        int parameterIndex = 0;
+        Object[] last = null;
+        for (Object[] keyValues : keys.values()) {
+            System.arraycopy(keyValues, 0, parameters, parameterIndex, keySize);
+            parameterIndex += keySize;
+            last = keyValues;
+        }
+        for (int i = keys.size(); i < inSize; i++) {
+            System.arraycopy(last, 0, parameters, parameterIndex, keySize);
+            parameterIndex += keySize;
+        }
+
+        // the rows are keyed by their normalised key values, the same encoding as the keys of the batch
+        Map<String, List<Object[]>> result = new HashMap<>();
+        Object[] recordKey = new Object[resultKeyIndexes.length];
+        for (Object[] record : JdbcUtils.query(pool, query, parameters)) {
+            for (int i = 0; i < resultKeyIndexes.length; i++) {
+                recordKey[i] = record[resultKeyIndexes[i]];
+            }
+            result.computeIfAbsent(keyCodec.encode(recordKey), k -> new ArrayList<>()).add(record);
+        }
+
+        Map<String, Object[][]> loaded = new HashMap<>(keys.size());
+        for (Map.Entry<String, Object[]> entry : keys.entrySet()) {
+            List<Object[]> data = result.get(entry.getKey());
+            Object[][] rows = data == null ? EMPTY : data.toArray(new Object[0][]);
+            cache.put(entry.getValue(), rows);
+            loaded.put(entry.getKey(), rows);
+        }
+        return loaded;
+    }
+
+    /**
+     * query one key on the executor and fill the cache, a hot key that expires is queried once, not by every record
+     */
+    private CompletableFuture<Object[][]> lookup(String key, Object[] keyValues)
+    {
+        CompletableFuture<Object[][]> future = new CompletableFuture<>();
+        CompletableFuture<Object[][]> loading = inFlight.putIfAbsent(key, future);
+        if (loading != null) {
+            return loading;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    Object[][] cacheData = JdbcUtils.query(pool, sql, keyValues).toArray(new Object[0][]);
+                    cache.put(keyValues, cacheData);
+                    inFlight.remove(key, future);
+                    future.complete(cacheData);
+                }
+                catch (Throwable e) {
+                    inFlight.remove(key, future);
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * @param cacheData batch table rows in the order of resultFields, empty if the key not exists
+     */
+    private List<Row> toRows(Row input, Object[][] cacheData)
+    {
+        if (cacheData.length == 0) {
+            if (joinType != LEFT) {
+                return ImmutableList.of();
+            }
+            // left join, the batch table fields are null
+            cacheData = new Object[][] {new Object[resultFields.size()]};
+        }
+        List<Row> rows = new ArrayList<>(cacheData.length);
+        for (Object[] value : cacheData) {
+            Object[] row = new Object[selectFieldCnt];
+            for (int i = 0; i < selectFieldCnt; i++) {
+                int index = resultIndexes[i];
+                row[i] = index >= 0 ? value[index] : input.getField(selectFields.get(i).getFieldIndex());
+            }
+            rows.add(Row.of(row));
+        }
+        return rows;
+    }
+
+    @Override
+    public Schema getSchema()
+    {
+        return schema;
+    }
+
+    @Override
+    public boolean open(long partitionId, long version)
+            throws Exception
+    {
+        //create connection pool, one connection per query thread
+        Class.forName(driver);
+        this.pool = new JdbcConnectionPool(config.getJdbcUrl(), config.getUser(), config.getPassword(),
+                config.getQueryThreads(), config.getStatementCacheSize());
+
+        AtomicInteger threadId = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(config.getQueryThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "jdbc-async-join-" + partitionId + "-" + threadId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        String cacheMode = config.getCacheMode();
+        if ("all".equals(cacheMode)) {
+            this.snapshot = new SnapshotCache(pool, snapshotSql, snapshotFields, resultFields.size(), joinOnFields, keyCodec,
+                    config.getIncrementalField(), config.getRefreshSeconds(), dialect.getScanFetchSize());
+            snapshot.start("jdbc-async-join-" + partitionId);
+            return true;
+        }
+
+        if ("offheap".equals(cacheMode)) {
+            this.cache = new OffHeapJoinCache(config.getOffHeapMaxMb() << 20, config.getCacheTime() * 1000L, config.getNegativeCacheTime() * 1000L);
+        }
+        else {
+            this.cache = new HeapJoinCache(config.getCacheMaxNumber(), config.getCacheTime(), config.getNegativeCacheTime());
+        }
+        if (config.isBloomFilter()) {
+            this.bloomFilter = new KeyBloomFilter(pool, bloomSql, bloomCountSql, joinOnFields.size(), keyCodec, config.getBloomFpp(),
+                    config.getBloomRefreshSeconds(), dialect.getScanFetchSize());
+            bloomFilter.start("jdbc-async-join-" + partitionId);
+        }
+        this.inFlight = new ConcurrentHashMap<>();
+        if (batchMaxKeys > 0) {
+            this.batchLoader = new MicroBatchLoader<>("jdbc-async-join-" + partitionId,
+                    batchMaxKeys, config.getBatchWindowMs(), executor, this::batchLookup);
+        }
+        return true;
+    }
+
+    @Override
+    public Map<String, Supplier<Number>> getMetrics()
+    {
+        Map<String, Supplier<Number>> metrics = new LinkedHashMap<>();
+        if (cache != null) {
+            metrics.put("joinCacheHitCount", () -> cache.stats().getHitCount());
+            metrics.put("joinCacheMissCount", () -> cache.stats().getMissCount());
+            metrics.put("joinCacheEvictionCount", () -> cache.stats().getEvictionCount());
+            metrics.put("joinCacheSize", () -> cache.stats().getSize());
+        }
+        if (bloomFilter != null) {
+            metrics.put("keyBloomFilterRejectCount", bloomFilter::getRejectCount);
+        }
+        return metrics;
+    }
+
+    @Override
+    public void close(Throwable errorOrNull)
+    {
+        if (batchLoader != null) {
+            batchLoader.close();
+        }
+        if (snapshot != null) {
+            snapshot.close();
+        }
+        if (bloomFilter != null) {
+            logger.info("{} key bloom filter rejected {} lookups", dialect, bloomFilter.getRejectCount());
+            bloomFilter.close();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+        if (cache != null) {
+            logger.info("{} join cache {}", dialect, cache.stats());
+            cache.close();
+        }
+
+        if (errorOrNull != null) {
+            logger.error("", errorOrNull);
+        }
+    }
+}
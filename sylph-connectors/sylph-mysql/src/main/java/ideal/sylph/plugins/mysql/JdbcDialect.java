@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import java.util.List;
+
+/**
+ * Database specific parts of the jdbc batch table join
+ */
+public enum JdbcDialect
+{
+    MYSQL("jdbc:mysql:", "com.mysql.jdbc.Driver", true, 65535, Integer.MIN_VALUE, true),  // MIN_VALUE: streaming result set
+    POSTGRESQL("jdbc:postgresql:", "org.postgresql.Driver", true, 32767, 10_000, false),
+    CLICKHOUSE("jdbc:clickhouse:", "com.github.housepower.jdbc.ClickHouseDriver", true, 65535, 10_000, false),
+    H2("jdbc:h2:", "org.h2.Driver", false, 65535, 10_000, false);
+
+    private final String urlPrefix;
+    private final String driver;
+    private final boolean rowValueIn;
+    private final int maxParameters;
+    private final int scanFetchSize;
+    private final boolean caseInsensitiveKeys;
+
+    JdbcDialect(String urlPrefix, String driver, boolean rowValueIn, int maxParameters, int scanFetchSize, boolean caseInsensitiveKeys)
+    {
+        this.urlPrefix = urlPrefix;
+        this.driver = driver;
+        this.rowValueIn = rowValueIn;
+        this.maxParameters = maxParameters;
+        this.scanFetchSize = scanFetchSize;
+        this.caseInsensitiveKeys = caseInsensitiveKeys;
+    }
+
+    public String getDefaultDriver()
+    {
+        return driver;
+    }
+
+    /**
+     * max bind parameters of one statement, bounds the keys of a batched lookup
+     */
+    public int getMaxParameters()
+    {
+        return maxParameters;
+    }
+
+    /**
+     * fetch size of the full table scan of {@code cache.mode = all}
+     */
+    public int getScanFetchSize()
+    {
+        return scanFetchSize;
+    }
+
+    /**
+     * whether string keys compare case insensitive by default, true for the default *_ci collations of mysql
+     */
+    public boolean isCaseInsensitiveKeys()
+    {
+        return caseInsensitiveKeys;
+    }
+
+    /**
+     * where condition matching {@code keyCount} keys of the key fields, with {@code keyCount * keyFields.size()} parameters
+     */
+    public String batchLookupCondition(List<String> keyFields, int keyCount)
+    {
+        StringBuilder builder = new StringBuilder();
+        if (keyFields.size() == 1) {
+            builder.append(keyFields.get(0)).append(" in (");
+            for (int i = 0; i < keyCount; i++) {
+                builder.append(i == 0 ? "?" : ",?");
+            }
+            return builder.append(')').toString();
+        }
+
+        if (rowValueIn) {
+            // (k1,k2) in ((?,?),(?,?))
+            builder.append('(').append(String.join(",", keyFields)).append(") in (");
+            for (int i = 0; i < keyCount; i++) {
+                builder.append(i == 0 ? "(" : ",(");
+                for (int j = 0; j < keyFields.size(); j++) {
+                    builder.append(j == 0 ? "?" : ",?");
+                }
+                builder.append(')');
+            }
+            return builder.append(')').toString();
+        }
+
+        // (k1 = ? and k2 = ?) or (k1 = ? and k2 = ?)
+        for (int i = 0; i < keyCount; i++) {
+            builder.append(i == 0 ? "(" : " or (");
+            for (int j = 0; j < keyFields.size(); j++) {
+                builder.append(j == 0 ? "" : " and ").append(keyFields.get(j)).append(" = ?");
+            }
+            builder.append(')');
+        }
+        return builder.toString();
+    }
+
+    public static JdbcDialect fromUrl(String jdbcUrl)
+    {
+        for (JdbcDialect dialect : values()) {
+            if (jdbcUrl.startsWith(dialect.urlPrefix)) {
+                return dialect;
+            }
+        }
+        throw new IllegalArgumentException("not support jdbc url " + jdbcUrl + ", please set dialect, only support mysql, postgresql, clickhouse, h2");
+    }
+
+    public static JdbcDialect of(String name)
+    {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import ideal.sylph.annotation.Description;
+import ideal.sylph.annotation.Name;
+import ideal.sylph.etl.PluginConfig;
+import org.apache.flink.shaded.guava18.com.google.common.collect.ImmutableSet;
+
+import static org.apache.flink.shaded.guava18.com.google.common.base.Preconditions.checkState;
+
+public class JdbcJoinConfig
+        extends PluginConfig
+{
+    @Name("cache.max.number")
+    @Description("this is max cache number")
+    private long maxNumber = 1000;
+
+    @Name("cache.expire.number")
+    @Description("this is cache expire SECONDS")
+    private long cacheTime = 300;   // 5 minutes
+
+    @Name("cache.negative.expire.number")
+    @Description("this is cache expire SECONDS of keys not found in the table")
+    private long negativeCacheTime = 60;
+
+    @Name("cache.bloom.filter")
+    @Description("this is whether to load all join keys into a bloom filter, keys it rejects are never queried")
+    private boolean bloomFilter = false;
+
+    @Name("cache.bloom.fpp")
+    @Description("this is the false positive probability of the bloom filter")
+    private String bloomFpp = "0.01";
+
+    @Name("cache.bloom.refresh.seconds")
+    @Description("this is the rebuild interval of the bloom filter, 0 never rebuild. keys inserted after the last rebuild are treated as missing")
+    private long bloomRefreshSeconds = 300;
+
+    @Name("cache.mode")
+    @Description("this is cache mode, lru: cache looked up keys on heap; offheap: cache looked up keys off heap; all: load the whole table (or query) into memory")
+    private String cacheMode = "lru";
+
+    @Name("cache.offheap.max.mb")
+    @Description("this is the max native memory of cache.mode=offheap")
+    private long offHeapMaxMb = 256;
+
+    @Name("cache.all.refresh.seconds")
+    @Description("this is the background refresh interval of cache.mode=all, 0 never refresh")
+    private long refreshSeconds = 300;
+
+    @Name("cache.all.incremental.field")
+    @Description("this is an increasing column such as updated_at, refresh only rows `>= last max value` and replace their keys, deletes are not seen")
+    private String incrementalField = null;
+
+    @Name("dialect")
+    @Description("this is database dialect, mysql, postgresql, clickhouse or h2, default from the url")
+    private String dialect = null;
+
+    @Name("key.case.insensitive")
+    @Description("this is whether string join keys compare case insensitive in the database, default true for mysql, false for the others")
+    private String keyCaseInsensitive = null;
+
+    @Name("driver")
+    @Description("this is jdbc driver class, default the driver of the dialect")
+    private String driver = null;
+
+    @Name("url")
+    @Description("this is jdbc url")
+    private String jdbcUrl = "jdbc:mysql://localhost:3306/pop?characterEncoding=utf-8&useSSL=false";
+
+    @Name("userName")
+    @Description("this is jdbc userName")
+    private String user = "demo";
+
+    @Name("password")
+    @Description("this is jdbc password")
+    private String password = "demo";
+
+    @Name("query")
+    @Description("this is the batch table query, e.g. select * from users where ...")
+    private String query = null;
+
+    @Name("query.threads")
+    @Description("this is the max number of concurrent lookup queries and pooled connections per subtask, no more than async.capacity")
+    private long queryThreads = 10;
+
+    @Name("statement.cache.size")
+    @Description("this is the number of prepared statements cached per connection")
+    private long statementCacheSize = 32;
+
+    @Name("batch.max.keys")
+    @Description("this is the max keys of one batched IN lookup query, 0 disables micro batching")
+    private long batchMaxKeys = 0;
+
+    @Name("batch.window.ms")
+    @Description("this is how long cache misses are collected before a batched lookup query")
+    private long batchWindowMs = 2;
+
+    public int getCacheTime()
+    {
+        return (int) cacheTime;
+    }
+
+    public int getCacheMaxNumber()
+    {
+        return (int) maxNumber;
+    }
+
+    public int getNegativeCacheTime()
+    {
+        return (int) negativeCacheTime;
+    }
+
+    public boolean isBloomFilter()
+    {
+        return bloomFilter;
+    }
+
+    public double getBloomFpp()
+    {
+        double fpp = Double.parseDouble(bloomFpp.trim());
+        checkState(fpp > 0 && fpp < 1, "cache.bloom.fpp must be in (0, 1), but is " + bloomFpp);
+        return fpp;
+    }
+
+    public long getBloomRefreshSeconds()
+    {
+        return bloomRefreshSeconds;
+    }
+
+    public String getCacheMode()
+    {
+        String mode = cacheMode.trim().toLowerCase();
+        checkState(ImmutableSet.of("lru", "offheap", "all").contains(mode), "cache.mode only support [lru, offheap, all], but is " + cacheMode);
+        return mode;
+    }
+
+    public long getOffHeapMaxMb()
+    {
+        return offHeapMaxMb;
+    }
+
+    public long getRefreshSeconds()
+    {
+        return refreshSeconds;
+    }
+
+    public String getIncrementalField()
+    {
+        return incrementalField;
+    }
+
+    public JdbcDialect getDialect()
+    {
+        return dialect == null ? JdbcDialect.fromUrl(jdbcUrl) : JdbcDialect.of(dialect);
+    }
+
+    public boolean isKeyCaseInsensitive(JdbcDialect dialect)
+    {
+        return keyCaseInsensitive == null ? dialect.isCaseInsensitiveKeys() : Boolean.parseBoolean(keyCaseInsensitive.trim());
+    }
+
+    /**
+     * null means the default driver of the dialect
+     */
+    public String getDriver()
+    {
+        return driver;
+    }
+
+    public String getJdbcUrl()
+    {
+        return jdbcUrl;
+    }
+
+    public String getUser()
+    {
+        return user;
+    }
+
+    public String getPassword()
+    {
+        return password;
+    }
+
+    public String getQuery()
+    {
+        return query;
+    }
+
+    /**
+     * more query threads than in-flight async requests would only hold idle connections
+     */
+    public int getQueryThreads()
+    {
+        Object asyncCapacity = getOtherConfig().get("async.capacity");
+        if (asyncCapacity == null) {
+            return (int) queryThreads;
+        }
+        return (int) Math.max(1, Math.min(queryThreads, Long.parseLong(asyncCapacity.toString().trim())));
+    }
+
+    public int getStatementCacheSize()
+    {
+        return (int) statementCacheSize;
+    }
+
+    public int getBatchMaxKeys()
+    {
+        return (int) batchMaxKeys;
+    }
+
+    public long getBatchWindowMs()
+    {
+        return batchWindowMs;
+    }
+}
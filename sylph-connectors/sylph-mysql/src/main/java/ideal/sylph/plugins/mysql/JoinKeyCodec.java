@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Normalised join keys.
+ * The stream values and the values read back from the database render the same key differently
+ * (DECIMAL scale, CHAR padding, case insensitive collations, BOOLEAN as TINYINT),
+ * so every key matched in memory is encoded here on both sides, never with {@code toString()}:
+ * numbers and booleans as plain decimals, strings without trailing spaces, times as epoch seconds and nanos
+ */
+public class JoinKeyCodec
+        implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final boolean caseInsensitive;
+
+    /**
+     * @param caseInsensitive string keys compare case insensitive in the database, like the default mysql collations
+     */
+    public JoinKeyCodec(boolean caseInsensitive)
+    {
+        this.caseInsensitive = caseInsensitive;
+    }
+
+    /**
+     * @param values the key column values in join on order, none of them null
+     */
+    public String encode(Object[] values)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Object value : values) {
+            appendValue(builder, value);
+            builder.append('\u0001');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * whether the database matches a stream key value exactly when their encoded values are equal.
+     * floating point, time and case insensitive string keys may match rows of another encoding,
+     * as may a string stream key against a numeric column, a bloom filter must not reject them
+     *
+     * @param databaseValue any value of the key column read from the database
+     */
+    public boolean isExact(Object streamValue, Object databaseValue)
+    {
+        if (isExactNumber(streamValue)) {
+            return isExactNumber(databaseValue);
+        }
+        return streamValue instanceof String && databaseValue instanceof String && !caseInsensitive;
+    }
+
+    private static boolean isExactNumber(Object value)
+    {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof BigInteger || value instanceof BigDecimal || value instanceof Boolean;
+    }
+
+    private void appendValue(StringBuilder builder, Object value)
+    {
+        if (value instanceof String) {
+            String string = stripTrailingSpaces((String) value);
+            builder.append(caseInsensitive ? string.toLowerCase(Locale.ROOT) : string);
+        }
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            builder.append(((Number) value).longValue());
+        }
+        else if (value instanceof Boolean) {
+            builder.append((Boolean) value ? 1 : 0);
+        }
+        else if (value instanceof BigDecimal) {
+            builder.append(plain((BigDecimal) value));
+        }
+        else if (value instanceof BigInteger) {
+            builder.append(value);
+        }
+        else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            builder.append(Double.isNaN(number) || Double.isInfinite(number) ? String.valueOf(number) : plain(BigDecimal.valueOf(number)));
+        }
+        else if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            builder.append(Math.floorDiv(timestamp.getTime(), 1000)).append('.').append(timestamp.getNanos());
+        }
+        else if (value instanceof java.util.Date) {
+            long millis = ((java.util.Date) value).getTime();
+            builder.append(Math.floorDiv(millis, 1000)).append('.').append(Math.floorMod(millis, 1000) * 1_000_000);
+        }
+        else if (value instanceof LocalDateTime) {
+            appendValue(builder, Timestamp.valueOf((LocalDateTime) value));
+        }
+        else if (value instanceof LocalDate) {
+            appendValue(builder, java.sql.Date.valueOf((LocalDate) value));
+        }
+        else if (value instanceof byte[]) {
+            builder.append(Base64.getEncoder().encodeToString((byte[]) value));
+        }
+        else {
+            builder.append(value);
+        }
+    }
+
+    private static String plain(BigDecimal decimal)
+    {
+        return decimal.signum() == 0 ? "0" : decimal.stripTrailingZeros().toPlainString();
+    }
+
+    private static String stripTrailingSpaces(String value)
+    {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return value.substring(0, end);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import ideal.sylph.plugins.mysql.utils.JdbcConnectionPool;
+import ideal.sylph.plugins.mysql.utils.JdbcConnectionPool.PooledConnection;
+import org.apache.flink.shaded.guava18.com.google.common.hash.BloomFilter;
+import org.apache.flink.shaded.guava18.com.google.common.hash.Funnels;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bloom filter of the join keys of the batch table, a key it rejects is not looked up in the database.
+ * <p>
+ * It is rebuilt from {@code select distinct keys} in the background and swapped with one volatile write.
+ * Keys inserted into the table after the last rebuild are treated as missing until the next rebuild.
+ * Both the table keys and the probed stream keys are encoded by the {@link JoinKeyCodec},
+ * a stream key the encoding can not match exactly against the column type is never rejected.
+ */
+public class KeyBloomFilter
+        implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(KeyBloomFilter.class);
+
+    private final JdbcConnectionPool pool;
+    private final String sql;
+    private final String countSql;
+    private final int keySize;
+    private final JoinKeyCodec keyCodec;
+    private final double fpp;
+    private final long refreshSeconds;
+    private final int fetchSize;
+    private final LongAdder rejectCount = new LongAdder();
+
+    private volatile Object[] sampleKey;  // key values of one table row, their types decide which stream keys are exact
+    private volatile BloomFilter<CharSequence> filter;
+    private ScheduledExecutorService refresher;
+
+    /**
+     * @param sql select the join key fields, in join on order
+     * @param countSql select the number of table rows, sizes the filter
+     */
+    public KeyBloomFilter(JdbcConnectionPool pool, String sql, String countSql, int keySize, JoinKeyCodec keyCodec,
+            double fpp, long refreshSeconds, int fetchSize)
+    {
+        this.pool = requireNonNull(pool, "pool is null");
+        this.sql = requireNonNull(sql, "sql is null");
+        this.countSql = requireNonNull(countSql, "countSql is null");
+        this.keySize = keySize;
+        this.keyCodec = requireNonNull(keyCodec, "keyCodec is null");
+        this.fpp = fpp;
+        this.refreshSeconds = refreshSeconds;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @param keyValues the stream join key values, none of them null
+     */
+    public boolean mightContain(Object[] keyValues)
+    {
+        BloomFilter<CharSequence> filter = this.filter;
+        Object[] sampleKey = this.sampleKey;
+        if (sampleKey != null) {
+            for (int i = 0; i < keySize; i++) {
+                if (!keyCodec.isExact(keyValues[i], sampleKey[i])) {
+                    return true;
+                }
+            }
+        }
+        if (filter.mightContain(keyCodec.encode(keyValues))) {
+            return true;
+        }
+        rejectCount.increment();
+        return false;
+    }
+
+    public long getRejectCount()
+    {
+        return rejectCount.sum();
+    }
+
+    /**
+     * build the first filter on the calling thread, then rebuild it in the background
+     */
+    public void start(String name)
+            throws SQLException
+    {
+        rebuild();
+        if (refreshSeconds > 0) {
+            this.refresher = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, name + "-bloom-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(() -> {
+                try {
+                    rebuild();
+                }
+                catch (Exception e) {
+                    logger.error("rebuild key bloom filter failed, the last filter is kept", e);
+                }
+            }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * the filter is sized by the row count first, then the keys are put into it while they are streamed
+     */
+    private void rebuild()
+            throws SQLException
+    {
+        long keys = 0;
+        Object[] newSampleKey = null;
+        BloomFilter<CharSequence> newFilter;
+        try (PooledConnection connection = pool.borrow()) {
+            try {
+                long rowCount;
+                try (ResultSet rs = connection.prepareStatement(countSql).executeQuery()) {
+                    rowCount = rs.next() ? rs.getLong(1) : 0;
+                }
+                newFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), (int) Math.min(Math.max(rowCount, 1000), Integer.MAX_VALUE), fpp);
+
+                PreparedStatement statement = connection.prepareStatement(sql);
+                statement.setFetchSize(fetchSize);
+                try (ResultSet rs = statement.executeQuery()) {
+                    Object[] keyValues = new Object[keySize];
+                    while (rs.next()) {
+                        boolean nullKey = false;
+                        for (int i = 0; i < keySize; i++) {
+                            keyValues[i] = rs.getObject(i + 1);
+                            nullKey |= keyValues[i] == null;
+                        }
+                        if (nullKey) {
+                            continue;  // sql `=` never matches null
+                        }
+                        if (newSampleKey == null) {
+                            newSampleKey = keyValues.clone();
+                        }
+                        newFilter.put(keyCodec.encode(keyValues));
+                        keys++;
+                    }
+                }
+            }
+            catch (SQLException e) {
+                connection.invalidate();
+                throw e;
+            }
+        }
+
+        this.sampleKey = newSampleKey;
+        this.filter = newFilter;
+        logger.info("key bloom filter rebuilt with {} keys", keys);
+    }
+
+    @Override
+    public void close()
+    {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Collects lookup keys of many in-flight records and loads them with one query.
+ * <p>
+ * A batch is dispatched when it reaches {@code maxKeys} keys or {@code windowMs} after its first key.
+ * Concurrent requests of the same key share one future until it is loaded.
+ */
+public class MicroBatchLoader<V>
+        implements Closeable
+{
+    public interface BatchLoader<V>
+    {
+        /**
+         * @param keys key -> key column values, in the order of the join on fields
+         * @return key -> value, a missing key completes with null
+         */
+        Map<String, V> load(Map<String, Object[]> keys)
+                throws Exception;
+    }
+
+    private final int maxKeys;
+    private final long windowMs;
+    private final Executor executor;
+    private final BatchLoader<V> loader;
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+    private final Map<String, CompletableFuture<V>> inFlight = new HashMap<>();
+    private Map<String, Object[]> batch = new LinkedHashMap<>();
+    private long batchId = 0;
+    private boolean closed = false;
+
+    public MicroBatchLoader(String name, int maxKeys, long windowMs, Executor executor, BatchLoader<V> loader)
+    {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("maxKeys must > 0, but is " + maxKeys);
+        }
+        if (windowMs < 0) {
+            throw new IllegalArgumentException("windowMs must >= 0, but is " + windowMs);
+        }
+        this.maxKeys = maxKeys;
+        this.windowMs = windowMs;
+        this.executor = requireNonNull(executor, "executor is null");
+        this.loader = requireNonNull(loader, "loader is null");
+
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, name + "-batch-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        this.timer = timer;
+    }
+
+    public CompletableFuture<V> load(String key, Object[] keyValues)
+    {
+        Map<String, Object[]> fullBatch = null;
+        CompletableFuture<V> future;
+        synchronized (lock) {
+            if (closed) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(new IllegalStateException("loader is closed"));
+                return future;
+            }
+            future = inFlight.get(key);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            inFlight.put(key, future);
+            batch.put(key, keyValues);
+
+            if (batch.size() >= maxKeys) {
+                fullBatch = drain();
+            }
+            else if (batch.size() == 1) {
+                final long id = batchId;
+                timer.schedule(() -> flush(id), windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            dispatch(fullBatch);
+        }
+        return future;
+    }
+
+    private void flush(long id)
+    {
+        Map<String, Object[]> keys;
+        synchronized (lock) {
+            if (id != batchId || batch.isEmpty()) {
+                return;  //already dispatched because it was full
+            }
+            keys = drain();
+        }
+        dispatch(keys);
+    }
+
+    private Map<String, Object[]> drain()
+    {
+        Map<String, Object[]> keys = batch;
+        batch = new LinkedHashMap<>();
+        batchId++;
+        return keys;
+    }
+
+    private void dispatch(Map<String, Object[]> keys)
+    {
+        try {
+            executor.execute(() -> run(keys));
+        }
+        catch (RejectedExecutionException e) {
+            completeAll(keys, null, e);
+        }
+    }
+
+    private void run(Map<String, Object[]> keys)
+    {
+        try {
+            Map<String, V> result = loader.load(keys);
+            completeAll(keys, result, null);
+        }
+        catch (Throwable e) {
+            completeAll(keys, null, e);
+        }
+    }
+
+    private void completeAll(Map<String, Object[]> keys, Map<String, V> result, Throwable error)
+    {
+        List<CompletableFuture<V>> futures = new ArrayList<>(keys.size());
+        synchronized (lock) {
+            for (String key : keys.keySet()) {
+                futures.add(inFlight.remove(key));
+            }
+        }
+        int i = 0;
+        for (String key : keys.keySet()) {
+            CompletableFuture<V> future = futures.get(i++);
+            if (future == null) {
+                continue;
+            }
+            if (error != null) {
+                future.completeExceptionally(error);
+            }
+            else {
+                future.complete(result.get(key));
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        List<CompletableFuture<V>> pending;
+        synchronized (lock) {
+            closed = true;
+            pending = new ArrayList<>(inFlight.values());
+            inFlight.clear();
+            batch.clear();
+        }
+        timer.shutdownNow();
+        for (CompletableFuture<V> future : pending) {
+            future.completeExceptionally(new CancellationException("loader is closed"));
+        }
+    }
+}
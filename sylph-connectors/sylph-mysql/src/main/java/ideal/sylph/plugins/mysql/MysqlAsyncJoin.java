@@ -17,251 +17,19 @@ package ideal.sylph.plugins.mysql;
 
 import ideal.sylph.annotation.Description;
 import ideal.sylph.annotation.Name;
-import ideal.sylph.etl.CheckHandler;
-import ideal.sylph.etl.Collector;
-import ideal.sylph.etl.PluginConfig;
-import ideal.sylph.etl.Row;
-import ideal.sylph.etl.Schema;
-import ideal.sylph.etl.api.RealTimeTransForm;
 import ideal.sylph.etl.join.JoinContext;
-import ideal.sylph.etl.join.SelectField;
-import ideal.sylph.plugins.mysql.utils.JdbcUtils;
-import org.apache.flink.shaded.guava18.com.google.common.cache.Cache;
-import org.apache.flink.shaded.guava18.com.google.common.cache.CacheBuilder;
-import org.apache.flink.shaded.guava18.com.google.common.collect.ImmutableList;
-import org.apache.flink.shaded.guava18.com.google.common.collect.ImmutableMap;
-import org.apache.flink.shaded.guava18.com.google.common.collect.ImmutableSet;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-
-import static com.github.harbby.gadtry.base.Throwables.noCatch;
-import static com.github.harbby.gadtry.base.Throwables.throwsException;
-import static ideal.sylph.etl.join.JoinContext.JoinType.LEFT;
-import static org.apache.flink.shaded.guava18.com.google.common.base.Preconditions.checkState;
 
 /**
  * 这个例子研究 AsyncFunction机制
+ * mysql batch table, the same as {@code type = 'jdbc'} with the mysql dialect
  */
 @Name("mysql")
 @Description("this is `join mode` mysql config table")
 public class MysqlAsyncJoin
-        implements RealTimeTransForm, CheckHandler
+        extends JdbcAsyncJoin
 {
-    private static final Logger logger = LoggerFactory.getLogger(MysqlAsyncJoin.class);
-
-    private final List<SelectField> selectFields;
-    private final Map<Integer, String> joinOnMapping;
-    private final String sql;
-    private final JoinContext.JoinType joinType;
-    private final int selectFieldCnt;
-    private final MysqlJoinConfig config;
-    private final Schema schema;
-
-    private Connection connection;
-    private Cache<String, List<Map<String, Object>>> cache;
-
-    private final transient Callable<Void> checkHandler;
-
-    public MysqlAsyncJoin(JoinContext context, MysqlJoinConfig mysqlConfig)
+    public MysqlAsyncJoin(JoinContext context, JdbcJoinConfig mysqlConfig)
     {
-        this.config = mysqlConfig;
-        this.schema = context.getSchema();
-        this.selectFields = context.getSelectFields();
-        this.selectFieldCnt = selectFields.size();
-        this.joinType = context.getJoinType();
-        this.joinOnMapping = context.getJoinOnMapping();
-
-        String where = context.getJoinOnMapping().values().stream().map(x -> x + " = ?").collect(Collectors.joining(" and "));
-        List<String> batchFields = context.getSelectFields().stream().filter(SelectField::isBatchTableField)
-                .map(SelectField::getFieldName).collect(Collectors.toList());
-
-        String select = "select %s from %s where %s";
-
-        String batchSelectFields = batchFields.isEmpty() ? "true" : String.join(",", batchFields);
-
-        String jdbcTable = config.getQuery() != null && config.getQuery().trim().length() > 0
-                ? "(" + config.getQuery() + ") as " + context.getBatchTable()
-                : context.getBatchTable();
-
-        this.sql = String.format(select, batchSelectFields, jdbcTable, where);
-
-        logger.info("batch table join query is [{}]", sql);
-        logger.info("join mapping is {}", context.getJoinOnMapping());
-
-        this.cache = CacheBuilder.newBuilder()
-                .maximumSize(mysqlConfig.getCacheMaxNumber())   //max cache 1000 value
-                .expireAfterWrite(mysqlConfig.getCacheTime(), TimeUnit.SECONDS)
-                //.expireAfterAccess(mysqlConfig.getCacheTime(), TimeUnit.SECONDS)  //
-                .build();
-
-        this.checkHandler = () -> {
-            Set<String> fieldNames = ImmutableSet.<String>builder().addAll(batchFields).addAll(context.getJoinOnMapping().values()).build();
-
-            try (Connection connection = DriverManager.getConnection(config.getJdbcUrl(), config.getUser(), config.getPassword());
-                    ResultSet resultSet = connection.getMetaData().getColumns(null, null, jdbcTable, null);
-            ) {
-                List<Map<String, Object>> tableSchema = JdbcUtils.resultToList(resultSet);
-                List<String> listNames = tableSchema.stream().map(x -> (String) x.get("COLUMN_NAME")).collect(Collectors.toList());
-
-                checkState(listNames.containsAll(fieldNames), "mysql table `" + jdbcTable + " fields ` only " + listNames + ", but your is " + fieldNames);
-            }
-            return null;
-        };
-    }
-
-    @Override
-    public void check()
-            throws Exception
-    {
-        checkHandler.call();
-    }
-
-    @Override
-    public void process(Row input, Collector<Row> collector)
-    {
-        checkState(connection != null, " connection is null");
-
-        StringBuilder builder = new StringBuilder();
-        for (int index : joinOnMapping.keySet()) {
-            builder.append(input.<Object>getField(index)).append("\u0001");
-        }
-
-        List<Map<String, Object>> cacheData = noCatch(() -> cache.get(builder.toString(), () -> {
-            //-- 这里进行真正的数据库查询
-            List<Integer> indexs = ImmutableList.copyOf(joinOnMapping.keySet());
-            try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                for (int i = 0; i < indexs.size(); i++) {
-                    statement.setObject(i + 1, input.getField(indexs.get(i)));
-                }
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Thread is  {}, this {}", Thread.currentThread().getId(), this);
-                }
-                try (ResultSet rs = statement.executeQuery()) {
-                    List<Map<String, Object>> result = JdbcUtils.resultToList(rs);
-                    if (result.isEmpty() && joinType == LEFT) { // left join and inter join
-                        return ImmutableList.of(ImmutableMap.of());
-                    }
-                    return result;
-                }
-            }
-            catch (SQLException e) {
-                throw throwsException(e);
-            }
-        }));
-
-        for (Map<String, Object> map : cacheData) {
-            Object[] row = new Object[selectFieldCnt];
-            for (int i = 0; i < selectFieldCnt; i++) {
-                SelectField field = selectFields.get(i);
-                if (field.isBatchTableField()) {
-                    row[i] = map.get(field.getFieldName());
-                }
-                else {
-                    row[i] = input.getField(field.getFieldIndex());
-                }
-            }
-            collector.collect(Row.of(row));
-        }
-    }
-
-    @Override
-    public Schema getSchema()
-    {
-        return schema;
-    }
-
-    @Override
-    public boolean open(long partitionId, long version)
-            throws Exception
-    {
-        //create connection
-        Class.forName("com.mysql.jdbc.Driver");
-        this.connection = DriverManager.getConnection(config.getJdbcUrl(), config.getUser(), config.getPassword());
-        return true;
-    }
-
-    @Override
-    public void close(Throwable errorOrNull)
-    {
-        try (Connection conn = connection) {
-            conn.isClosed();
-            cache.invalidateAll();
-        }
-        catch (Exception e) {
-        }
-
-        if (errorOrNull != null) {
-            logger.error("", errorOrNull);
-        }
-    }
-
-    public static final class MysqlJoinConfig
-            extends PluginConfig
-    {
-        @Name("cache.max.number")
-        @Description("this is max cache number")
-        private long maxNumber = 1000;
-
-        @Name("cache.expire.number")
-        @Description("this is cache expire SECONDS")
-        private long cacheTime = 300;   // 5 minutes
-
-        @Name("url")
-        @Description("this is mysql jdbc url")
-        private String jdbcUrl = "jdbc:mysql://localhost:3306/pop?characterEncoding=utf-8&useSSL=false";
-
-        @Name("userName")
-        @Description("this is mysql userName")
-        private String user = "demo";
-
-        @Name("password")
-        @Description("this is mysql password")
-        private String password = "demo";
-
-        @Name("query")
-        @Description("this is mysql save query")
-        private String query = null;
-
-        public int getCacheTime()
-        {
-            return (int) cacheTime;
-        }
-
-        public int getCacheMaxNumber()
-        {
-            return (int) maxNumber;
-        }
-
-        public String getJdbcUrl()
-        {
-            return jdbcUrl;
-        }
-
-        public String getUser()
-        {
-            return user;
-        }
-
-        public String getPassword()
-        {
-            return password;
-        }
-
-        public String getQuery()
-        {
-            return query;
-        }
+        super(context, mysqlConfig, JdbcDialect.MYSQL);
     }
 }
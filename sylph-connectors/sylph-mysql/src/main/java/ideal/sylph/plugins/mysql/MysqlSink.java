@@ -21,14 +21,13 @@ import ideal.sylph.etl.CheckHandler;
 import ideal.sylph.etl.PluginConfig;
 import ideal.sylph.etl.Row;
 import ideal.sylph.etl.api.RealTimeSink;
+import ideal.sylph.plugins.mysql.utils.JdbcConnectionPool;
+import ideal.sylph.plugins.mysql.utils.JdbcConnectionPool.PooledConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -48,7 +47,8 @@ public class MysqlSink
     private final String prepareStatementQuery;
     private final String[] keys;
 
-    private transient Connection connection;
+    private transient JdbcConnectionPool pool;
+    private transient PooledConnection connection;
     private transient PreparedStatement statement;
     private int num = 0;
 
@@ -83,7 +83,9 @@ public class MysqlSink
             throws SQLException, ClassNotFoundException
     {
         Class.forName("com.mysql.jdbc.Driver");
-        this.connection = DriverManager.getConnection(config.jdbcUrl, config.user, config.password);
+        // the sink runs on one thread, it keeps a single pooled connection for its lifetime
+        this.pool = new JdbcConnectionPool(config.jdbcUrl, config.user, config.password, 1, 1);
+        this.connection = pool.borrow();
         this.statement = connection.prepareStatement(prepareStatementQuery);
         return true;
     }
@@ -106,6 +108,7 @@ public class MysqlSink
             }
         }
         catch (SQLException e) {
+            connection.invalidate();
             throwsException(e);
         }
     }
@@ -113,18 +116,13 @@ public class MysqlSink
     @Override
     public void close(Throwable errorOrNull)
     {
-        try (Connection conn = connection) {
-            try (Statement stmt = statement) {
-                if (stmt != null) {
-                    stmt.executeBatch();
-                }
-            }
-            catch (SQLException e) {
-                logger.error("close executeBatch fail", e);
+        try (JdbcConnectionPool closePool = pool; PooledConnection conn = connection) {
+            if (statement != null) {
+                statement.executeBatch();
             }
         }
         catch (SQLException e) {
-            logger.error("close connection fail", e);
+            logger.error("close executeBatch fail", e);
         }
     }
 
@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import ideal.sylph.plugins.mysql.utils.JdbcConnectionPool;
+import ideal.sylph.plugins.mysql.utils.JdbcConnectionPool.PooledConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Whole dimension table held in memory, for {@code cache.mode = all}.
+ * <p>
+ * Rows are stored as {@code Object[]} of the first {@code rowFieldCount} fields of {@link #getFields()}
+ * and indexed by their {@link JoinKeyCodec} join key in an open addressing table without an entry object per key.
+ * A background thread refreshes the snapshot by a full reload, or by {@code incrementalField >= ?} queries
+ * that find the changed keys and reload all rows of those keys. Every refresh builds a new index and publishes it with one volatile write,
+ * readers never lock or wait for the database.
+ */
+public class SnapshotCache
+        implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotCache.class);
+    private static final Object[][] EMPTY = new Object[0][];
+    private static final int KEYS_PER_QUERY = 100;
+
+    private final JdbcConnectionPool pool;
+    private final String sql;
+    private final String keysSql;
+    private final List<String> fields;
+    private final int rowFieldCount;
+    private final int[] keyIndexes;
+    private final JoinKeyCodec keyCodec;
+    private final int incrementalIndex;
+    private final long refreshSeconds;
+    private final int fetchSize;
+
+    private volatile Index index = new Index(0);
+    private Object watermark;  // only touched by the loading thread
+    private ScheduledExecutorService refresher;
+
+    /**
+     * @param sql select the fields of the table, without where
+     * @param rowFieldCount the leading fields kept in memory, the others are only read for the watermark
+     * @param incrementalField null means every refresh is a full reload
+     */
+    public SnapshotCache(JdbcConnectionPool pool, String sql, List<String> fields, int rowFieldCount, List<String> keyFields,
+            JoinKeyCodec keyCodec, String incrementalField, long refreshSeconds, int fetchSize)
+    {
+        this.pool = requireNonNull(pool, "pool is null");
+        this.sql = requireNonNull(sql, "sql is null");
+        this.fields = requireNonNull(fields, "fields is null");
+        this.rowFieldCount = rowFieldCount;
+        this.keyIndexes = keyFields.stream().mapToInt(this::indexOf).toArray();
+        this.keysSql = keysSql(sql, keyFields);
+        this.keyCodec = requireNonNull(keyCodec, "keyCodec is null");
+        this.incrementalIndex = incrementalField == null ? -1 : indexOf(incrementalField);
+        this.refreshSeconds = refreshSeconds;
+        this.fetchSize = fetchSize;
+    }
+
+    private int indexOf(String field)
+    {
+        int index = fields.indexOf(field);
+        if (index < 0) {
+            throw new IllegalArgumentException("field " + field + " not in snapshot fields " + fields);
+        }
+        return index;
+    }
+
+    public List<String> getFields()
+    {
+        return fields;
+    }
+
+    public int size()
+    {
+        return index.size;
+    }
+
+    /**
+     * @param keyValues the stream join key values
+     * @return rows of the key, empty if the key not exists
+     */
+    public Object[][] get(Object[] keyValues)
+    {
+        Object[][] rows = index.get(keyCodec.encode(keyValues));
+        return rows == null ? EMPTY : rows;
+    }
+
+    /**
+     * load the first snapshot on the calling thread, then refresh it in the background
+     */
+    public void start(String name)
+            throws SQLException
+    {
+        long startTime = System.currentTimeMillis();
+        refreshAll();
+        logger.info("snapshot {} loaded {} keys in {}ms", name, index.size, System.currentTimeMillis() - startTime);
+
+        if (refreshSeconds > 0) {
+            this.refresher = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, name + "-snapshot-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    void refresh()
+    {
+        try {
+            if (incrementalIndex >= 0 && watermark != null) {
+                refreshIncremental();
+            }
+            else {
+                refreshAll();
+            }
+        }
+        catch (Exception e) {
+            // keep serving the last snapshot
+            logger.error("refresh snapshot failed, the last snapshot is kept", e);
+        }
+    }
+
+    private void refreshAll()
+            throws SQLException
+    {
+        Index newIndex = new Index(index.size);
+        Object newWatermark = query(sql, (key, keyValues, row) -> newIndex.append(key, row), null);
+        this.index = newIndex;
+        this.watermark = newWatermark;
+    }
+
+    /**
+     * {@code >=} also reads the rows committed after the last refresh with the watermark value itself.
+     * The changed rows only give the changed keys, all rows of those keys are read again, a key with many rows keeps
+     * its unchanged rows. Keys whose rows did not change are skipped
+     */
+    private void refreshIncremental()
+            throws SQLException
+    {
+        Map<String, Object[]> changedKeys = new LinkedHashMap<>();
+        Object newWatermark = query(sql + " where " + fields.get(incrementalIndex) + " >= ?",
+                (key, keyValues, row) -> changedKeys.computeIfAbsent(key, k -> keyValues.clone()), watermark, watermark);
+
+        Map<String, Object[][]> delta = new HashMap<>();
+        List<Object[]> keys = new ArrayList<>(changedKeys.values());
+        for (int start = 0; start < keys.size(); start += KEYS_PER_QUERY) {
+            List<Object[]> chunk = keys.subList(start, Math.min(start + KEYS_PER_QUERY, keys.size()));
+            query(keysSql, (key, keyValues, row) -> delta.merge(key, new Object[][] {row}, SnapshotCache::concat), null, keysParameters(chunk));
+        }
+        this.watermark = newWatermark;
+
+        Index current = index;
+        changedKeys.keySet().forEach(key -> delta.putIfAbsent(key, EMPTY));  // all rows of the key were deleted meanwhile
+        delta.entrySet().removeIf(entry -> {
+            Object[][] rows = current.get(entry.getKey());
+            return Arrays.deepEquals(rows == null ? EMPTY : rows, entry.getValue());
+        });
+        if (delta.isEmpty()) {
+            return;
+        }
+        // copy on write, the changed keys are replaced by all their rows
+        Index newIndex = current.copy();
+        delta.forEach(newIndex::put);
+        this.index = newIndex;
+        logger.debug("snapshot incremental refresh updated {} keys", delta.size());
+    }
+
+    /**
+     * {@code (k1 = ? and k2 = ?) or ...} of {@link #KEYS_PER_QUERY} keys, one prepared statement for every chunk
+     */
+    private static String keysSql(String sql, List<String> keyFields)
+    {
+        String keyCondition = keyFields.stream().map(field -> field + " = ?").collect(Collectors.joining(" and ", "(", ")"));
+        return sql + " where " + String.join(" or ", Collections.nCopies(KEYS_PER_QUERY, keyCondition));
+    }
+
+    /**
+     * the last chunk repeats its last key up to {@link #KEYS_PER_QUERY} keys
+     */
+    private Object[] keysParameters(List<Object[]> chunk)
+    {
+        Object[] parameters = new Object[KEYS_PER_QUERY * keyIndexes.length];
+        for (int i = 0; i < KEYS_PER_QUERY; i++) {
+            Object[] keyValues = chunk.get(Math.min(i, chunk.size() - 1));
+            System.arraycopy(keyValues, 0, parameters, i * keyIndexes.length, keyIndexes.length);
+        }
+        return parameters;
+    }
+
+    private interface RowConsumer
+    {
+        /**
+         * @param keyValues reused for the next row
+         */
+        void accept(String key, Object[] keyValues, Object[] row);
+    }
+
+    /**
+     * @return the max value of the incremental field, starting from the given watermark
+     */
+    @SuppressWarnings("unchecked")
+    private Object query(String query, RowConsumer target, Object watermark, Object... parameters)
+            throws SQLException
+    {
+        try (PooledConnection connection = pool.borrow()) {
+            try {
+                PreparedStatement statement = connection.prepareStatement(query);
+                statement.setFetchSize(fetchSize);
+                for (int i = 0; i < parameters.length; i++) {
+                    statement.setObject(i + 1, parameters[i]);
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    int columnCount = fields.size();
+                    Object[] keyValues = new Object[keyIndexes.length];
+                    while (rs.next()) {
+                        Object[] row = new Object[columnCount];
+                        for (int i = 0; i < columnCount; i++) {
+                            row[i] = rs.getObject(i + 1);
+                        }
+                        if (incrementalIndex >= 0 && row[incrementalIndex] != null) {
+                            Comparable<Object> value = (Comparable<Object>) row[incrementalIndex];
+                            if (watermark == null || value.compareTo(watermark) > 0) {
+                                watermark = value;
+                            }
+                        }
+
+                        boolean nullKey = false;
+                        for (int i = 0; i < keyIndexes.length; i++) {
+                            keyValues[i] = row[keyIndexes[i]];
+                            nullKey |= keyValues[i] == null;
+                        }
+                        if (nullKey) {
+                            continue;  // sql `=` never matches null
+                        }
+                        target.accept(keyCodec.encode(keyValues), keyValues, columnCount == rowFieldCount ? row : Arrays.copyOf(row, rowFieldCount));
+                    }
+                    return watermark;
+                }
+            }
+            catch (SQLException e) {
+                connection.invalidate();
+                throw e;
+            }
+        }
+    }
+
+    private static Object[][] concat(Object[][] rows, Object[][] other)
+    {
+        Object[][] merged = Arrays.copyOf(rows, rows.length + other.length);
+        System.arraycopy(other, 0, merged, rows.length, other.length);
+        return merged;
+    }
+
+    @Override
+    public void close()
+    {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        this.index = new Index(0);
+    }
+
+    /**
+     * open addressing hash table with linear probing, the keys and their rows are kept in two parallel arrays.
+     * only the loading thread writes an index, before it is published
+     */
+    private static final class Index
+    {
+        private String[] keys;
+        private Object[][][] rows;
+        private int size;
+
+        private Index(int expectedSize)
+        {
+            int capacity = 16;
+            while (capacity * 3 / 4 <= expectedSize) {
+                capacity <<= 1;
+            }
+            this.keys = new String[capacity];
+            this.rows = new Object[capacity][][];
+        }
+
+        private Index copy()
+        {
+            Index copy = new Index(0);
+            copy.keys = keys.clone();
+            copy.rows = rows.clone();
+            copy.size = size;
+            return copy;
+        }
+
+        private int slot(String key)
+        {
+            int mask = keys.length - 1;
+            int hash = key.hashCode() * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null && !keys[slot].equals(key)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private Object[][] get(String key)
+        {
+            int slot = slot(key);
+            return keys[slot] == null ? null : rows[slot];
+        }
+
+        private void put(String key, Object[][] value)
+        {
+            int slot = slot(key);
+            if (keys[slot] == null) {
+                keys[slot] = key;
+                size++;
+            }
+            rows[slot] = value;
+            if (size * 4 >= keys.length * 3) {
+                resize();
+            }
+        }
+
+        private void append(String key, Object[] row)
+        {
+            int slot = slot(key);
+            put(key, keys[slot] == null ? new Object[][] {row} : concat(rows[slot], new Object[][] {row}));
+        }
+
+        private void resize()
+        {
+            String[] oldKeys = keys;
+            Object[][][] oldRows = rows;
+            this.keys = new String[oldKeys.length << 1];
+            this.rows = new Object[oldKeys.length << 1][][];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    rows[slot] = oldRows[i];
+                }
+            }
+        }
+    }
+}
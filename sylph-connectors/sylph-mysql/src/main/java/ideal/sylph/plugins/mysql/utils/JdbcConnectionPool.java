@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A small jdbc connection pool with per connection prepared statement cache.
+ * <p>
+ * A borrowed {@link PooledConnection} is confined to the borrowing thread until it is closed,
+ * so the connection and its cached statements are never used concurrently.
+ * Idle connections are validated before reuse.
+ */
+public class JdbcConnectionPool
+        implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(JdbcConnectionPool.class);
+    private static final long VALIDATION_INTERVAL_MS = 30_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final long BORROW_TIMEOUT_MS = 60_000;
+
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed = false;
+
+    public JdbcConnectionPool(String jdbcUrl, String user, String password, int maxSize, int statementCacheSize)
+    {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("pool maxSize must > 0, but is " + maxSize);
+        }
+        if (statementCacheSize <= 0) {
+            throw new IllegalArgumentException("statementCacheSize must > 0, but is " + statementCacheSize);
+        }
+        this.jdbcUrl = requireNonNull(jdbcUrl, "jdbcUrl is null");
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * borrow a connection, blocks while all connections are in use.
+     * The caller must close the returned connection to give it back.
+     */
+    public PooledConnection borrow()
+            throws SQLException
+    {
+        if (closed) {
+            throw new SQLException("connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("borrow connection timeout after " + BORROW_TIMEOUT_MS + "ms, pool size " + maxSize);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("borrow connection interrupted", e);
+        }
+
+        try {
+            PooledConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (isHealthy(connection)) {
+                    connection.released = false;
+                    return connection;
+                }
+                connection.closeQuietly();
+            }
+            return new PooledConnection(DriverManager.getConnection(jdbcUrl, user, password));
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private static boolean isHealthy(PooledConnection connection)
+    {
+        if (System.currentTimeMillis() - connection.lastUsedTime < VALIDATION_INTERVAL_MS) {
+            return true;
+        }
+        try {
+            return connection.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        }
+        catch (SQLException e) {
+            logger.warn("validate jdbc connection failed", e);
+            return false;
+        }
+    }
+
+    private void release(PooledConnection connection)
+    {
+        try {
+            if (closed || connection.broken) {
+                connection.closeQuietly();
+            }
+            else {
+                connection.lastUsedTime = System.currentTimeMillis();
+                idle.offerFirst(connection);  // LIFO, keeps the hot connections warm
+            }
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.closeQuietly();
+        }
+    }
+
+    public class PooledConnection
+            implements AutoCloseable
+    {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        private long lastUsedTime = System.currentTimeMillis();
+        private boolean broken = false;
+        private boolean released = false;
+
+        private PooledConnection(Connection connection)
+        {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        public Connection getConnection()
+        {
+            return connection;
+        }
+
+        /**
+         * cached prepared statement of the sql, the parameters are cleared.
+         * Do not close the returned statement.
+         */
+        public PreparedStatement prepareStatement(String sql)
+                throws SQLException
+        {
+            PreparedStatement statement = statements.get(sql);
+            if (statement != null) {
+                statement.clearParameters();
+                return statement;
+            }
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+            if (statements.size() > statementCacheSize) {
+                Iterator<PreparedStatement> eldest = statements.values().iterator();
+                closeStatement(eldest.next());
+                eldest.remove();
+            }
+            return statement;
+        }
+
+        /**
+         * the connection failed, it will be closed instead of returned to the pool
+         */
+        public void invalidate()
+        {
+            this.broken = true;
+        }
+
+        @Override
+        public void close()
+        {
+            if (!released) {
+                released = true;
+                release(this);
+            }
+        }
+
+        private void closeQuietly()
+        {
+            for (PreparedStatement statement : statements.values()) {
+                closeStatement(statement);
+            }
+            statements.clear();
+            try {
+                connection.close();
+            }
+            catch (SQLException e) {
+                logger.warn("close jdbc connection failed", e);
+            }
+        }
+    }
+
+    private static void closeStatement(PreparedStatement statement)
+    {
+        try {
+            statement.close();
+        }
+        catch (SQLException e) {
+            logger.warn("close statement failed", e);
+        }
+    }
+}
@@ -15,12 +15,15 @@
  */
 package ideal.sylph.plugins.mysql.utils;
 
+import ideal.sylph.plugins.mysql.utils.JdbcConnectionPool.PooledConnection;
 import org.apache.flink.shaded.guava18.com.google.common.collect.ImmutableList;
 import org.apache.flink.shaded.guava18.com.google.common.collect.ImmutableMap;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -53,4 +56,39 @@ public class JdbcUtils
         }
         return listBuilder.build();
     }
+
+    /**
+     * run a query on a pooled connection with its cached prepared statement.
+     * The connection is dropped from the pool if the query fails.
+     *
+     * @return rows as Object[] in the order of the select columns
+     */
+    public static List<Object[]> query(JdbcConnectionPool pool, String sql, Object... parameters)
+            throws SQLException
+    {
+        try (PooledConnection connection = pool.borrow()) {
+            try {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                for (int i = 0; i < parameters.length; i++) {
+                    statement.setObject(i + 1, parameters[i]);
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    int columnCount = rs.getMetaData().getColumnCount();
+                    List<Object[]> rows = new ArrayList<>();
+                    while (rs.next()) {
+                        Object[] row = new Object[columnCount];
+                        for (int i = 0; i < columnCount; i++) {
+                            row[i] = rs.getObject(i + 1);
+                        }
+                        rows.add(row);
+                    }
+                    return rows;
+                }
+            }
+            catch (SQLException e) {
+                connection.invalidate();
+                throw e;
+            }
+        }
+    }
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import ideal.sylph.etl.Row;
+import ideal.sylph.etl.Schema;
+import ideal.sylph.etl.join.JoinContext;
+import ideal.sylph.etl.join.SelectField;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * join against an in memory h2 table
+ */
+public class JdbcAsyncJoinTest
+{
+    private static final String URL = "jdbc:h2:mem:sylph_join_test;DB_CLOSE_DELAY=-1";
+
+    @BeforeClass
+    public static void createTable()
+            throws Exception
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+                Statement statement = connection.createStatement()) {
+            statement.execute("create table users(id varchar(10), name varchar(20), city varchar(20))");
+            statement.execute("insert into users values('1', 'h123', 'beijing'), ('2', 'p123', 'shanghai')");
+            statement.execute("create table prices(sku decimal(10, 2), price varchar(10))");
+            statement.execute("insert into prices values(1.00, 'p1'), (2.50, 'p2')");
+        }
+    }
+
+    @Test
+    public void lookupPerKey()
+            throws Exception
+    {
+        assertJoin(config("lru", 0));
+    }
+
+    @Test
+    public void batchedLookup()
+            throws Exception
+    {
+        assertJoin(config("offheap", 500));
+    }
+
+    @Test
+    public void snapshotCache()
+            throws Exception
+    {
+        assertJoin(config("all", 0));
+    }
+
+    @Test
+    public void bloomFilterAndNullKey()
+            throws Exception
+    {
+        JdbcJoinConfig config = config("lru", 0);
+        setField(config, "bloomFilter", true);
+        assertJoin(config);
+
+        JdbcAsyncJoin join = new JdbcAsyncJoin(leftJoinContext(), config);
+        join.open(0, 0);
+        try {
+            Assert.assertEquals(Arrays.asList(null, null, null), join(null, join));
+        }
+        finally {
+            join.close(null);
+        }
+    }
+
+    @Test
+    public void batchedLookupMatchesDecimalKeys()
+            throws Exception
+    {
+        assertDecimalKeys(config("lru", 500));
+    }
+
+    @Test
+    public void snapshotMatchesDecimalKeys()
+            throws Exception
+    {
+        assertDecimalKeys(config("all", 0));
+    }
+
+    @Test
+    public void bloomFilterMatchesDecimalKeys()
+            throws Exception
+    {
+        JdbcJoinConfig config = config("lru", 0);
+        setField(config, "bloomFilter", true);
+        assertDecimalKeys(config);
+    }
+
+    @Test
+    public void snapshotIncrementalRefreshReadsTheWatermarkAgain()
+            throws Exception
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+                Statement statement = connection.createStatement()) {
+            statement.execute("create table cities(id varchar(10), name varchar(20), city varchar(20), version int)");
+            statement.execute("insert into cities values('1', 'h123', 'beijing', 1)");
+        }
+        JdbcJoinConfig config = config("all", 0);
+        setField(config, "refreshSeconds", 1L);
+        setField(config, "incrementalField", "version");
+        List<SelectField> selectFields = Arrays.asList(
+                SelectField.of("uid", String.class, "tb1", false, 0),
+                SelectField.of("name", String.class, "cities", true, 1),
+                SelectField.of("city", String.class, "cities", true, 2));
+        JdbcAsyncJoin join = new JdbcAsyncJoin(joinContext("cities", "id", selectFields), config);
+        join.open(0, 0);
+        try {
+            Assert.assertEquals(Arrays.asList("2", null, null), join("2", join));
+            // committed after the first load, with the same version as the watermark
+            try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+                    Statement statement = connection.createStatement()) {
+                statement.execute("insert into cities values('2', 'p123', 'shanghai', 1)");
+            }
+            List<Object> row = null;
+            for (int i = 0; i < 50; i++) {
+                row = join("2", join);
+                if (row.get(1) != null) {
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            Assert.assertEquals(Arrays.asList("2", "p123", "shanghai"), row);
+            Assert.assertEquals(Arrays.asList("1", "h123", "beijing"), join("1", join));
+        }
+        finally {
+            join.close(null);
+        }
+    }
+
+    private static void assertDecimalKeys(JdbcJoinConfig config)
+            throws Exception
+    {
+        // the stream key 1 matches the DECIMAL 1.00 in the database, the loaded rows must be found by it
+        List<SelectField> selectFields = Arrays.asList(
+                SelectField.of("sku", Long.class, "tb1", false, 0),
+                SelectField.of("price", String.class, "prices", true, 1));
+        JdbcAsyncJoin join = new JdbcAsyncJoin(joinContext("prices", "sku", selectFields), config);
+        join.open(0, 0);
+        try {
+            Assert.assertEquals(Arrays.asList(1L, "p1"), join(1L, join));
+            Assert.assertEquals(Arrays.asList(new BigDecimal("2.5"), "p2"), join(new BigDecimal("2.5"), join));
+            Assert.assertEquals(Arrays.asList(3L, null), join(3L, join));
+        }
+        finally {
+            join.close(null);
+        }
+    }
+
+    private static void assertJoin(JdbcJoinConfig config)
+            throws Exception
+    {
+        JdbcAsyncJoin join = new JdbcAsyncJoin(leftJoinContext(), config);
+        join.open(0, 0);
+        try {
+            Assert.assertEquals(Arrays.asList("1", "h123", "beijing"), join("1", join));
+            Assert.assertEquals(Arrays.asList("2", "p123", "shanghai"), join("2", join));
+            // left join, the batch table fields are null
+            Assert.assertEquals(Arrays.asList("3", null, null), join("3", join));
+            // cached
+            Assert.assertEquals(Arrays.asList("1", "h123", "beijing"), join("1", join));
+        }
+        finally {
+            join.close(null);
+        }
+    }
+
+    private static List<Object> join(Object uid, JdbcAsyncJoin join)
+            throws Exception
+    {
+        Collection<Row> rows = join.processAsync(Row.of(new Object[] {uid})).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, rows.size());
+        Row row = rows.iterator().next();
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < row.size(); i++) {
+            values.add(row.getAs(i));
+        }
+        return values;
+    }
+
+    private static JdbcJoinConfig config(String cacheMode, long batchMaxKeys)
+            throws Exception
+    {
+        JdbcJoinConfig config = new JdbcJoinConfig();
+        setField(config, "jdbcUrl", URL);
+        setField(config, "user", "sa");
+        setField(config, "password", "");
+        setField(config, "cacheMode", cacheMode);
+        setField(config, "batchMaxKeys", batchMaxKeys);
+        return config;
+    }
+
+    private static void setField(Object object, String name, Object value)
+            throws Exception
+    {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    private static JoinContext leftJoinContext()
+    {
+        List<SelectField> selectFields = Arrays.asList(
+                SelectField.of("uid", String.class, "tb1", false, 0),
+                SelectField.of("name", String.class, "users", true, 1),
+                SelectField.of("city", String.class, "users", true, 2));
+        return joinContext("users", "id", selectFields);
+    }
+
+    private static JoinContext joinContext(String batchTable, String keyField, List<SelectField> selectFields)
+    {
+        return new JoinContext()
+        {
+            @Override
+            public String getBatchTable()
+            {
+                return batchTable;
+            }
+
+            @Override
+            public JoinType getJoinType()
+            {
+                return JoinType.LEFT;
+            }
+
+            @Override
+            public List<SelectField> getSelectFields()
+            {
+                return selectFields;
+            }
+
+            @Override
+            public Map<Integer, String> getJoinOnMapping()
+            {
+                return Collections.singletonMap(0, keyField);
+            }
+
+            @Override
+            public Schema getSchema()
+            {
+                return Schema.newBuilder().build();
+            }
+        };
+    }
+}
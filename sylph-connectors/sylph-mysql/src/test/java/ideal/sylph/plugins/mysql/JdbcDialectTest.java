@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class JdbcDialectTest
+{
+    @Test
+    public void fromUrl()
+    {
+        Assert.assertEquals(JdbcDialect.MYSQL, JdbcDialect.fromUrl("jdbc:mysql://localhost:3306/pop"));
+        Assert.assertEquals(JdbcDialect.POSTGRESQL, JdbcDialect.fromUrl("jdbc:postgresql://localhost:5432/pop"));
+        Assert.assertEquals(JdbcDialect.CLICKHOUSE, JdbcDialect.fromUrl("jdbc:clickhouse://localhost:9000"));
+        Assert.assertEquals(JdbcDialect.H2, JdbcDialect.fromUrl("jdbc:h2:mem:test"));
+        Assert.assertEquals(JdbcDialect.POSTGRESQL, JdbcDialect.of("PostgreSQL"));
+    }
+
+    @Test
+    public void batchLookupCondition()
+    {
+        Assert.assertEquals("id in (?,?,?)", JdbcDialect.MYSQL.batchLookupCondition(Collections.singletonList("id"), 3));
+        Assert.assertEquals("(a,b) in ((?,?),(?,?))", JdbcDialect.POSTGRESQL.batchLookupCondition(Arrays.asList("a", "b"), 2));
+        Assert.assertEquals("(a = ? and b = ?) or (a = ? and b = ?)", JdbcDialect.H2.batchLookupCondition(Arrays.asList("a", "b"), 2));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+public class JoinKeyCodecTest
+{
+    private final JoinKeyCodec codec = new JoinKeyCodec(false);
+    private final JoinKeyCodec caseInsensitive = new JoinKeyCodec(true);
+
+    @Test
+    public void numbersIgnoreTypeAndScale()
+    {
+        Assert.assertEquals(codec.encode(new Object[] {1L}), codec.encode(new Object[] {new BigDecimal("1.00")}));
+        Assert.assertEquals(codec.encode(new Object[] {1}), codec.encode(new Object[] {(short) 1}));
+        Assert.assertEquals(codec.encode(new Object[] {2.5D}), codec.encode(new Object[] {new BigDecimal("2.50")}));
+        Assert.assertEquals(codec.encode(new Object[] {0L}), codec.encode(new Object[] {new BigDecimal("0.000")}));
+        Assert.assertEquals(codec.encode(new Object[] {true}), codec.encode(new Object[] {1}));
+        Assert.assertNotEquals(codec.encode(new Object[] {1L}), codec.encode(new Object[] {new BigDecimal("1.01")}));
+    }
+
+    @Test
+    public void stringsIgnoreCharPadding()
+    {
+        Assert.assertEquals(codec.encode(new Object[] {"ab", 1}), codec.encode(new Object[] {"ab   ", 1L}));
+        Assert.assertNotEquals(codec.encode(new Object[] {"ab"}), codec.encode(new Object[] {"AB"}));
+        Assert.assertEquals(caseInsensitive.encode(new Object[] {"ab"}), caseInsensitive.encode(new Object[] {"AB "}));
+    }
+
+    @Test
+    public void timesByInstant()
+    {
+        LocalDateTime time = LocalDateTime.of(2018, 11, 1, 12, 30, 0, 123_000_000);
+        Assert.assertEquals(codec.encode(new Object[] {Timestamp.valueOf(time)}), codec.encode(new Object[] {time}));
+        Assert.assertEquals(codec.encode(new Object[] {Timestamp.valueOf(time)}), codec.encode(new Object[] {new java.util.Date(Timestamp.valueOf(time).getTime())}));
+    }
+
+    @Test
+    public void exactOnlyForIntegralDecimalAndCaseSensitiveStrings()
+    {
+        Assert.assertTrue(codec.isExact(1L, new BigDecimal("1.00")));
+        Assert.assertTrue(codec.isExact("a", "a"));
+        Assert.assertFalse(codec.isExact("1", 1));
+        Assert.assertFalse(codec.isExact(1.5D, new BigDecimal("1.5")));
+        Assert.assertFalse(caseInsensitive.isExact("a", "a"));
+        Assert.assertFalse(codec.isExact(new Timestamp(0), new Timestamp(0)));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class MicroBatchLoaderTest
+{
+    @Test
+    public void fullBatchIsLoadedWithOneQuery()
+            throws Exception
+    {
+        List<Integer> batchSizes = new ArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (MicroBatchLoader<String> loader = new MicroBatchLoader<>("test", 3, 60_000, executor, keys -> {
+            batchSizes.add(keys.size());
+            Map<String, String> result = new HashMap<>();
+            keys.forEach((key, values) -> result.put(key, "v" + values[0]));
+            return result;
+        })) {
+            CompletableFuture<String> f1 = loader.load("1", new Object[] {1});
+            CompletableFuture<String> f2 = loader.load("2", new Object[] {2});
+            CompletableFuture<String> f1Again = loader.load("1", new Object[] {1});
+            CompletableFuture<String> f3 = loader.load("3", new Object[] {3});
+
+            Assert.assertSame(f1, f1Again);
+            Assert.assertEquals("v1", f1.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals("v2", f2.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals("v3", f3.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, batchSizes.size());
+            Assert.assertEquals(3, (long) batchSizes.get(0));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void windowFlushesPartialBatch()
+            throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (MicroBatchLoader<String> loader = new MicroBatchLoader<>("test", 500, 2, executor, keys -> new HashMap<>())) {
+            Assert.assertNull(loader.load("missing", new Object[] {0}).get(5, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void loadErrorFailsAllWaitingKeys()
+            throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (MicroBatchLoader<String> loader = new MicroBatchLoader<>("test", 2, 60_000, executor, keys -> {
+            throw new IllegalStateException("db down");
+        })) {
+            CompletableFuture<String> f1 = loader.load("1", new Object[] {1});
+            CompletableFuture<String> f2 = loader.load("2", new Object[] {2});
+            try {
+                f1.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            }
+            catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            Assert.assertTrue(f2.handle((value, error) -> error).get(5, TimeUnit.SECONDS) instanceof IllegalStateException);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
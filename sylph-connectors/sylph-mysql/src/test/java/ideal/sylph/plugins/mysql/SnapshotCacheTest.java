@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.plugins.mysql;
+
+import ideal.sylph.plugins.mysql.utils.JdbcConnectionPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * snapshot refresh against an in memory h2 table
+ */
+public class SnapshotCacheTest
+{
+    private static final String URL = "jdbc:h2:mem:sylph_snapshot_test;DB_CLOSE_DELAY=-1";
+
+    private static void execute(String... sqls)
+            throws Exception
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+                Statement statement = connection.createStatement()) {
+            for (String sql : sqls) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static String[] names(Object[][] rows)
+    {
+        return Arrays.stream(rows).map(row -> (String) row[1]).sorted().toArray(String[]::new);
+    }
+
+    @Test
+    public void incrementalRefreshKeepsTheUnchangedRowsOfTheKey()
+            throws Exception
+    {
+        execute("create table orders(uid varchar(10), item varchar(20), version int)",
+                "insert into orders values('1', 'a', 1), ('1', 'b', 1), ('2', 'c', 1)");
+
+        try (JdbcConnectionPool pool = new JdbcConnectionPool(URL, "sa", "", 1, 10);
+                SnapshotCache snapshot = new SnapshotCache(pool, "select uid, item, version from orders",
+                        Arrays.asList("uid", "item", "version"), 2, Collections.singletonList("uid"),
+                        new JoinKeyCodec(false), "version", 0, 100)) {
+            snapshot.start("test");
+            Assert.assertArrayEquals(new String[] {"a", "b"}, names(snapshot.get(new Object[] {"1"})));
+
+            // one of the two rows of uid 1 changes
+            execute("update orders set item = 'b2', version = 2 where item = 'b'");
+            snapshot.refresh();
+            Assert.assertArrayEquals(new String[] {"a", "b2"}, names(snapshot.get(new Object[] {"1"})));
+            Assert.assertArrayEquals(new String[] {"c"}, names(snapshot.get(new Object[] {"2"})));
+
+            // a new row of uid 2
+            execute("insert into orders values('2', 'd', 3)");
+            snapshot.refresh();
+            Assert.assertArrayEquals(new String[] {"c", "d"}, names(snapshot.get(new Object[] {"2"})));
+            Assert.assertArrayEquals(new String[] {"a", "b2"}, names(snapshot.get(new Object[] {"1"})));
+        }
+    }
+}
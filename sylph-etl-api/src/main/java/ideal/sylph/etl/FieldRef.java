@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.etl;
+
+import java.io.Serializable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A field resolved against a {@link Schema}, reads rows by index without any name lookup.
+ * see {@link Schema#getFieldRef(String)}
+ */
+public final class FieldRef
+        implements Serializable
+{
+    private final Field field;
+    private final int index;
+
+    FieldRef(Field field, int index)
+    {
+        this.field = requireNonNull(field, "field is null");
+        this.index = index;
+    }
+
+    public String getName()
+    {
+        return field.getName();
+    }
+
+    public int getIndex()
+    {
+        return index;
+    }
+
+    public Class<?> getJavaTypeClass()
+    {
+        return field.getJavaTypeClass();
+    }
+
+    public <T> T get(Row row)
+    {
+        return row.getAs(index);
+    }
+
+    public boolean isNull(Row row)
+    {
+        return row.isNullAt(index);
+    }
+
+    public long getLong(Row row)
+    {
+        return row.getLong(index);
+    }
+
+    public int getInt(Row row)
+    {
+        return row.getInt(index);
+    }
+
+    public double getDouble(Row row)
+    {
+        return row.getDouble(index);
+    }
+
+    public boolean getBoolean(Row row)
+    {
+        return row.getBoolean(index);
+    }
+
+    public byte[] getBytes(Row row)
+    {
+        return row.getBytes(index);
+    }
+
+    @Override
+    public String toString()
+    {
+        return field.getName() + "[" + index + "]";
+    }
+}
@@ -17,6 +17,8 @@ package ideal.sylph.etl;
 
 import java.util.Arrays;
 
+import static java.util.Objects.requireNonNull;
+
 public interface Row
 {
     String mkString(String seq);
@@ -37,48 +39,134 @@ public interface Row
 
     int size();
 
+    default boolean isNullAt(int i)
+    {
+        return getAs(i) == null;
+    }
+
+    /**
+     * the field must be a not null {@link Number}, Integer and other numbers are converted
+     */
+    default long getLong(int i)
+    {
+        return getNumber(this, i).longValue();
+    }
+
+    /**
+     * the field must be a not null {@link Number}
+     */
+    default int getInt(int i)
+    {
+        return getNumber(this, i).intValue();
+    }
+
+    /**
+     * the field must be a not null {@link Number}
+     */
+    default double getDouble(int i)
+    {
+        return getNumber(this, i).doubleValue();
+    }
+
+    default boolean getBoolean(int i)
+    {
+        Boolean value = getAs(i);
+        if (value == null) {
+            throw new NullPointerException("value at index " + i + " is null");
+        }
+        return value;
+    }
+
+    default byte[] getBytes(int i)
+    {
+        return getAs(i);
+    }
+
+    static Number getNumber(Row row, int i)
+    {
+        Number value = row.getAs(i);
+        if (value == null) {
+            throw new NullPointerException("value at index " + i + " is null");
+        }
+        return value;
+    }
+
+    /**
+     * the values array is not copied, the row owns it after this call
+     */
     public static Row of(Object[] values)
     {
-        return new DefaultRow(values);
+        return new DefaultRow(values, null);
+    }
+
+    /**
+     * row with schema, supports {@link #getAs(String)}
+     */
+    public static Row of(Object[] values, Schema schema)
+    {
+        return new DefaultRow(values, requireNonNull(schema, "schema is null"));
     }
 
     static class DefaultRow
             implements Row
     {
-        Object[] values;
+        private final Object[] values;
+        private final Schema schema;
 
-        private DefaultRow(Object[] values)
+        private DefaultRow(Object[] values, Schema schema)
         {
-            this.values = values;
+            this.values = requireNonNull(values, "values is null");
+            this.schema = schema;
         }
 
+        /**
+         * return the backing array without copying, the engines wrap it directly
+         */
         public Object[] getValues()
         {
-            return Arrays.copyOf(values, values.length);
+            return values;
         }
 
-        @Override
-        public String mkString(String seq)
+        /**
+         * optional, null if the row was created without schema
+         */
+        public Schema getSchema()
         {
-            throw new UnsupportedOperationException("this " + this.getClass().getName() + " method have't mkString!");
+            return schema;
         }
 
         @Override
-        public String mkString()
+        public String mkString(String seq)
         {
-            throw new UnsupportedOperationException("this " + this.getClass().getName() + " method have't mkString!");
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    builder.append(seq);
+                }
+                builder.append(values[i]);
+            }
+            return builder.toString();
         }
 
+        @SuppressWarnings("unchecked")
         @Override
         public <T> T getAs(String key)
         {
-            throw new UnsupportedOperationException("this " + this.getClass().getName() + " method have't T getAs(String)!");
+            if (schema == null) {
+                throw new UnsupportedOperationException("this " + this.getClass().getName() + " not have schema, getAs(String) is not supported");
+            }
+            int index = schema.getFieldIndex(key);
+            if (index == -1) {
+                throw new IllegalArgumentException("field " + key + " does not exist, only " + schema.getFieldNames());
+            }
+            return (T) values[index];
         }
 
+        @SuppressWarnings("unchecked")
         @Override
         public <T> T getAs(int key)
         {
-            throw new UnsupportedOperationException("this " + this.getClass().getName() + " method have't T getAs(int)!");
+            return (T) values[key];
         }
 
         @Override
@@ -86,5 +174,29 @@ public interface Row
         {
             return values.length;
         }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if ((obj == null) || (getClass() != obj.getClass())) {
+                return false;
+            }
+            return Arrays.equals(values, ((DefaultRow) obj).values);
+        }
+
+        @Override
+        public String toString()
+        {
+            return mkString(",");
+        }
     }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.etl;
+
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A batch of rows stored column by column.
+ * <p>
+ * {@code getColumn(i)[j]} is the value of field {@code i} in row {@code j}.
+ * Only the first {@link #getRowCount()} slots of each column vector are valid.
+ * A batch handed to a plugin is only valid during that call, the engine adapters reuse the vectors.
+ */
+public final class RowBatch
+{
+    private final Object[][] columns;
+    private final int rowCount;
+
+    private RowBatch(Object[][] columns, int rowCount)
+    {
+        this.columns = requireNonNull(columns, "columns is null");
+        this.rowCount = rowCount;
+    }
+
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    public int getColumnCount()
+    {
+        return columns.length;
+    }
+
+    /**
+     * column vector, length may be greater than {@link #getRowCount()}
+     */
+    public Object[] getColumn(int column)
+    {
+        return columns[column];
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getAs(int column, int row)
+    {
+        checkRow(row);
+        return (T) columns[column][row];
+    }
+
+    /**
+     * Row view of the batch, does not copy
+     */
+    public Row getRow(int row)
+    {
+        checkRow(row);
+        return new RowView(row);
+    }
+
+    private void checkRow(int row)
+    {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("row " + row + " out of range [0, " + rowCount + ")");
+        }
+    }
+
+    public static RowBatch of(Row row)
+    {
+        Builder builder = newBuilder(1);
+        builder.add(row);
+        return builder.build();
+    }
+
+    public static Builder newBuilder(int maxRows)
+    {
+        return new Builder(maxRows);
+    }
+
+    private class RowView
+            implements Row
+    {
+        private final int row;
+
+        private RowView(int row)
+        {
+            this.row = row;
+        }
+
+        @Override
+        public String mkString(String seq)
+        {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    builder.append(seq);
+                }
+                builder.append(columns[i][row]);
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public <T> T getAs(String key)
+        {
+            throw new UnsupportedOperationException("this " + this.getClass().getName() + " method have't T getAs(String)!");
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T getAs(int i)
+        {
+            return (T) columns[i][row];
+        }
+
+        @Override
+        public int size()
+        {
+            return columns.length;
+        }
+
+        @Override
+        public String toString()
+        {
+            return mkString(",");
+        }
+    }
+
+    /**
+     * Reusable batch builder, the column vectors are allocated once by the first row
+     * and reused after {@link #reset()}. Not thread safe.
+     */
+    public static class Builder
+    {
+        private final int maxRows;
+        private Object[][] columns;
+        private int rowCount = 0;
+
+        private Builder(int maxRows)
+        {
+            if (maxRows <= 0) {
+                throw new IllegalArgumentException("maxRows must > 0, but is " + maxRows);
+            }
+            this.maxRows = maxRows;
+        }
+
+        public Builder add(Row row)
+        {
+            if (isFull()) {
+                throw new IllegalStateException("batch is full, maxRows " + maxRows);
+            }
+            if (columns == null) {
+                columns = new Object[row.size()][maxRows];
+            }
+            else if (row.size() != columns.length) {
+                throw new IllegalArgumentException("row size " + row.size() + " != batch column count " + columns.length);
+            }
+            for (int i = 0; i < columns.length; i++) {
+                columns[i][rowCount] = row.getAs(i);
+            }
+            rowCount++;
+            return this;
+        }
+
+        public int size()
+        {
+            return rowCount;
+        }
+
+        public boolean isEmpty()
+        {
+            return rowCount == 0;
+        }
+
+        public boolean isFull()
+        {
+            return rowCount >= maxRows;
+        }
+
+        /**
+         * The returned batch shares the column vectors with this builder
+         */
+        public RowBatch build()
+        {
+            return new RowBatch(columns == null ? new Object[0][] : columns, rowCount);
+        }
+
+        /**
+         * clear the batch, release references of the last batch values
+         */
+        public void reset()
+        {
+            if (columns != null) {
+                for (Object[] column : columns) {
+                    Arrays.fill(column, 0, rowCount, null);
+                }
+            }
+            rowCount = 0;
+        }
+    }
+}
@@ -30,11 +30,38 @@ public final class Schema
     private final List<String> fieldNames;
     private final List<Type> types;
 
+    /**
+     * open addressing name -> index table, slot value is index + 1, 0 is empty
+     */
+    private final String[] names;
+    private final int[] indexTable;
+    private final int mask;
+
     private Schema(List<Field> fields)
     {
         this.fields = requireNonNull(fields, "fields must not null");
         this.fieldNames = fields.stream().map(Field::getName).collect(Collectors.toList());
         this.types = fields.stream().map(Field::getJavaType).collect(Collectors.toList());
+
+        this.names = fieldNames.toArray(new String[0]);
+        int capacity = Integer.highestOneBit(Math.max(names.length, 1) * 2) << 1;  // load factor <= 0.5
+        this.indexTable = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < names.length; i++) {
+            int slot = hash(names[i]) & mask;
+            while (indexTable[slot] != 0 && !names[indexTable[slot] - 1].equals(names[i])) {
+                slot = (slot + 1) & mask;
+            }
+            if (indexTable[slot] == 0) {  // duplicate names keep the first index
+                indexTable[slot] = i + 1;
+            }
+        }
+    }
+
+    private static int hash(String name)
+    {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
     }
 
     public List<String> getFieldNames()
@@ -42,16 +69,39 @@ public final class Schema
         return fieldNames;
     }
 
+    /**
+     * O(1) lookup, -1 if the field does not exist
+     */
     public int getFieldIndex(String fieldName)
     {
-        for (int i = 0; i < fieldNames.size(); i++) {
-            if (fieldNames.get(i).equals(fieldName)) {
-                return i;
+        for (int slot = hash(fieldName) & mask; indexTable[slot] != 0; slot = (slot + 1) & mask) {
+            int index = indexTable[slot] - 1;
+            if (names[index].equals(fieldName)) {
+                return index;
             }
         }
         return -1;
     }
 
+    /**
+     * resolve a field once, e.g. in the constructor or open(), then read rows by index
+     *
+     * @throws IllegalArgumentException if the field does not exist
+     */
+    public FieldRef getFieldRef(String fieldName)
+    {
+        int index = getFieldIndex(fieldName);
+        if (index == -1) {
+            throw new IllegalArgumentException("field " + fieldName + " does not exist, only " + fieldNames);
+        }
+        return new FieldRef(fields.get(index), index);
+    }
+
+    public int size()
+    {
+        return fields.size();
+    }
+
     public List<Type> getFieldTypes()
     {
         return types;
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.etl.api;
+
+import ideal.sylph.etl.Collector;
+import ideal.sylph.etl.Row;
+
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Asynchronous {@link RealTimeTransForm}, e.g. dimension table joins.
+ * The plugin runs the lookup on its own bounded executor (created in open()) and completes the stage,
+ * the engine never blocks a thread on it.
+ */
+public interface AsyncRealTimeTransForm
+        extends RealTimeTransForm
+{
+    /**
+     * line 级别的, the input row is not reused until the returned stage is completed
+     **/
+    CompletionStage<Collection<Row>> processAsync(Row input);
+
+    /**
+     * sync fallback for the engines without async support
+     */
+    @Override
+    default void process(Row input, Collector<Row> collector)
+    {
+        Collection<Row> rows = processAsync(input).toCompletableFuture().join();
+        for (Row row : rows) {
+            collector.collect(row);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.etl.api;
+
+import ideal.sylph.etl.Row;
+import ideal.sylph.etl.RowBatch;
+
+/**
+ * Optional batch contract of {@link RealTimeSink}.
+ * The engine buffers rows and calls {@link #process(RowBatch)} when
+ * {@link #getBatchSize()} rows are buffered or the oldest buffered row is older than {@link #getLingerMs()}.
+ */
+public interface RealTimeBatchSink
+        extends RealTimeSink
+{
+    /**
+     * batch 级别的, the batch is only valid during this call
+     **/
+    void process(RowBatch batch);
+
+    @Override
+    default void process(Row value)
+    {
+        process(RowBatch.of(value));
+    }
+
+    /**
+     * max rows of a batch
+     */
+    default int getBatchSize()
+    {
+        return 1000;
+    }
+
+    /**
+     * max time a row waits in the buffer, ms
+     */
+    default long getLingerMs()
+    {
+        return 200;
+    }
+}
@@ -15,6 +15,10 @@
  */
 package ideal.sylph.etl.api;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
 public interface RealTimePipeline
 {
     /**
@@ -27,4 +31,12 @@ public interface RealTimePipeline
      * partition级别的资源释放
      **/
     void close(Throwable errorOrNull);
+
+    /**
+     * partition级别的监控指标, open之后由引擎注册为gauge, e.g. cache hit and miss counts
+     */
+    default Map<String, Supplier<Number>> getMetrics()
+    {
+        return Collections.emptyMap();
+    }
 }
@@ -23,6 +23,16 @@ public interface RealTimeSink
 {
     /**
      * line 级别的 需要注意线程安全问题
+     * the engine may reuse the row object, copy values that are kept after this call
      **/
     void process(Row value);
+
+    /**
+     * called before a checkpoint completes, rows passed to process must be durable when it returns.
+     * sinks that buffer writes override it for at-least-once delivery
+     */
+    default void flush()
+            throws Exception
+    {
+    }
 }
@@ -25,6 +25,7 @@ public interface RealTimeTransForm
 {
     /**
      * line 级别的 需要注意线程安全问题
+     * the engine may reuse the row object, copy values that are kept after this call
      **/
     void process(Row input, Collector<Row> collector);
 
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.etl.api;
+
+import java.util.List;
+
+/**
+ * Optional two phase commit contract of {@link RealTimeSink}.
+ * On every checkpoint the engine calls {@link #preCommit(long)}, which finishes what was written since the last checkpoint
+ * without publishing it. The engine keeps the returned handles in checkpoint state and passes them to {@link #commit(List)}
+ * after the checkpoint completes, or after a restore from that checkpoint, so commit must be idempotent.
+ */
+public interface RealTimeTwoPhaseCommitSink
+        extends RealTimeSink
+{
+    /**
+     * @return handles (e.g. file paths) of the data to publish, empty if nothing to commit
+     */
+    List<String> preCommit(long checkpointId)
+            throws Exception;
+
+    void commit(List<String> handles)
+            throws Exception;
+}
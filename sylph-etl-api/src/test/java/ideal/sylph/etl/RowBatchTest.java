@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.etl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RowBatchTest
+{
+    @Test
+    public void builderTest()
+    {
+        RowBatch.Builder builder = RowBatch.newBuilder(2);
+        builder.add(RowBatch.of(new TestRow(1L, "a")).getRow(0));
+        Assert.assertFalse(builder.isFull());
+        builder.add(RowBatch.of(new TestRow(2L, "b")).getRow(0));
+        Assert.assertTrue(builder.isFull());
+
+        RowBatch batch = builder.build();
+        Assert.assertEquals(2, batch.getRowCount());
+        Assert.assertEquals(2, batch.getColumnCount());
+        Assert.assertEquals(2L, (long) batch.getAs(0, 1));
+        Assert.assertEquals("a", batch.getColumn(1)[0]);
+        Assert.assertEquals("2,b", batch.getRow(1).mkString());
+
+        builder.reset();
+        Assert.assertTrue(builder.isEmpty());
+        Assert.assertEquals(0, builder.build().getRowCount());
+        Assert.assertNull(batch.getColumn(1)[0]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addToFullBatchTest()
+    {
+        RowBatch.Builder builder = RowBatch.newBuilder(1);
+        builder.add(new TestRow(1L));
+        builder.add(new TestRow(2L));
+    }
+
+    private static class TestRow
+            implements Row
+    {
+        private final Object[] values;
+
+        private TestRow(Object... values)
+        {
+            this.values = values;
+        }
+
+        @Override
+        public String mkString(String seq)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T getAs(String key)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T getAs(int i)
+        {
+            return (T) values[i];
+        }
+
+        @Override
+        public int size()
+        {
+            return values.length;
+        }
+    }
+}
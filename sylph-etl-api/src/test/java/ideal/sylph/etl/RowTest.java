@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.etl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RowTest
+{
+    private final Schema schema = Schema.newBuilder()
+            .add("id", Long.class)
+            .add("name", String.class)
+            .build();
+
+    @Test
+    public void defaultRowTest()
+    {
+        Object[] values = new Object[] {1L, "a"};
+        Row row = Row.of(values, schema);
+
+        Assert.assertEquals(2, row.size());
+        Assert.assertEquals(1L, (long) row.getAs(0));
+        Assert.assertEquals("a", row.getAs("name"));
+        Assert.assertEquals("1,a", row.mkString());
+        Assert.assertSame(values, ((Row.DefaultRow) row).getValues());
+    }
+
+    @Test
+    public void primitiveGetterTest()
+    {
+        Row row = Row.of(new Object[] {1L, 2, 3.5D, true, new byte[] {1}, null});
+
+        Assert.assertEquals(1L, row.getLong(0));
+        Assert.assertEquals(2L, row.getLong(1));
+        Assert.assertEquals(2, row.getInt(1));
+        Assert.assertEquals(3.5D, row.getDouble(2), 0D);
+        Assert.assertTrue(row.getBoolean(3));
+        Assert.assertArrayEquals(new byte[] {1}, row.getBytes(4));
+        Assert.assertFalse(row.isNullAt(0));
+        Assert.assertTrue(row.isNullAt(5));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getLongNullTest()
+    {
+        Row.of(new Object[] {null}).getLong(0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getAsNameWithoutSchemaTest()
+    {
+        Row.of(new Object[] {1L, "a"}).getAs("name");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getAsUnknownNameTest()
+    {
+        Row.of(new Object[] {1L, "a"}, schema).getAs("age");
+    }
+}
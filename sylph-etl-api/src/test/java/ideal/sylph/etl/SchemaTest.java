@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.etl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SchemaTest
+{
+    @Test
+    public void getFieldIndexTest()
+    {
+        Schema.SchemaBuilder builder = Schema.newBuilder();
+        for (int i = 0; i < 120; i++) {
+            builder.add("field_" + i, String.class);
+        }
+        builder.add("field_7", Long.class);  // duplicate name keeps the first index
+        Schema schema = builder.build();
+
+        for (int i = 0; i < 120; i++) {
+            Assert.assertEquals(i, schema.getFieldIndex("field_" + i));
+        }
+        Assert.assertEquals(7, schema.getFieldIndex("field_7"));
+        Assert.assertEquals(-1, schema.getFieldIndex("field_120"));
+        Assert.assertEquals(-1, Schema.newBuilder().build().getFieldIndex("field_0"));
+    }
+
+    @Test
+    public void getFieldRefTest()
+    {
+        Schema schema = Schema.newBuilder()
+                .add("id", Long.class)
+                .add("name", String.class)
+                .build();
+        FieldRef name = schema.getFieldRef("name");
+        Assert.assertEquals(1, name.getIndex());
+        Assert.assertEquals(String.class, name.getJavaTypeClass());
+        Assert.assertEquals("b", name.get(Row.of(new Object[] {1L, "b"})));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getFieldRefNotExistsTest()
+    {
+        Schema.newBuilder().add("id", Long.class).build().getFieldRef("name");
+    }
+}
@@ -28,6 +28,7 @@ import ideal.sylph.spi.NodeLoader;
 import ideal.sylph.spi.exception.SylphException;
 import ideal.sylph.spi.model.PipelinePluginManager;
 import org.apache.flink.api.java.typeutils.RowTypeInfo;
+import org.apache.flink.api.java.typeutils.TypeExtractor;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.types.Row;
@@ -165,7 +166,8 @@ public final class FlinkNodeLoader
     {
         return (TransForm<DataStream<Row>>) stream -> {
             final SingleOutputStreamOperator<Row> tmp = stream
-                    .flatMap(new FlinkTransFrom(realTimeTransForm, stream.getType()));
+                    .transform("Flat Map", TypeExtractor.getForClass(Row.class),
+                            new FlinkTransFrom.TransFromOperator(new FlinkTransFrom(realTimeTransForm, stream.getType())));
             // schema必须要在driver上面指定
             Schema schema = realTimeTransForm.getSchema();
             if (schema != null) {
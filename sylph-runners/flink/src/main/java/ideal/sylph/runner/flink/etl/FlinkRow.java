@@ -23,17 +23,71 @@ import org.apache.flink.api.java.typeutils.RowTypeInfo;
 import org.apache.flink.api.java.typeutils.TypeExtractor;
 
 import java.lang.reflect.Type;
+import java.util.Arrays;
 
 public class FlinkRow
         implements Row
 {
     private org.apache.flink.types.Row row;
     private final TypeInformation<org.apache.flink.types.Row> typeInformation;
+    // open addressing name to index table, computed once by the reusable row
+    private final String[] indexNames;
+    private final int[] indexes;
 
     public FlinkRow(org.apache.flink.types.Row row, TypeInformation<org.apache.flink.types.Row> typeInformation)
     {
         this.row = row;
         this.typeInformation = typeInformation;
+        this.indexNames = null;
+        this.indexes = null;
+    }
+
+    /**
+     * Mutable row for the per-subtask reuse, see {@link #reset(org.apache.flink.types.Row)}.
+     * The name to index mapping is computed once here.
+     */
+    public FlinkRow(TypeInformation<org.apache.flink.types.Row> typeInformation)
+    {
+        this.typeInformation = typeInformation;
+        if (typeInformation instanceof RowTypeInfo) {
+            String[] fieldNames = ((RowTypeInfo) typeInformation).getFieldNames();
+            int size = Integer.highestOneBit(Math.max(fieldNames.length, 1) * 2) << 1;  // at least one empty slot
+            this.indexNames = new String[size];
+            this.indexes = new int[size];
+            for (int i = 0; i < fieldNames.length; i++) {
+                int slot = fieldNames[i].hashCode() & (size - 1);
+                while (indexNames[slot] != null) {
+                    slot = (slot + 1) & (size - 1);
+                }
+                indexNames[slot] = fieldNames[i];
+                indexes[slot] = i;
+            }
+        }
+        else {
+            this.indexNames = null;
+            this.indexes = null;
+        }
+    }
+
+    private int fieldIndex(String key)
+    {
+        int mask = indexNames.length - 1;
+        for (int slot = key.hashCode() & mask; indexNames[slot] != null; slot = (slot + 1) & mask) {
+            String name = indexNames[slot];
+            if (name == key || name.equals(key)) {
+                return indexes[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Wraps the next record, the previous one is released
+     */
+    public FlinkRow reset(org.apache.flink.types.Row row)
+    {
+        this.row = row;
+        return this;
     }
 
     public org.apache.flink.types.Row get()
@@ -54,7 +108,14 @@ public class FlinkRow
     @Override
     public <T> T getAs(String key)
     {
-        if (typeInformation instanceof RowTypeInfo) {
+        if (indexNames != null) {
+            int index = fieldIndex(key);
+            if (index == -1) {
+                throw new IllegalArgumentException("field " + key + " does not exist, only " + Arrays.toString(((RowTypeInfo) typeInformation).getFieldNames()));
+            }
+            return (T) row.getField(index);
+        }
+        else if (typeInformation instanceof RowTypeInfo) {
             int index = ((RowTypeInfo) typeInformation).getFieldIndex(key);
             return (T) row.getField(index);
         }
@@ -75,6 +136,51 @@ public class FlinkRow
         return row.getArity();
     }
 
+    @Override
+    public boolean isNullAt(int i)
+    {
+        return row.getField(i) == null;
+    }
+
+    @Override
+    public long getLong(int i)
+    {
+        return ((Number) getNotNull(i)).longValue();
+    }
+
+    @Override
+    public int getInt(int i)
+    {
+        return ((Number) getNotNull(i)).intValue();
+    }
+
+    @Override
+    public double getDouble(int i)
+    {
+        return ((Number) getNotNull(i)).doubleValue();
+    }
+
+    @Override
+    public boolean getBoolean(int i)
+    {
+        return (Boolean) getNotNull(i);
+    }
+
+    @Override
+    public byte[] getBytes(int i)
+    {
+        return (byte[]) row.getField(i);
+    }
+
+    private Object getNotNull(int i)
+    {
+        Object value = row.getField(i);
+        if (value == null) {
+            throw new NullPointerException("value at index " + i + " is null");
+        }
+        return value;
+    }
+
     @Override
     public String toString()
     {
@@ -87,10 +193,15 @@ public class FlinkRow
             return ((FlinkRow) row).get();
         }
         else if (row instanceof DefaultRow) {
+            // flink Row can not wrap an array, Row.of copies the values once
             return org.apache.flink.types.Row.of(((DefaultRow) row).getValues());
         }
         else {
-            throw new UnsupportedOperationException("Not Unsupported row type: " + row.getClass());
+            org.apache.flink.types.Row flinkRow = new org.apache.flink.types.Row(row.size());
+            for (int i = 0; i < row.size(); i++) {
+                flinkRow.setField(i, row.getAs(i));
+            }
+            return flinkRow;
         }
     }
 
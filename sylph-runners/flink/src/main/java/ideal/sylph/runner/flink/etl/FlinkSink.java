@@ -15,19 +15,46 @@
  */
 package ideal.sylph.runner.flink.etl;
 
+import ideal.sylph.etl.api.RealTimeBatchSink;
 import ideal.sylph.etl.api.RealTimeSink;
+import ideal.sylph.etl.api.RealTimeTwoPhaseCommitSink;
 import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.CheckpointListener;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
 import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
+import org.apache.flink.streaming.api.operators.StreamingRuntimeContext;
 import org.apache.flink.types.Row;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A {@link RealTimeTwoPhaseCommitSink} is pre-committed in snapshotState, the returned handles are kept in operator state
+ * by checkpoint id and committed in notifyCheckpointComplete. Handles restored from a checkpoint are committed in open().
+ */
 public final class FlinkSink
         extends RichSinkFunction<Row>
+        implements CheckpointedFunction, CheckpointListener
 {
     private final RealTimeSink realTimeSink;
     private final TypeInformation<Row> typeInformation;
 
+    private transient FlinkRow reuseRow;
+    private transient RowBatchBuffer batchBuffer;
+
+    private transient ListState<String> pendingCommitState;
+    private transient NavigableMap<Long, List<String>> pendingCommits;
+    private transient List<String> restoredCommits;
+
     public FlinkSink(RealTimeSink realTimeSink, TypeInformation<Row> typeInformation)
     {
         this.realTimeSink = realTimeSink;
@@ -38,7 +65,12 @@ public final class FlinkSink
     public void invoke(Row value, Context context)
             throws Exception
     {
-        realTimeSink.process(new FlinkRow(value, typeInformation));
+        if (batchBuffer != null) {
+            batchBuffer.add(reuseRow.reset(value));
+        }
+        else {
+            realTimeSink.process(reuseRow.reset(value));
+        }
     }
 
     @Override
@@ -53,13 +85,91 @@ public final class FlinkSink
                 (context.getIndexOfThisSubtask() + 1) : 0;
 
         realTimeSink.open(partitionId, 0);
+        PipelineMetrics.register(context, realTimeSink);
+        this.reuseRow = new FlinkRow(typeInformation);
+
+        if (realTimeSink instanceof RealTimeBatchSink) {
+            RealTimeBatchSink batchSink = (RealTimeBatchSink) realTimeSink;
+            this.batchBuffer = new RowBatchBuffer(batchSink.getBatchSize(), batchSink.getLingerMs(),
+                    ((StreamingRuntimeContext) context).getProcessingTimeService(), batchSink::process);
+        }
+
+        if (restoredCommits != null) {
+            ((RealTimeTwoPhaseCommitSink) realTimeSink).commit(restoredCommits);
+            this.restoredCommits = null;
+        }
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context)
+            throws Exception
+    {
+        // buffered rows must be written before the checkpoint completes
+        if (batchBuffer != null) {
+            batchBuffer.flush();
+        }
+        realTimeSink.flush();
+
+        if (pendingCommitState != null) {
+            List<String> handles = ((RealTimeTwoPhaseCommitSink) realTimeSink).preCommit(context.getCheckpointId());
+            pendingCommits.put(context.getCheckpointId(), handles);
+            pendingCommitState.clear();
+            for (List<String> pending : pendingCommits.values()) {
+                for (String handle : pending) {
+                    pendingCommitState.add(handle);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context)
+            throws Exception
+    {
+        if (!(realTimeSink instanceof RealTimeTwoPhaseCommitSink)) {
+            return;
+        }
+        this.pendingCommitState = context.getOperatorStateStore().getListState(
+                new ListStateDescriptor<>("pending-commits", String.class));
+        this.pendingCommits = new TreeMap<>();
+        if (context.isRestored()) {
+            // the sink is opened after initializeState, commit in open()
+            List<String> restored = new ArrayList<>();
+            for (String handle : pendingCommitState.get()) {
+                restored.add(handle);
+            }
+            this.restoredCommits = restored;
+        }
+    }
+
+    @Override
+    public void notifyCheckpointComplete(long checkpointId)
+            throws Exception
+    {
+        if (pendingCommits == null) {
+            return;
+        }
+        Map<Long, List<String>> completed = pendingCommits.headMap(checkpointId, true);
+        List<String> handles = new ArrayList<>();
+        completed.values().forEach(handles::addAll);
+        if (!handles.isEmpty()) {
+            ((RealTimeTwoPhaseCommitSink) realTimeSink).commit(handles);
+        }
+        completed.clear();
     }
 
     @Override
     public void close()
             throws Exception
     {
-        realTimeSink.close(null);
-        super.close();
+        try {
+            if (batchBuffer != null) {
+                batchBuffer.flush();
+            }
+        }
+        finally {
+            realTimeSink.close(null);
+            super.close();
+        }
     }
 }
@@ -15,10 +15,14 @@
  */
 package ideal.sylph.runner.flink.etl;
 
+import ideal.sylph.etl.RowBatch;
+import ideal.sylph.etl.api.RealTimeBatchTransForm;
 import ideal.sylph.etl.api.RealTimeTransForm;
 import org.apache.flink.api.common.functions.RichFlatMapFunction;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.operators.StreamFlatMap;
+import org.apache.flink.streaming.api.operators.StreamingRuntimeContext;
 import org.apache.flink.types.Row;
 import org.apache.flink.util.Collector;
 
@@ -28,6 +32,10 @@ public class FlinkTransFrom
     private final RealTimeTransForm realTimeTransForm;
     private final TypeInformation<Row> typeInformation;
 
+    private transient FlinkRow reuseRow;
+    private transient RowCollector rowCollector;
+    private transient RowBatchBuffer batchBuffer;
+
     public FlinkTransFrom(RealTimeTransForm realTimeTransForm, TypeInformation<Row> typeInformation)
     {
         this.realTimeTransForm = realTimeTransForm;
@@ -38,8 +46,13 @@ public class FlinkTransFrom
     public void close()
             throws Exception
     {
-        realTimeTransForm.close(null);
-        super.close();
+        try {
+            flush();
+        }
+        finally {
+            realTimeTransForm.close(null);
+            super.close();
+        }
     }
 
     /**
@@ -51,26 +64,78 @@ public class FlinkTransFrom
     {
         realTimeTransForm.open(0, 0);
         super.open(parameters);
+        PipelineMetrics.register(getRuntimeContext(), realTimeTransForm);
+
+        this.reuseRow = new FlinkRow(typeInformation);
+        this.rowCollector = new RowCollector();
+        if (realTimeTransForm instanceof RealTimeBatchTransForm) {
+            RealTimeBatchTransForm batchTransForm = (RealTimeBatchTransForm) realTimeTransForm;
+            this.batchBuffer = new RowBatchBuffer(batchTransForm.getBatchSize(), batchTransForm.getLingerMs(),
+                    ((StreamingRuntimeContext) getRuntimeContext()).getProcessingTimeService(),
+                    (RowBatch batch) -> batchTransForm.process(batch, rowCollector));
+        }
     }
 
     @Override
     public void flatMap(Row row, Collector<Row> collector)
             throws Exception
     {
-        ideal.sylph.etl.Collector<ideal.sylph.etl.Row> rowCollector = new ideal.sylph.etl.Collector<ideal.sylph.etl.Row>()
+        // flink passes the same operator output on every call, a timer flush emits to it
+        rowCollector.output = collector;
+        if (batchBuffer != null) {
+            batchBuffer.add(reuseRow.reset(row));
+        }
+        else {
+            realTimeTransForm.process(reuseRow.reset(row), rowCollector);
+        }
+    }
+
+    /**
+     * emit the buffered rows of a {@link RealTimeBatchTransForm}
+     */
+    void flush()
+    {
+        if (batchBuffer != null) {
+            batchBuffer.flush();
+        }
+    }
+
+    /**
+     * flink broadcasts the checkpoint barrier before snapshotState(), rows emitted there belong to the next checkpoint
+     * and are lost on failover. This operator emits the buffered rows before the barrier.
+     */
+    static class TransFromOperator
+            extends StreamFlatMap<Row, Row>
+    {
+        TransFromOperator(FlinkTransFrom transFrom)
+        {
+            super(transFrom);
+        }
+
+        @Override
+        public void prepareSnapshotPreBarrier(long checkpointId)
+                throws Exception
+        {
+            super.prepareSnapshotPreBarrier(checkpointId);
+            ((FlinkTransFrom) userFunction).flush();
+        }
+    }
+
+    private static class RowCollector
+            implements ideal.sylph.etl.Collector<ideal.sylph.etl.Row>
+    {
+        private Collector<Row> output;
+
+        @Override
+        public void collect(ideal.sylph.etl.Row record)
         {
-            @Override
-            public void collect(ideal.sylph.etl.Row record)
-            {
-                collector.collect(FlinkRow.parserRow(record));
-            }
+            output.collect(FlinkRow.parserRow(record));
+        }
 
-            @Override
-            public void close()
-            {
-                collector.close();
-            }
-        };
-        realTimeTransForm.process(new FlinkRow(row, typeInformation), rowCollector);
+        @Override
+        public void close()
+        {
+            output.close();
+        }
     }
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.runner.flink.etl;
+
+import ideal.sylph.etl.api.RealTimePipeline;
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+
+public final class PipelineMetrics
+{
+    private PipelineMetrics() {}
+
+    /**
+     * register the metrics of the plugin as gauges of the operator, after the plugin is opened
+     */
+    public static void register(RuntimeContext context, RealTimePipeline pipeline)
+    {
+        MetricGroup group = context.getMetricGroup();
+        pipeline.getMetrics().forEach((name, value) -> group.gauge(name, (Gauge<Number>) value::get));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.runner.flink.etl;
+
+import ideal.sylph.etl.Row;
+import ideal.sylph.etl.RowBatch;
+import org.apache.flink.streaming.runtime.tasks.ProcessingTimeCallback;
+import org.apache.flink.streaming.runtime.tasks.ProcessingTimeService;
+
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Buffers rows into a {@link RowBatch} and flushes it by batch size or linger time.
+ * Flink invokes the user function and the processing time callback under the checkpoint lock,
+ * so there is no extra locking here.
+ */
+final class RowBatchBuffer
+        implements ProcessingTimeCallback
+{
+    private final RowBatch.Builder builder;
+    private final long lingerMs;
+    private final ProcessingTimeService timeService;
+    private final Consumer<RowBatch> flusher;
+
+    private long batchStartTime;
+
+    RowBatchBuffer(int batchSize, long lingerMs, ProcessingTimeService timeService, Consumer<RowBatch> flusher)
+    {
+        this.builder = RowBatch.newBuilder(batchSize);
+        this.lingerMs = lingerMs;
+        this.timeService = requireNonNull(timeService, "timeService is null");
+        this.flusher = requireNonNull(flusher, "flusher is null");
+    }
+
+    public void add(Row row)
+    {
+        if (builder.isEmpty()) {
+            batchStartTime = timeService.getCurrentProcessingTime();
+            if (lingerMs > 0) {
+                timeService.registerTimer(batchStartTime + lingerMs, this);
+            }
+        }
+        builder.add(row);
+        if (builder.isFull()) {
+            flush();
+        }
+    }
+
+    public void flush()
+    {
+        if (builder.isEmpty()) {
+            return;
+        }
+        try {
+            flusher.accept(builder.build());
+        }
+        finally {
+            builder.reset();
+        }
+    }
+
+    @Override
+    public void onProcessingTime(long timestamp)
+    {
+        // the timer of a batch already flushed by size, the current batch has its own timer
+        if (!builder.isEmpty() && timestamp >= batchStartTime + lingerMs) {
+            flush();
+        }
+    }
+}
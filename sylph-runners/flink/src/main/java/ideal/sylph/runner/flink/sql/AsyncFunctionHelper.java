@@ -15,8 +15,12 @@
  */
 package ideal.sylph.runner.flink.sql;
 
+import ideal.sylph.etl.api.AsyncRealTimeTransForm;
 import ideal.sylph.etl.api.RealTimeTransForm;
+import ideal.sylph.etl.join.JoinContext;
+import ideal.sylph.etl.join.SelectField;
 import ideal.sylph.runner.flink.etl.FlinkRow;
+import ideal.sylph.runner.flink.etl.PipelineMetrics;
 import org.apache.flink.api.common.functions.RuntimeContext;
 import org.apache.flink.api.java.typeutils.RowTypeInfo;
 import org.apache.flink.configuration.Configuration;
@@ -26,13 +30,23 @@ import org.apache.flink.streaming.api.functions.async.AsyncFunction;
 import org.apache.flink.streaming.api.functions.async.ResultFuture;
 import org.apache.flink.streaming.api.functions.async.RichAsyncFunction;
 import org.apache.flink.types.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Objects.requireNonNull;
 
 public class AsyncFunctionHelper
 {
@@ -40,30 +54,50 @@ public class AsyncFunctionHelper
 
     public static DataStream<Row> translate(
             DataStream<Row> inputStream,
-            RealTimeTransForm transForm)
+            RealTimeTransForm transForm,
+            JoinContext.JoinType joinType,
+            List<SelectField> selectFields,
+            AsyncJoinOptions options)
     {
         RowTypeInfo streamRowType = (RowTypeInfo) inputStream.getType();
-        AsyncFunction<Row, Row> asyncFunction = new RichAsyncFunctionImpl(transForm, streamRowType);
-
-        DataStream<Row> joinResultStream = AsyncDataStream.orderedWait(
-                inputStream, asyncFunction,
-                1000, TimeUnit.MILLISECONDS, // 超时时间
-                100);  // 进行中的异步请求的最大数量
+        AsyncFunction<Row, Row> asyncFunction = new RichAsyncFunctionImpl(transForm, streamRowType, joinType, selectFields, options);
 
-        return joinResultStream;
+        if (options.isOrdered()) {
+            return AsyncDataStream.orderedWait(
+                    inputStream, asyncFunction,
+                    options.getTimeoutMs(), TimeUnit.MILLISECONDS, // 超时时间
+                    options.getCapacity());  // 进行中的异步请求的最大数量
+        }
+        else {
+            return AsyncDataStream.unorderedWait(
+                    inputStream, asyncFunction,
+                    options.getTimeoutMs(), TimeUnit.MILLISECONDS,
+                    options.getCapacity());
+        }
     }
 
     public static class RichAsyncFunctionImpl
             extends RichAsyncFunction<Row, Row>
             implements Serializable
     {
+        private static final Logger logger = LoggerFactory.getLogger(RichAsyncFunctionImpl.class);
+
         private final RealTimeTransForm transForm;
         private final RowTypeInfo streamRowType;
+        private final JoinContext.JoinType joinType;
+        private final List<SelectField> selectFields;
+        private final AsyncJoinOptions options;
+
+        // only used by the retry timeout policy, bounds the retried request
+        private transient ScheduledExecutorService retryTimer;
 
-        public RichAsyncFunctionImpl(RealTimeTransForm transForm, RowTypeInfo streamRowType)
+        public RichAsyncFunctionImpl(RealTimeTransForm transForm, RowTypeInfo streamRowType, JoinContext.JoinType joinType, List<SelectField> selectFields, AsyncJoinOptions options)
         {
-            this.transForm = transForm;
-            this.streamRowType = streamRowType;
+            this.transForm = requireNonNull(transForm, "transForm is null");
+            this.streamRowType = requireNonNull(streamRowType, "streamRowType is null");
+            this.joinType = requireNonNull(joinType, "joinType is null");
+            this.selectFields = requireNonNull(selectFields, "selectFields is null");
+            this.options = requireNonNull(options, "options is null");
         }
 
         @Override
@@ -77,21 +111,25 @@ public class AsyncFunctionHelper
             int partitionId = (context.getNumberOfParallelSubtasks() > 0) ?
                     (context.getIndexOfThisSubtask() + 1) : 0;
 
+            if (options.getTimeoutPolicy() == AsyncJoinOptions.TimeoutPolicy.RETRY) {
+                ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                    Thread thread = new Thread(runnable, "async-join-retry-timer-" + partitionId);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                timer.setRemoveOnCancelPolicy(true);
+                this.retryTimer = timer;
+            }
             transForm.open(partitionId, 0);
+            PipelineMetrics.register(context, transForm);
         }
 
         @Override
         public void asyncInvoke(Row input, ResultFuture<Row> asyncCollector)
                 throws Exception
         {
-            CompletableFuture<Collection<Row>> resultFuture = CompletableFuture.supplyAsync(() -> {
-                List<Row> rows = new ArrayList<>();
-                transForm.process(new FlinkRow(input, streamRowType), record -> rows.add(FlinkRow.parserRow(record)));
-                return rows;
-            });
-
             // 设置请求完成时的回调: 将结果传递给 collector
-            resultFuture.whenComplete((result, error) -> {
+            lookup(input).whenComplete((result, error) -> {
                 if (error != null) {
                     asyncCollector.completeExceptionally(error);
                 }
@@ -101,11 +139,95 @@ public class AsyncFunctionHelper
             });
         }
 
+        /**
+         * flink calls this once when the request exceeds async.timeout.ms.
+         * A late result of the first request is ignored once the ResultFuture is completed.
+         */
+        @Override
+        public void timeout(Row input, ResultFuture<Row> asyncCollector)
+                throws Exception
+        {
+            switch (options.getTimeoutPolicy()) {
+                case EMIT_LEFT_ONLY:
+                    if (joinType == JoinContext.JoinType.LEFT) {
+                        asyncCollector.complete(Collections.singletonList(leftOnlyRow(input)));
+                    }
+                    else {
+                        // an inner join never emits a stream row without its batch table row, drop it
+                        asyncCollector.complete(Collections.emptyList());
+                    }
+                    break;
+                case RETRY:
+                    logger.warn("async join request timed out after {}ms, retry once", options.getTimeoutMs());
+                    // flink does not time out the same element twice, so bound the retry here
+                    ScheduledFuture<?> retryTimeout = retryTimer.schedule(
+                            () -> asyncCollector.completeExceptionally(timeoutException(2)),
+                            options.getTimeoutMs(), TimeUnit.MILLISECONDS);
+                    lookup(input).whenComplete((result, error) -> {
+                        retryTimeout.cancel(false);
+                        if (error != null) {
+                            asyncCollector.completeExceptionally(error);
+                        }
+                        else {
+                            asyncCollector.complete(result);
+                        }
+                    });
+                    break;
+                case FAIL:
+                default:
+                    asyncCollector.completeExceptionally(timeoutException(1));
+            }
+        }
+
+        private TimeoutException timeoutException(int attempts)
+        {
+            return new TimeoutException("Async join request timed out after " + attempts + " attempt(s) of " + options.getTimeoutMs() + "ms");
+        }
+
+        private CompletionStage<Collection<Row>> lookup(Row input)
+        {
+            if (transForm instanceof AsyncRealTimeTransForm) {
+                return ((AsyncRealTimeTransForm) transForm).processAsync(new FlinkRow(input, streamRowType))
+                        .thenApply(result -> {
+                            List<Row> rows = new ArrayList<>(result.size());
+                            for (ideal.sylph.etl.Row record : result) {
+                                rows.add(FlinkRow.parserRow(record));
+                            }
+                            return rows;
+                        });
+            }
+
+            // blocking RealTimeTransForm, runs on the common ForkJoinPool
+            return CompletableFuture.supplyAsync(() -> {
+                List<Row> rows = new ArrayList<>();
+                transForm.process(new FlinkRow(input, streamRowType), record -> rows.add(FlinkRow.parserRow(record)));
+                return rows;
+            });
+        }
+
+        /**
+         * join output row of the stream fields, batch table fields are null
+         */
+        private Row leftOnlyRow(Row input)
+        {
+            Row row = new Row(selectFields.size());
+            for (int i = 0; i < selectFields.size(); i++) {
+                SelectField field = selectFields.get(i);
+                if (!field.isBatchTableField()) {
+                    row.setField(i, input.getField(field.getFieldIndex()));
+                }
+            }
+            return row;
+        }
+
         @Override
         public void close()
                 throws Exception
         {
             super.close();
+            if (retryTimer != null) {
+                retryTimer.shutdownNow();
+            }
             transForm.close(null);
         }
     }
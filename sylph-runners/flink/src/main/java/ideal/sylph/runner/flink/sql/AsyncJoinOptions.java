@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.runner.flink.sql;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * async join options of a batch table, read from the CREATE BATCH TABLE WITH properties
+ * <pre>
+ * async.capacity = 100           最大并发异步请求数
+ * async.timeout.ms = 1000        单条请求超时时间
+ * async.ordered = true           false时使用 unorderedWait
+ * async.timeout.policy = fail    fail | emit-left-only | retry, emit-left-only时inner join丢弃该行
+ * join.partition.by.key = false  true时先按join key做keyBy, 每个subtask的维表缓存只保存1/N的key
+ * </pre>
+ */
+public class AsyncJoinOptions
+        implements Serializable
+{
+    public static final String CAPACITY = "async.capacity";
+    public static final String TIMEOUT_MS = "async.timeout.ms";
+    public static final String ORDERED = "async.ordered";
+    public static final String TIMEOUT_POLICY = "async.timeout.policy";
+    public static final String PARTITION_BY_KEY = "join.partition.by.key";
+
+    public enum TimeoutPolicy
+    {
+        /** fail the job with a TimeoutException, flink default */
+        FAIL("fail"),
+        /** left join emits the stream row with null batch table fields, inner join drops the row */
+        EMIT_LEFT_ONLY("emit-left-only"),
+        /** retry the lookup once, fail if it times out again */
+        RETRY("retry");
+
+        private final String value;
+
+        TimeoutPolicy(String value)
+        {
+            this.value = value;
+        }
+
+        public String getValue()
+        {
+            return value;
+        }
+
+        public static TimeoutPolicy of(String value)
+        {
+            for (TimeoutPolicy policy : values()) {
+                if (policy.value.equalsIgnoreCase(value.trim())) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException(TIMEOUT_POLICY + " must be one of [fail, emit-left-only, retry], but is " + value);
+        }
+    }
+
+    private final int capacity;
+    private final long timeoutMs;
+    private final boolean ordered;
+    private final TimeoutPolicy timeoutPolicy;
+    private final boolean partitionByKey;
+
+    public AsyncJoinOptions(int capacity, long timeoutMs, boolean ordered, TimeoutPolicy timeoutPolicy)
+    {
+        this(capacity, timeoutMs, ordered, timeoutPolicy, false);
+    }
+
+    public AsyncJoinOptions(int capacity, long timeoutMs, boolean ordered, TimeoutPolicy timeoutPolicy, boolean partitionByKey)
+    {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(CAPACITY + " must > 0, but is " + capacity);
+        }
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException(TIMEOUT_MS + " must > 0, but is " + timeoutMs);
+        }
+        this.capacity = capacity;
+        this.timeoutMs = timeoutMs;
+        this.ordered = ordered;
+        this.timeoutPolicy = requireNonNull(timeoutPolicy, "timeoutPolicy is null");
+        this.partitionByKey = partitionByKey;
+    }
+
+    public static AsyncJoinOptions of(Map<String, Object> withConfig)
+    {
+        int capacity = (int) getLong(withConfig, CAPACITY, 100);
+        long timeoutMs = getLong(withConfig, TIMEOUT_MS, 1000);
+        Object ordered = withConfig.get(ORDERED);
+        Object policy = withConfig.get(TIMEOUT_POLICY);
+        Object partitionByKey = withConfig.get(PARTITION_BY_KEY);
+        return new AsyncJoinOptions(capacity, timeoutMs,
+                ordered == null || Boolean.parseBoolean(ordered.toString().trim()),
+                policy == null ? TimeoutPolicy.FAIL : TimeoutPolicy.of(policy.toString()),
+                partitionByKey != null && Boolean.parseBoolean(partitionByKey.toString().trim()));
+    }
+
+    private static long getLong(Map<String, Object> withConfig, String key, long defaultValue)
+    {
+        Object value = withConfig.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number, but is " + value, e);
+        }
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public long getTimeoutMs()
+    {
+        return timeoutMs;
+    }
+
+    public boolean isOrdered()
+    {
+        return ordered;
+    }
+
+    public TimeoutPolicy getTimeoutPolicy()
+    {
+        return timeoutPolicy;
+    }
+
+    public boolean isPartitionByKey()
+    {
+        return partitionByKey;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AsyncJoinOptions{capacity=" + capacity + ", timeoutMs=" + timeoutMs + ", ordered=" + ordered + ", timeoutPolicy=" + timeoutPolicy.getValue() + ", partitionByKey=" + partitionByKey + "}";
+    }
+}
@@ -207,10 +207,16 @@ public class FlinkSqlParser
         RowTypeInfo batchTableRowType = StreamSqlUtil.schemaToRowTypeInfo(StreamSqlUtil.getTableSchema(batchTable));
         List<SelectField> joinSelectFields = getAllSelectFields(joinInfo, streamRowType, batchTableRowType);
 
-        //It is recommended to do keyby first.
         JoinContext joinContext = JoinContextImpl.createContext(joinInfo, streamRowType, joinSelectFields);
         RealTimeTransForm transForm = getJoinTransForm(joinContext, batchTable);
-        DataStream<Row> joinResultStream = AsyncFunctionHelper.translate(inputStream, transForm);
+        AsyncJoinOptions asyncOptions = AsyncJoinOptions.of(batchTable.getWithConfig());
+        logger.info("batch table {} join with {}", joinInfo.getBatchTable().getName(), asyncOptions);
+        if (asyncOptions.isPartitionByKey()) {
+            //keyby first, every subtask only looks up and caches its own part of the keys
+            int[] keyIndexes = joinContext.getJoinOnMapping().keySet().stream().mapToInt(Integer::intValue).toArray();
+            inputStream = inputStream.keyBy(new JoinKeySelector(keyIndexes));
+        }
+        DataStream<Row> joinResultStream = AsyncFunctionHelper.translate(inputStream, transForm, joinContext.getJoinType(), joinSelectFields, asyncOptions);
 
         //set schema
         RowTypeInfo rowTypeInfo = getJoinOutScheam(joinSelectFields);
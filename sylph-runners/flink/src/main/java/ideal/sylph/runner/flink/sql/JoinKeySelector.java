@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.runner.flink.sql;
+
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.types.Row;
+
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * keyBy the join on fields of the stream table.
+ * flink field expression keys fail on null fields, but a null join key never matches and is answered without a lookup,
+ * so the key is the hash of the key values and every key with a null value is one sentinel key
+ */
+public class JoinKeySelector
+        implements KeySelector<Row, Integer>
+{
+    static final Integer NULL_KEY = 0;
+
+    private final int[] keyIndexes;
+
+    public JoinKeySelector(int[] keyIndexes)
+    {
+        this.keyIndexes = requireNonNull(keyIndexes, "keyIndexes is null");
+    }
+
+    @Override
+    public Integer getKey(Row row)
+    {
+        Object[] values = new Object[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            values[i] = row.getField(keyIndexes[i]);
+            if (values[i] == null) {
+                return NULL_KEY;
+            }
+        }
+        // deepHashCode compares byte[] keys by content, a hash collision only puts two keys on the same subtask
+        return Arrays.deepHashCode(values);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.runner.flink.etl;
+
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.api.java.typeutils.RowTypeInfo;
+import org.apache.flink.types.Row;
+import org.apache.flink.util.Collector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * per record FlinkRow and Collector allocation vs the reused ones, on a 30 column row.
+ * run main(), the gc profiler reports gc.alloc.rate.norm (bytes per record)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlinkRowBenchmark
+{
+    private static final int FIELD_COUNT = 30;
+
+    private RowTypeInfo typeInfo;
+    private Row[] records;
+    private String[] lookupFields;
+    private int next;
+
+    private FlinkRow reuseRow;
+
+    @Setup
+    public void setup()
+    {
+        TypeInformation<?>[] types = new TypeInformation<?>[FIELD_COUNT];
+        String[] names = new String[FIELD_COUNT];
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            types[i] = Types.STRING;
+            names[i] = "field_" + i;
+        }
+        this.typeInfo = new RowTypeInfo(types, names);
+        this.lookupFields = new String[] {names[0], names[FIELD_COUNT / 2], names[FIELD_COUNT - 1]};
+
+        this.records = new Row[1024];
+        for (int r = 0; r < records.length; r++) {
+            Row row = new Row(FIELD_COUNT);
+            for (int i = 0; i < FIELD_COUNT; i++) {
+                row.setField(i, "value_" + r + "_" + i);
+            }
+            records[r] = row;
+        }
+        this.reuseRow = new FlinkRow(typeInfo);
+    }
+
+    private Row nextRecord()
+    {
+        next = (next + 1) & (records.length - 1);
+        return records[next];
+    }
+
+    /**
+     * the old FlinkTransFrom.flatMap: new FlinkRow and a new Collector per record
+     */
+    @Benchmark
+    public void allocatePerRecord(Blackhole blackhole)
+    {
+        Row value = nextRecord();
+        Collector<Row> output = new BlackholeCollector(blackhole);
+        ideal.sylph.etl.Collector<ideal.sylph.etl.Row> rowCollector = new ideal.sylph.etl.Collector<ideal.sylph.etl.Row>()
+        {
+            @Override
+            public void collect(ideal.sylph.etl.Row record)
+            {
+                output.collect(FlinkRow.parserRow(record));
+            }
+        };
+        process(new FlinkRow(value, typeInfo), rowCollector, blackhole);
+    }
+
+    @Benchmark
+    public void reuseRow(Blackhole blackhole, ReuseState state)
+    {
+        Row value = nextRecord();
+        state.output.blackhole = blackhole;
+        process(reuseRow.reset(value), state.rowCollector, blackhole);
+    }
+
+    /**
+     * a typical transform: named lookups and one output
+     */
+    private void process(ideal.sylph.etl.Row row, ideal.sylph.etl.Collector<ideal.sylph.etl.Row> collector, Blackhole blackhole)
+    {
+        for (String field : lookupFields) {
+            blackhole.consume(row.<Object>getAs(field));
+        }
+        collector.collect(row);
+    }
+
+    @State(Scope.Thread)
+    public static class ReuseState
+    {
+        private final BlackholeCollector output = new BlackholeCollector(null);
+        private final ideal.sylph.etl.Collector<ideal.sylph.etl.Row> rowCollector = record -> output.collect(FlinkRow.parserRow(record));
+    }
+
+    private static class BlackholeCollector
+            implements Collector<Row>
+    {
+        private Blackhole blackhole;
+
+        private BlackholeCollector(Blackhole blackhole)
+        {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void collect(Row record)
+        {
+            blackhole.consume(record);
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include(FlinkRowBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.runner.flink.etl;
+
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.api.java.typeutils.RowTypeInfo;
+import org.apache.flink.types.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FlinkRowTest
+{
+    private static RowTypeInfo rowTypeInfo(int columns)
+    {
+        TypeInformation<?>[] types = new TypeInformation<?>[columns];
+        String[] names = new String[columns];
+        for (int i = 0; i < columns; i++) {
+            types[i] = Types.STRING;
+            names[i] = "field_" + i;
+        }
+        return new RowTypeInfo(types, names);
+    }
+
+    @Test
+    public void getAsByNameOfReusedRow()
+    {
+        FlinkRow reuseRow = new FlinkRow(rowTypeInfo(30));
+        for (int record = 0; record < 3; record++) {
+            Row row = new Row(30);
+            for (int i = 0; i < 30; i++) {
+                row.setField(i, record + "_" + i);
+            }
+            reuseRow.reset(row);
+            for (int i = 0; i < 30; i++) {
+                Assert.assertEquals(record + "_" + i, reuseRow.getAs("field_" + i));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getAsUnknownName()
+    {
+        FlinkRow reuseRow = new FlinkRow(rowTypeInfo(2));
+        reuseRow.reset(Row.of("a", "b")).getAs("field_2");
+    }
+
+    @Test
+    public void getAsByNameOfWrappedRow()
+    {
+        FlinkRow row = new FlinkRow(Row.of("a", "b"), rowTypeInfo(2));
+        Assert.assertEquals("b", row.getAs("field_1"));
+    }
+}
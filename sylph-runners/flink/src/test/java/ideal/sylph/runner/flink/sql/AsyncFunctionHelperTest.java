@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.runner.flink.sql;
+
+import ideal.sylph.etl.Schema;
+import ideal.sylph.etl.api.AsyncRealTimeTransForm;
+import ideal.sylph.etl.join.JoinContext;
+import ideal.sylph.etl.join.SelectField;
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.api.java.typeutils.RowTypeInfo;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.groups.UnregisteredMetricsGroup;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.DataStreamUtils;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.async.ResultFuture;
+import org.apache.flink.types.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class AsyncFunctionHelperTest
+{
+    // stream row: id, lookup delay ms
+    private static final RowTypeInfo STREAM_ROW_TYPE = new RowTypeInfo(
+            new TypeInformation[] {Types.INT, Types.LONG}, new String[] {"id", "delay"});
+    // join row: id, name
+    private static final RowTypeInfo JOIN_ROW_TYPE = new RowTypeInfo(
+            new TypeInformation[] {Types.INT, Types.STRING}, new String[] {"id", "name"});
+    private static final List<SelectField> SELECT_FIELDS = Arrays.asList(
+            SelectField.of("id", Integer.class, "tb1", false, 0),
+            SelectField.of("name", String.class, "users", true, 1));
+
+    @Test
+    public void timeoutFailPolicy()
+            throws Exception
+    {
+        Throwable error = timeoutError(JoinContext.JoinType.LEFT, AsyncJoinOptions.TimeoutPolicy.FAIL, 0);
+        Assert.assertTrue(error instanceof TimeoutException);
+    }
+
+    @Test
+    public void timeoutEmitLeftOnlyPolicyOfLeftJoin()
+            throws Exception
+    {
+        Collection<Row> result = timeoutResult(JoinContext.JoinType.LEFT, AsyncJoinOptions.TimeoutPolicy.EMIT_LEFT_ONLY, 0);
+        Assert.assertEquals(Collections.singletonList(Row.of(1, null)), new ArrayList<>(result));
+    }
+
+    @Test
+    public void timeoutEmitLeftOnlyPolicyOfInnerJoinDropsTheRow()
+            throws Exception
+    {
+        Collection<Row> result = timeoutResult(JoinContext.JoinType.INNER, AsyncJoinOptions.TimeoutPolicy.EMIT_LEFT_ONLY, 0);
+        Assert.assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void timeoutRetryPolicy()
+            throws Exception
+    {
+        Collection<Row> result = timeoutResult(JoinContext.JoinType.INNER, AsyncJoinOptions.TimeoutPolicy.RETRY, 0);
+        Assert.assertEquals(Collections.singletonList(Row.of(1, "name_1")), new ArrayList<>(result));
+
+        // the retried request times out again
+        Throwable error = timeoutError(JoinContext.JoinType.INNER, AsyncJoinOptions.TimeoutPolicy.RETRY, 10_000);
+        Assert.assertTrue(error instanceof TimeoutException);
+    }
+
+    @Test
+    public void orderedWaitKeepsTheInputOrder()
+            throws Exception
+    {
+        Assert.assertEquals(Arrays.asList(1, 2, 3), runJoin(true));
+    }
+
+    @Test
+    public void unorderedWaitEmitsTheFastLookupFirst()
+            throws Exception
+    {
+        Assert.assertEquals(Arrays.asList(2, 3, 1), runJoin(false));
+    }
+
+    private static List<Integer> runJoin(boolean ordered)
+            throws Exception
+    {
+        StreamExecutionEnvironment execEnv = StreamExecutionEnvironment.createLocalEnvironment(1);
+        List<Row> rows = Arrays.asList(Row.of(1, 500L), Row.of(2, 0L), Row.of(3, 0L));
+        DataStream<Row> inputStream = execEnv.fromCollection(rows, STREAM_ROW_TYPE);
+
+        AsyncJoinOptions options = new AsyncJoinOptions(10, 10_000, ordered, AsyncJoinOptions.TimeoutPolicy.FAIL);
+        DataStream<Row> joinResultStream = AsyncFunctionHelper.translate(inputStream, new DelayJoin(), JoinContext.JoinType.LEFT, SELECT_FIELDS, options);
+        joinResultStream.getTransformation().setOutputType(JOIN_ROW_TYPE);
+
+        List<Integer> ids = new ArrayList<>();
+        Iterator<Row> iterator = DataStreamUtils.collect(joinResultStream);
+        while (iterator.hasNext()) {
+            ids.add((Integer) iterator.next().getField(0));
+        }
+        return ids;
+    }
+
+    private static Collection<Row> timeoutResult(JoinContext.JoinType joinType, AsyncJoinOptions.TimeoutPolicy policy, long delay)
+            throws Exception
+    {
+        return timeout(joinType, policy, delay).get(5, TimeUnit.SECONDS);
+    }
+
+    private static Throwable timeoutError(JoinContext.JoinType joinType, AsyncJoinOptions.TimeoutPolicy policy, long delay)
+            throws Exception
+    {
+        try {
+            timeout(joinType, policy, delay).get(5, TimeUnit.SECONDS);
+            throw new AssertionError("the join request should fail");
+        }
+        catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    /**
+     * calls timeout() of the async function as flink does after async.timeout.ms
+     */
+    private static CompletableFuture<Collection<Row>> timeout(JoinContext.JoinType joinType, AsyncJoinOptions.TimeoutPolicy policy, long delay)
+            throws Exception
+    {
+        AsyncJoinOptions options = new AsyncJoinOptions(10, 100, true, policy);
+        AsyncFunctionHelper.RichAsyncFunctionImpl function = new AsyncFunctionHelper.RichAsyncFunctionImpl(
+                new DelayJoin(), STREAM_ROW_TYPE, joinType, SELECT_FIELDS, options);
+        function.setRuntimeContext(runtimeContext());
+        function.open(new Configuration());
+
+        CompletableFuture<Collection<Row>> result = new CompletableFuture<>();
+        function.timeout(Row.of(1, delay), new ResultFuture<Row>()
+        {
+            @Override
+            public void complete(Collection<Row> rows)
+            {
+                result.complete(rows);
+            }
+
+            @Override
+            public void completeExceptionally(Throwable error)
+            {
+                result.completeExceptionally(error);
+            }
+        });
+        result.whenComplete((rows, error) -> {
+            try {
+                function.close();
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        return result;
+    }
+
+    private static RuntimeContext runtimeContext()
+    {
+        return (RuntimeContext) Proxy.newProxyInstance(RuntimeContext.class.getClassLoader(), new Class<?>[] {RuntimeContext.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getNumberOfParallelSubtasks":
+                    return 1;
+                case "getIndexOfThisSubtask":
+                    return 0;
+                case "getMetricGroup":
+                    return new UnregisteredMetricsGroup();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * joins users.name = 'name_' + id after the delay of the stream row
+     */
+    public static class DelayJoin
+            implements AsyncRealTimeTransForm
+    {
+        private transient ScheduledExecutorService executor;
+
+        @Override
+        public CompletionStage<Collection<ideal.sylph.etl.Row>> processAsync(ideal.sylph.etl.Row input)
+        {
+            Object[] values = new Object[] {input.getAs(0), "name_" + input.getAs(0)};
+            long delay = input.getAs(1);
+            CompletableFuture<Collection<ideal.sylph.etl.Row>> result = new CompletableFuture<>();
+            executor.schedule(() -> result.complete(Collections.singletonList(ideal.sylph.etl.Row.of(values))), delay, TimeUnit.MILLISECONDS);
+            return result;
+        }
+
+        @Override
+        public Schema getSchema()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean open(long partitionId, long version)
+        {
+            this.executor = Executors.newSingleThreadScheduledExecutor();
+            return true;
+        }
+
+        @Override
+        public void close(Throwable errorOrNull)
+        {
+            executor.shutdownNow();
+        }
+    }
+}
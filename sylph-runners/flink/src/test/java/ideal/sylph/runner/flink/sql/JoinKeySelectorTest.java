@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2018 The Sylph Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ideal.sylph.runner.flink.sql;
+
+import org.apache.flink.types.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JoinKeySelectorTest
+{
+    private final JoinKeySelector selector = new JoinKeySelector(new int[] {1, 2});
+
+    @Test
+    public void nullKeysGoToOneSentinelKey()
+    {
+        Assert.assertEquals(JoinKeySelector.NULL_KEY, selector.getKey(Row.of("a", null, 1L)));
+        Assert.assertEquals(JoinKeySelector.NULL_KEY, selector.getKey(Row.of("b", "uid_1", null)));
+        Assert.assertEquals(JoinKeySelector.NULL_KEY, selector.getKey(Row.of(null, null, null)));
+    }
+
+    @Test
+    public void equalKeysGoToOneKey()
+    {
+        Assert.assertEquals(selector.getKey(Row.of("a", "uid_1", 1L)), selector.getKey(Row.of("b", "uid_1", 1L)));
+        Assert.assertNotEquals(selector.getKey(Row.of("a", "uid_1", 1L)), selector.getKey(Row.of("a", "uid_2", 1L)));
+        Assert.assertEquals(selector.getKey(Row.of("a", new byte[] {1, 2}, 1L)), selector.getKey(Row.of("a", new byte[] {1, 2}, 1L)));
+    }
+}
@@ -40,10 +40,15 @@ public class SparkRow
         }
         else if (row instanceof DefaultRow) {
             //todo: schema field type
+            // zero copy, GenericRow wraps the values array
             return new GenericRow(((DefaultRow) row).getValues());
         }
         else {
-            throw new RuntimeException(" not souch row type: " + row.getClass());
+            Object[] values = new Object[row.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = row.getAs(i);
+            }
+            return new GenericRow(values);
         }
     }
 
@@ -76,6 +81,50 @@ public class SparkRow
         return row.size();
     }
 
+    @Override
+    public boolean isNullAt(int i)
+    {
+        return row.isNullAt(i);
+    }
+
+    @Override
+    public long getLong(int i)
+    {
+        return ((Number) getNotNull(i)).longValue();
+    }
+
+    @Override
+    public int getInt(int i)
+    {
+        return ((Number) getNotNull(i)).intValue();
+    }
+
+    @Override
+    public double getDouble(int i)
+    {
+        return ((Number) getNotNull(i)).doubleValue();
+    }
+
+    @Override
+    public boolean getBoolean(int i)
+    {
+        return (Boolean) getNotNull(i);
+    }
+
+    @Override
+    public byte[] getBytes(int i)
+    {
+        return (byte[]) row.get(i);
+    }
+
+    private Object getNotNull(int i)
+    {
+        if (row.isNullAt(i)) {
+            throw new NullPointerException("value at index " + i + " is null");
+        }
+        return row.get(i);
+    }
+
     @Override
     public String toString()
     {
@@ -18,7 +18,10 @@ package ideal.sylph.runner.spark.sparkstreaming;
 import com.github.harbby.gadtry.base.JavaTypes;
 import com.github.harbby.gadtry.ioc.IocFactory;
 import ideal.sylph.etl.PipelinePlugin;
+import ideal.sylph.etl.RowBatch;
 import ideal.sylph.etl.Schema;
+import ideal.sylph.etl.api.RealTimeBatchSink;
+import ideal.sylph.etl.api.RealTimeBatchTransForm;
 import ideal.sylph.etl.api.RealTimeSink;
 import ideal.sylph.etl.api.RealTimeTransForm;
 import ideal.sylph.etl.api.Sink;
@@ -172,7 +175,11 @@ public class StreamNodeLoader
             try {
                 int partitionId = TaskContext.getPartitionId();
                 boolean openOK = realTimeSink.open(partitionId, 0); //初始化 返回是否正常 如果正常才处理数据
-                if (openOK) {
+                if (openOK && realTimeSink instanceof RealTimeBatchSink) {
+                    RealTimeBatchSink batchSink = (RealTimeBatchSink) realTimeSink;
+                    forEachBatch(partition, batchSink.getBatchSize(), batchSink::process);
+                }
+                else if (openOK) {
                     partition.forEachRemaining(row -> realTimeSink.process(SparkRow.make(row)));
                 }
             }
@@ -192,7 +199,13 @@ public class StreamNodeLoader
         List<Row> list = new ArrayList<>();
         try {
             int partitionId = TaskContext.getPartitionId();
-            if (realTimeTransForm.open(partitionId, 0)) {
+            boolean openOK = realTimeTransForm.open(partitionId, 0);
+            if (openOK && realTimeTransForm instanceof RealTimeBatchTransForm) {
+                RealTimeBatchTransForm batchTransForm = (RealTimeBatchTransForm) realTimeTransForm;
+                forEachBatch(partition, batchTransForm.getBatchSize(),
+                        batch -> batchTransForm.process(batch, transOutrow -> list.add(SparkRow.parserRow(transOutrow))));
+            }
+            else if (openOK) {
                 partition.forEachRemaining(row -> {
                     realTimeTransForm.process(SparkRow.make(row), (transOutrow) -> {
                         //TODO: SparkRow.parserRow(x) with schema ?
@@ -210,6 +223,25 @@ public class StreamNodeLoader
         return list.iterator();
     }
 
+    /**
+     * The partition iterator is finite, so only the batch size is used here, linger time does not apply
+     */
+    private static void forEachBatch(Iterator<Row> partition, int batchSize, Consumer<RowBatch> consumer)
+    {
+        RowBatch.Builder builder = RowBatch.newBuilder(batchSize);
+        while (partition.hasNext()) {
+            builder.add(SparkRow.make(partition.next()));
+            if (builder.isFull()) {
+                consumer.accept(builder.build());
+                builder.reset();
+            }
+        }
+        if (!builder.isEmpty()) {
+            consumer.accept(builder.build());
+            builder.reset();
+        }
+    }
+
     private static TransForm<JavaDStream<Row>> loadRealTimeTransForm(RealTimeTransForm realTimeTransForm)
     {
         return stream -> stream.mapPartitions(partition -> transFunction(partition, realTimeTransForm));
@@ -17,6 +17,9 @@ package ideal.sylph.runner.spark.structured;
 
 import com.github.harbby.gadtry.ioc.IocFactory;
 import ideal.sylph.etl.PipelinePlugin;
+import ideal.sylph.etl.RowBatch;
+import ideal.sylph.etl.api.RealTimeBatchSink;
+import ideal.sylph.etl.api.RealTimeBatchTransForm;
 import ideal.sylph.etl.api.RealTimeSink;
 import ideal.sylph.etl.api.RealTimeTransForm;
 import ideal.sylph.etl.api.Sink;
@@ -26,6 +29,7 @@ import ideal.sylph.runner.spark.SparkRow;
 import ideal.sylph.runner.spark.sparkstreaming.StreamNodeLoader;
 import ideal.sylph.spi.NodeLoader;
 import ideal.sylph.spi.model.PipelinePluginManager;
+import org.apache.spark.TaskContext;
 import org.apache.spark.api.java.function.MapPartitionsFunction;
 import org.apache.spark.sql.Dataset;
 import org.apache.spark.sql.Encoders;
@@ -37,7 +41,11 @@ import org.apache.spark.sql.streaming.Trigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
 
@@ -89,7 +97,10 @@ public class StructuredNodeLoader
         Object driver = getPluginInstance(driverClass, config);
 
         final Sink<DataStreamWriter<Row>> sink;
-        if (driver instanceof RealTimeSink) {
+        if (driver instanceof RealTimeBatchSink) {
+            sink = loadRealTimeBatchSink((RealTimeBatchSink) driver);
+        }
+        else if (driver instanceof RealTimeSink) {
             sink = loadRealTimeSink((RealTimeSink) driver);
         }
         else if (driver instanceof Sink) {
@@ -132,7 +143,10 @@ public class StructuredNodeLoader
         Object driver = getPluginInstance(driverClass, config);
 
         final TransForm<Dataset<Row>> transform;
-        if (driver instanceof RealTimeTransForm) {
+        if (driver instanceof RealTimeBatchTransForm) {
+            transform = loadRealTimeBatchTransForm((RealTimeBatchTransForm) driver);
+        }
+        else if (driver instanceof RealTimeTransForm) {
             transform = loadRealTimeTransForm((RealTimeTransForm) driver);
         }
         else if (driver instanceof TransForm) {
@@ -179,6 +193,67 @@ public class StructuredNodeLoader
         });
     }
 
+    /**
+     * rows are buffered per partition and flushed by batch size, linger time (checked on arrival of the next row) and close
+     */
+    private static Sink<DataStreamWriter<Row>> loadRealTimeBatchSink(RealTimeBatchSink realTimeSink)
+    {
+        return stream -> stream.foreach(new ForeachWriter<Row>()
+        {
+            private transient RowBatch.Builder builder;
+            private transient long batchStartTime;
+
+            @Override
+            public void process(Row value)
+            {
+                if (builder.isEmpty()) {
+                    batchStartTime = System.currentTimeMillis();
+                }
+                builder.add(SparkRow.make(value));
+                if (builder.isFull() || System.currentTimeMillis() - batchStartTime >= realTimeSink.getLingerMs()) {
+                    flush();
+                }
+            }
+
+            private void flush()
+            {
+                if (!builder.isEmpty()) {
+                    try {
+                        realTimeSink.process(builder.build());
+                    }
+                    finally {
+                        builder.reset();
+                    }
+                }
+            }
+
+            @Override
+            public void close(Throwable errorOrNull)
+            {
+                try {
+                    if (errorOrNull == null && builder != null) {
+                        flush();
+                    }
+                }
+                finally {
+                    realTimeSink.close(errorOrNull);
+                }
+            }
+
+            @Override
+            public boolean open(long partitionId, long version)
+            {
+                try {
+                    this.builder = RowBatch.newBuilder(realTimeSink.getBatchSize());
+                    return realTimeSink.open(partitionId, version);
+                }
+                catch (Exception e) {
+                    throw throwsException(e);
+                }
+            }
+        });
+    }
+
     private static TransForm<Dataset<Row>> loadRealTimeTransForm(RealTimeTransForm realTimeTransForm)
     {
         return stream -> {
@@ -199,6 +274,96 @@ public class StructuredNodeLoader
         };
     }
 
+    /**
+     * rows are buffered per partition and flushed by batch size, linger time (checked on arrival of the next row) and the end of the partition.
+     * the partition of a continuous query does not end, so the output is pulled batch by batch instead of collected into a list
+     */
+    private static TransForm<Dataset<Row>> loadRealTimeBatchTransForm(RealTimeBatchTransForm batchTransForm)
+    {
+        return stream -> stream.mapPartitions(
+                (MapPartitionsFunction<Row, Row>) partition -> new BatchTransIterator(partition, batchTransForm),
+                Encoders.kryo(Row.class));
+    }
+
+    private static class BatchTransIterator
+            implements Iterator<Row>
+    {
+        private final Iterator<Row> partition;
+        private final RealTimeBatchTransForm batchTransForm;
+        private final RowBatch.Builder builder;
+        private final Queue<Row> output = new ArrayDeque<>();
+        private long batchStartTime;
+        private boolean closed;
+
+        private BatchTransIterator(Iterator<Row> partition, RealTimeBatchTransForm batchTransForm)
+        {
+            this.partition = partition;
+            this.batchTransForm = batchTransForm;
+            this.builder = RowBatch.newBuilder(batchTransForm.getBatchSize());
+            try {
+                this.closed = !batchTransForm.open(TaskContext.getPartitionId(), 0);
+            }
+            catch (Exception e) {
+                batchTransForm.close(e);
+                throw throwsException(e);
+            }
+            if (closed) {
+                batchTransForm.close(null);
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (output.isEmpty() && !closed) {
+                try {
+                    if (partition.hasNext()) {
+                        long now = System.currentTimeMillis();
+                        if (builder.isEmpty()) {
+                            batchStartTime = now;
+                        }
+                        builder.add(SparkRow.make(partition.next()));
+                        if (builder.isFull() || now - batchStartTime >= batchTransForm.getLingerMs()) {
+                            flush();
+                        }
+                    }
+                    else {
+                        flush();
+                        closed = true;
+                        batchTransForm.close(null);
+                    }
+                }
+                catch (RuntimeException e) {
+                    closed = true;
+                    batchTransForm.close(e);
+                    throw e;
+                }
+            }
+            return !output.isEmpty();
+        }
+
+        @Override
+        public Row next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return output.poll();
+        }
+
+        private void flush()
+        {
+            if (!builder.isEmpty()) {
+                try {
+                    batchTransForm.process(builder.build(), transOutrow -> output.add(SparkRow.parserRow(transOutrow)));
+                }
+                finally {
+                    builder.reset();
+                }
+            }
+        }
+    }
+
     @Override
     public IocFactory getIocFactory()
     {